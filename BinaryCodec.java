@@ -0,0 +1,83 @@
+package java.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 对象与字节之间的编解码器，供把键和值以序列化形式保存在堆外的 map（例如 {@link OffHeapHashMap}）使用。
+ *
+ * 这些 map 直接在编码后的字节上计算hash和比较key，所以key的编码必须是规范的：
+ * 两个key相等（equals）当且仅当它们的编码逐字节相同。值的编码没有这个要求。
+ *
+ * 编码器不需要预先计算编码长度：{@link #encode} 直接写入缓冲区，空间不足时抛出
+ * {@link java.nio.BufferOverflowException}，调用者会换一个更大的缓冲区重新编码。
+ *
+ * @param <T> the type of values encoded by this codec
+ *
+ * @see     OffHeapHashMap
+ * @since   1.8
+ */
+public interface BinaryCodec<T> {
+
+    /**
+     * 把value编码写入dst，从dst的当前位置开始，写完之后dst的位置指向编码的末尾
+     *
+     * @param value 要编码的对象，不会是null
+     * @param dst 目标缓冲区
+     * @throws java.nio.BufferOverflowException 如果dst的剩余空间不足
+     */
+    void encode(T value, ByteBuffer dst);
+
+    /**
+     * 从src的当前位置读取length个字节并解码
+     *
+     * @param src 源缓冲区
+     * @param length 编码的字节数，与encode写入的字节数相同
+     * @return 解码得到的对象
+     */
+    T decode(ByteBuffer src, int length);
+
+    /**
+     * 返回把字符串编码为UTF-8字节的编解码器
+     */
+    static BinaryCodec<String> utf8() {
+        return new BinaryCodec<String>() {
+            public void encode(String value, ByteBuffer dst) {
+                dst.put(value.getBytes(StandardCharsets.UTF_8));
+            }
+            public String decode(ByteBuffer src, int length) {
+                byte[] b = new byte[length];
+                src.get(b);
+                return new String(b, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    /**
+     * 返回把Integer编码为4个字节的编解码器
+     */
+    static BinaryCodec<Integer> int32() {
+        return new BinaryCodec<Integer>() {
+            public void encode(Integer value, ByteBuffer dst) {
+                dst.putInt(value);
+            }
+            public Integer decode(ByteBuffer src, int length) {
+                return src.getInt();
+            }
+        };
+    }
+
+    /**
+     * 返回把Long编码为8个字节的编解码器
+     */
+    static BinaryCodec<Long> int64() {
+        return new BinaryCodec<Long>() {
+            public void encode(Long value, ByteBuffer dst) {
+                dst.putLong(value);
+            }
+            public Long decode(ByteBuffer src, int length) {
+                return src.getLong();
+            }
+        };
+    }
+}
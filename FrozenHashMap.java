@@ -0,0 +1,472 @@
+package java.util;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 不可变的 Map 实现，使用最小完美哈希（minimal perfect hash）定位键，适合构建一次之后只读的表，
+ * 例如配置、路由表和符号表。通过 {@link HashMap#freeze()} 或者 {@link #copyOf(Map)} 创建。
+ *
+ * 构建时按照 CHD（compress, hash and displace）的思路把n个键映射到 [0, n) 中互不相同的位置：
+ * 键先按hash值分到大约 n/4 个桶中，从最大的桶开始，为每个桶寻找一个种子，
+ * 使桶内所有的键在这个种子下都落到还没有被占用的位置；只有一个键的桶直接放到剩下的空位上。
+ * 每个桶只需要记录一个int，平均每个映射一个字节。
+ *
+ * 键和值存放在两个长度恰好为n的数组中，没有负载因子带来的空位，也没有 Node 对象。
+ * get 计算桶和位置之后只需要一次数组访问和一次 equals，不存在冲突链，也不需要 TreeNode。
+ * hashCode 完全相同的键无法被完美哈希区分，除第一个之外的键保存在一个小的 HashMap 中，
+ * 只有在主表没有命中时才查找它。
+ *
+ * 与 HashMap 一样允许 null 键和 null 值，所有修改操作都抛出 {@link UnsupportedOperationException}。
+ * 迭代顺序是键在数组中的位置，没有规律，但对同一个实例总是相同的。
+ * 序列化时只写出键和值，反序列化时重新构建，所以键的hashCode在不同的虚拟机中不同也没有关系。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @see     HashMap#freeze()
+ * @since   1.8
+ */
+public final class FrozenHashMap<K,V> extends AbstractMap<K,V>
+    implements Serializable {
+
+    private static final long serialVersionUID = 3960733580416209837L;
+
+    /**
+     * 每个桶中平均的键数。越大每个映射占用的空间越少，但构建时寻找种子越慢。
+     */
+    static final int LAMBDA = 4;
+
+    /**
+     * 为一个桶寻找种子的最大尝试次数，超过之后换一个盐值重新构建
+     */
+    static final int MAX_SEED_TRIES = 1 << 20;
+
+    /**
+     * 更换盐值重新构建的最大次数
+     */
+    static final int MAX_ATTEMPTS = 64;
+
+    /**
+     * 主表中的键，按最小完美哈希的位置存放
+     */
+    final Object[] keys;
+
+    /**
+     * 与keys一一对应的值
+     */
+    final Object[] vals;
+
+    /**
+     * 每个桶的种子。非负数是计算位置时使用的种子，负数 s 表示桶中唯一的键直接放在 ~s 位置上。
+     */
+    final int[] seeds;
+
+    /**
+     * 选择桶和计算位置时混入的盐值
+     */
+    final long salt;
+
+    /**
+     * hashCode与主表中某个键相同的其他键，没有时为null
+     */
+    final HashMap<K,V> overflow;
+
+    /**
+     * 缓存的 entrySet()
+     */
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * 由 ks 和 vs 的前 n 个元素构建，键必须互不相等。数组的所有权转交给新的map。
+     */
+    FrozenHashMap(Object[] ks, Object[] vs, int n) {
+        int[] hs = new int[n];
+        for (int i = 0; i < n; ++i)
+            hs[i] = hash(ks[i]);
+
+        // 按hash值排序，找出hashCode相同的键放到overflow中
+        long[] order = new long[n];
+        for (int i = 0; i < n; ++i)
+            order[i] = ((long)hs[i] << 32) | i;
+        Arrays.sort(order);
+        HashMap<K,V> ov = null;
+        int m = 0, prev = 0;
+        for (int i = 0; i < n; ++i) {
+            int idx = (int)order[i], h = (int)(order[i] >>> 32);
+            if (i > 0 && h == prev) {
+                if (ov == null)
+                    ov = new HashMap<>();
+                @SuppressWarnings("unchecked") K k = (K)ks[idx];
+                @SuppressWarnings("unchecked") V v = (V)vs[idx];
+                ov.put(k, v);
+            } else {
+                order[m++] = idx;     // m <= i，不会覆盖还没有读到的元素
+            }
+            prev = h;
+        }
+        Object[] mk = new Object[m], mv = new Object[m];
+        int[] mh = new int[m];
+        for (int i = 0; i < m; ++i) {
+            int idx = (int)order[i];
+            mk[i] = ks[idx];
+            mv[i] = vs[idx];
+            mh[i] = hs[idx];
+        }
+
+        int r = Math.max(1, m / LAMBDA);
+        long s = 0L;
+        int[] place = null;
+        int[] sd = null;
+        for (int attempt = 0; ; ++attempt) {
+            if (attempt == MAX_ATTEMPTS)
+                throw new IllegalStateException("cannot build perfect hash for " +
+                                                m + " keys");
+            s = mix(0x9E3779B97F4A7C15L * (attempt + 1));
+            sd = new int[r];
+            if ((place = displace(mh, m, r, s, sd)) != null)
+                break;
+            r += (r >>> 2) + 1;     // 桶多一些，每个桶更容易放下
+        }
+        Object[] fk = new Object[m], fv = new Object[m];
+        for (int i = 0; i < m; ++i) {
+            fk[place[i]] = mk[i];
+            fv[place[i]] = mv[i];
+        }
+        this.keys = fk;
+        this.vals = fv;
+        this.seeds = sd;
+        this.salt = s;
+        this.overflow = ov;
+    }
+
+    /**
+     * 返回一个与m具有同样映射关系的不可变map
+     *
+     * @throws NullPointerException 如果m为null
+     */
+    @SuppressWarnings("unchecked")
+    public static <K,V> FrozenHashMap<K,V> copyOf(Map<? extends K, ? extends V> m) {
+        if (m instanceof FrozenHashMap)
+            return (FrozenHashMap<K,V>)m;
+        if (m instanceof HashMap)
+            return ((HashMap<K,V>)m).freeze();
+        int n = m.size(), i = 0;
+        Object[] ks = new Object[n], vs = new Object[n];
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            if (i == n) {           // 迭代期间m变大了
+                ks = Arrays.copyOf(ks, n = n + (n >>> 1) + 1);
+                vs = Arrays.copyOf(vs, n);
+            }
+            ks[i] = e.getKey();
+            vs[i++] = e.getValue();
+        }
+        return new FrozenHashMap<>(ks, vs, i);
+    }
+
+    /**
+     * 键的hash值，null键为0。不做扰动，下面的mix已经充分混合了所有的位。
+     */
+    static int hash(Object key) {
+        return (key == null) ? 0 : key.hashCode();
+    }
+
+    /**
+     * MurmurHash3 的 64 位终结函数，是一个双射
+     */
+    static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    /**
+     * 把32位的值均匀地映射到 [0, n)，用乘法代替取模
+     */
+    static int reduce(long x32, int n) {
+        return (int)(((x32 & 0xffffffffL) * n) >>> 32);
+    }
+
+    static int bucketFor(int h, long salt, int r) {
+        return reduce(mix((h & 0xffffffffL) ^ salt) >>> 32, r);
+    }
+
+    static int slotFor(int h, int seed, long salt, int n) {
+        return reduce(mix(((h & 0xffffffffL) | ((long)seed << 32)) ^ ~salt), n);
+    }
+
+    /**
+     * 为每个桶寻找种子，成功时返回每个键的位置，有桶放不下时返回null
+     */
+    static int[] displace(int[] hs, int m, int r, long salt, int[] seeds) {
+        // 按桶做计数排序，members[start[b] .. start[b+1]) 是桶b中的键
+        int[] start = new int[r + 1];
+        int[] bucket = new int[m];
+        for (int i = 0; i < m; ++i)
+            ++start[(bucket[i] = bucketFor(hs[i], salt, r)) + 1];
+        int maxSize = 0;
+        for (int b = 0; b < r; ++b) {
+            maxSize = Math.max(maxSize, start[b + 1]);
+            start[b + 1] += start[b];
+        }
+        int[] members = new int[m];
+        int[] fill = Arrays.copyOf(start, r);
+        for (int i = 0; i < m; ++i)
+            members[fill[bucket[i]]++] = i;
+
+        // 再按桶的大小做计数排序，从大到小处理
+        int[] bySize = new int[maxSize + 2];
+        for (int b = 0; b < r; ++b)
+            ++bySize[maxSize - (start[b + 1] - start[b]) + 1];
+        for (int i = 0; i <= maxSize; ++i)
+            bySize[i + 1] += bySize[i];
+        int[] sorted = new int[r];
+        for (int b = 0; b < r; ++b)
+            sorted[bySize[maxSize - (start[b + 1] - start[b])]++] = b;
+
+        int[] place = new int[m];
+        long[] taken = new long[(m + 63) >>> 6];
+        int[] slots = new int[maxSize];
+        int free = 0;               // 单个键的桶从这里开始找空位
+        for (int b : sorted) {
+            int lo = start[b], size = start[b + 1] - lo;
+            if (size == 0)
+                break;              // 后面都是空桶
+            if (size == 1) {
+                while ((taken[free >>> 6] & (1L << free)) != 0L)
+                    ++free;
+                taken[free >>> 6] |= 1L << free;
+                place[members[lo]] = free;
+                seeds[b] = ~free;
+                continue;
+            }
+            search: for (int seed = 0; ; ++seed) {
+                if (seed == MAX_SEED_TRIES)
+                    return null;
+                for (int j = 0; j < size; ++j) {
+                    int p = slotFor(hs[members[lo + j]], seed, salt, m);
+                    if ((taken[p >>> 6] & (1L << p)) != 0L) {
+                        for (int q = 0; q < j; ++q)
+                            taken[slots[q] >>> 6] &= ~(1L << slots[q]);
+                        continue search;
+                    }
+                    taken[p >>> 6] |= 1L << p;
+                    slots[j] = p;
+                }
+                seeds[b] = seed;
+                for (int j = 0; j < size; ++j)
+                    place[members[lo + j]] = slots[j];
+                break;
+            }
+        }
+        return place;
+    }
+
+    /**
+     * 返回key在主表中的位置。主表为空时返回-1。
+     */
+    final int slotOf(int h) {
+        Object[] ks = keys;
+        int n = ks.length;
+        if (n == 0)
+            return -1;
+        int[] sd = seeds;
+        int s = sd[bucketFor(h, salt, sd.length)];
+        return (s < 0) ? ~s : slotFor(h, s, salt, n);
+    }
+
+    /**
+     * 返回键映射的值，不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = slotOf(hash(key));
+        Object k;
+        if (i >= 0 && ((k = keys[i]) == key || (key != null && key.equals(k))))
+            return (V)vals[i];
+        HashMap<K,V> ov;
+        return ((ov = overflow) == null) ? null : ov.get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        int i = slotOf(hash(key));
+        Object k;
+        if (i >= 0 && ((k = keys[i]) == key || (key != null && key.equals(k))))
+            return (V)vals[i];
+        HashMap<K,V> ov;
+        return ((ov = overflow) == null) ? defaultValue : ov.getOrDefault(key, defaultValue);
+    }
+
+    public boolean containsKey(Object key) {
+        int i = slotOf(hash(key));
+        Object k;
+        if (i >= 0 && ((k = keys[i]) == key || (key != null && key.equals(k))))
+            return true;
+        HashMap<K,V> ov;
+        return (ov = overflow) != null && ov.containsKey(key);
+    }
+
+    public boolean containsValue(Object value) {
+        for (Object v : vals) {
+            if (Objects.equals(v, value))
+                return true;
+        }
+        HashMap<K,V> ov;
+        return (ov = overflow) != null && ov.containsValue(value);
+    }
+
+    public int size() {
+        HashMap<K,V> ov;
+        return keys.length + (((ov = overflow) == null) ? 0 : ov.size());
+    }
+
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        Object[] ks = keys, vs = vals;
+        for (int i = 0; i < ks.length; ++i)
+            action.accept((K)ks[i], (V)vs[i]);
+        HashMap<K,V> ov;
+        if ((ov = overflow) != null)
+            ov.forEach(action);
+    }
+
+    /* ---------------- Unsupported mutators -------------- */
+
+    static UnsupportedOperationException uoe() {
+        return new UnsupportedOperationException("FrozenHashMap is immutable");
+    }
+
+    public V put(K key, V value) { throw uoe(); }
+    public V remove(Object key) { throw uoe(); }
+    public void putAll(Map<? extends K, ? extends V> m) { throw uoe(); }
+    public void clear() { throw uoe(); }
+    @Override public V putIfAbsent(K key, V value) { throw uoe(); }
+    @Override public boolean remove(Object key, Object value) { throw uoe(); }
+    @Override public boolean replace(K key, V oldValue, V newValue) { throw uoe(); }
+    @Override public V replace(K key, V value) { throw uoe(); }
+    @Override public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) { throw uoe(); }
+    @Override public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) { throw uoe(); }
+    @Override public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) { throw uoe(); }
+    @Override public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) { throw uoe(); }
+    @Override public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) { throw uoe(); }
+
+    /* ---------------- Views -------------- */
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return FrozenHashMap.this.size(); }
+        public final void clear()               { throw uoe(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            return containsKey(key) && Objects.equals(get(key), e.getValue());
+        }
+        public final boolean remove(Object o)   { throw uoe(); }
+    }
+
+    /**
+     * 先遍历主表的数组，再遍历overflow
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        int index;
+        Iterator<Map.Entry<K,V>> rest;
+
+        public boolean hasNext() {
+            if (index < keys.length)
+                return true;
+            if (rest == null) {
+                HashMap<K,V> ov = overflow;
+                rest = (ov == null) ? Collections.emptyIterator() :
+                    Collections.unmodifiableMap(ov).entrySet().iterator();
+            }
+            return rest.hasNext();
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K,V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            if (rest != null)
+                return rest.next();
+            int i = index++;
+            return new AbstractMap.SimpleImmutableEntry<>((K)keys[i], (V)vals[i]);
+        }
+    }
+
+    /* ---------------- Serialization -------------- */
+
+    /**
+     * 用 {@link SerializedForm} 代替自身写入流
+     */
+    private Object writeReplace() {
+        int n = size(), i = 0;
+        Object[] ks = new Object[n], vs = new Object[n];
+        for (Map.Entry<K,V> e : entrySet()) {
+            ks[i] = e.getKey();
+            vs[i++] = e.getValue();
+        }
+        return new SerializedForm(ks, vs);
+    }
+
+    private void readObject(ObjectInputStream s) throws InvalidObjectException {
+        throw new InvalidObjectException("SerializedForm required");
+    }
+
+    /**
+     * 序列化代理：只保存键和值，读取时重新构建完美哈希
+     */
+    static final class SerializedForm implements Serializable {
+        private static final long serialVersionUID = -1525402461432286085L;
+
+        /**
+         * @serial 所有的键
+         */
+        private final Object[] keys;
+
+        /**
+         * @serial 与keys一一对应的值
+         */
+        private final Object[] vals;
+
+        SerializedForm(Object[] keys, Object[] vals) {
+            this.keys = keys;
+            this.vals = vals;
+        }
+
+        private Object readResolve() throws InvalidObjectException {
+            if (keys == null || vals == null || keys.length != vals.length)
+                throw new InvalidObjectException("malformed FrozenHashMap");
+            HashSet<Object> seen = new HashSet<>(keys.length * 4 / 3 + 1);
+            for (Object k : keys) {
+                if (!seen.add(k))
+                    throw new InvalidObjectException("duplicate key: " + k);
+            }
+            return new FrozenHashMap<>(keys.clone(), vals.clone(), keys.length);
+        }
+    }
+}
@@ -1,14 +1,27 @@
 package java.util;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InvalidObjectException;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.SecureRandom;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import sun.misc.SharedSecrets;
 
 /**
@@ -214,15 +227,79 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     static final int MIN_TREEIFY_CAPACITY = 64;
 
+    /**
+     * 开启增量扩容时，容量小于此值的表仍然一次性扩容。小表的扩容本身很快，
+     * 没有必要承担新旧两张表同时存在的开销。
+     */
+    static final int MIN_INCREMENTAL_RESIZE_CAPACITY = 1 << 14;
+
+    /**
+     * 增量扩容期间，每次按key访问map时按顺序迁移的旧桶数量。
+     * 新表的阈值是旧表的两倍，在下一次扩容之前至少还要插入 0.75 * oldCap 个映射，
+     * 而迁移完所有旧桶只需要 oldCap / RESIZE_STEP 次访问，所以两次扩容不会重叠。
+     */
+    static final int RESIZE_STEP = 8;
+
+    /**
+     * 开启并行扩容时，容量小于此值的表仍然在当前线程扩容。
+     */
+    static final int MIN_PARALLEL_RESIZE_CAPACITY = 1 << 16;
+
+    /**
+     * 并行扩容时每个任务迁移的最少桶数，必须为2的指数值。任务的边界按此值对齐，
+     * 不同的任务不会写同一个缓存行中的槽位（除了边界上的一个缓存行）。
+     */
+    static final int PARALLEL_RESIZE_GRAIN = 1 << 12;
+
+    /**
+     * 开启结点回收时，每个map最多保留的空闲结点数
+     */
+    static final int MAX_FREE_NODES = 1 << 10;
+
+    /**
+     * 开启哈希洪水防御时，插入长度达到 TREEIFY_THRESHOLD 的桶的次数达到这个值，
+     * 就认为受到了攻击，改用带密钥的hash
+     */
+    static final int FLOODING_THRESHOLD = 16;
+
+    /**
+     * 默认的长查找事件阈值，见 {@link #setLongProbeEventThreshold(int)}
+     */
+    static final int DEFAULT_LONG_PROBE_THRESHOLD = TREEIFY_THRESHOLD;
+
+    /**
+     * 批量操作每一轮同时处理的key数。一轮中各个key的桶和首结点的读取互不依赖，
+     * CPU可以让它们的缓存未命中重叠；再大就超出了乱序执行的窗口和未命中缓冲区的数量，收益不再增加。
+     */
+    static final int PROBE_BATCH = 16;
+
+    /**
+     * 是否发出JFR事件，见 {@link #setFlightRecorderEvents(boolean)}。所有map共享；
+     * 不是volatile，其它线程可能稍晚才看到修改，对诊断用的开关来说可以接受。
+     */
+    static boolean flightRecorderEvents;
+
+    /**
+     * 查找时链表长度超过这个值发出事件，见 {@link #setLongProbeEventThreshold(int)}
+     */
+    static int longProbeThreshold = DEFAULT_LONG_PROBE_THRESHOLD;
+
+    /**
+     * getNode 实际比较的阈值：开启事件时等于longProbeThreshold，否则是 Integer.MAX_VALUE，
+     * 链表不可能达到这个长度，关闭时查找路径上只多一次比较
+     */
+    static int longProbeLimit = Integer.MAX_VALUE;
+
     /**
      * Basic hash bin node, used for most entries.  (See below for
      * TreeNode subclass, and in LinkedHashMap for its Entry subclass.)
      */
     static class Node<K,V> implements Map.Entry<K,V> {
-        final int hash;
-        final K key;
+        int hash;           // 只在结点被回收后重新使用时改变，见 setNodeRecycling
+        K key;
         V value;
         Node<K,V> next;
+        boolean escaped;    // 是否作为Map.Entry交给过调用者，这样的结点不能回收
 
         Node(int hash, K key, V value, Node<K,V> next) {
             this.hash = hash;
@@ -281,6 +358,44 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         return (key == null) ? 0 : (h = key.hashCode()) ^ (h >>> 16);
     }
 
+    /**
+     * 这个map中key的hash值。没有开启哈希洪水防御、也没有选择其它扰动函数时与
+     * {@link #hash(Object)} 相同。
+     */
+    final int hashOf(Object key) {
+        return ((modes & CUSTOM_HASHING) != 0) ? customHash(key) : hash(key);
+    }
+
+    /**
+     * 哈希洪水防御优先于 {@link #setHashSpreader} 选择的扰动函数
+     */
+    final int customHash(Object key) {
+        if ((modes & HASH_FLOODING_DEFENSE) != 0)
+            return seededHash(key);
+        return (key == null) ? 0 : extras.spreader.spread(key.hashCode());
+    }
+
+    /**
+     * 开启哈希洪水防御时的hash值：把hashCode与随机种子异或之后做 MurmurHash3 的 fmix32，
+     * 不知道种子就无法预测哪些不同的hashCode会落到同一个桶。
+     * 切换到带密钥的hash之后，String类型的key改用对内容计算的 SipHash，
+     * hashCode相同的字符串也会被分散开。
+     */
+    final int seededHash(Object key) {
+        int h;
+        if (key == null)
+            return 0;
+        Extras<K,V> ex = extras;
+        if ((modes & KEYED_HASHING) != 0 && key.getClass() == String.class) {
+            long x = SipHash.hash(ex.hashKey0, ex.hashKey1, (String)key);
+            return (int)(x ^ (x >>> 32));
+        }
+        h = key.hashCode() ^ ex.hashSeed;
+        h = (h ^ (h >>> 16)) * 0x85ebca6b;
+        h = (h ^ (h >>> 13)) * 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
     /**
      * Returns x's Class if it is of the form "class C implements
      * Comparable<C>", else null.
@@ -371,6 +486,137 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     final float loadFactor;
 
+    /**
+     * 增量扩容期间正在被迁移的旧表，没有进行中的增量扩容时为null。
+     * 旧表中下标小于transferIndex的桶已经迁移完毕，其余的桶中仍然可能有结点。
+     */
+    transient Node<K,V>[] oldTable;
+
+    /**
+     * 旧表中下一个要按顺序迁移的桶
+     */
+    transient int transferIndex;
+
+    /**
+     * 开启的可选功能和几个内部状态，由下面的 INCREMENTAL_RESIZE 等位组成
+     */
+    transient int modes;
+
+    /**
+     * 可选功能用到的其它状态，第一次需要时才分配，见 {@link Extras}
+     */
+    transient Extras<K,V> extras;
+
+    /*
+     * modes中的位
+     */
+    static final int INCREMENTAL_RESIZE    = 1;      // setIncrementalResize
+    static final int PARALLEL_RESIZE       = 1 << 1; // setParallelResize
+    static final int NODE_RECYCLING        = 1 << 2; // setNodeRecycling
+    static final int HASH_FLOODING_DEFENSE = 1 << 3; // setHashFloodingDefense
+    static final int CUSTOM_HASHING        = 1 << 4; // hashOf需要走customHash，即开启了哈希洪水防御或者选择了非默认的扰动函数
+    static final int KEYED_HASHING         = 1 << 5; // 已经检测到攻击，String类型的key改用SipHash
+    static final int OCCUPANCY_BITMAP      = 1 << 6; // setOccupancyBitmap
+    static final int LAZY_CLEAR            = 1 << 7; // setLazyClear
+    static final int STALE_BINS            = 1 << 8; // table中可能有过期的桶，没有这一位时不需要 purgeStale
+    static final int AUTO_SHRINK           = 1 << 9; // setAutoShrink
+
+    /**
+     * 大多数map不会开启的功能所需的状态和统计计数。这些字段放在HashMap中会让每个实例都变大，
+     * 所以单独放在这里，第一次用到时由 {@link #extras()} 分配。
+     */
+    static final class Extras<K,V> {
+        /**
+         * 最近一次被删除、还没有清空的结点。removeNode的调用者在返回之后还会读取它的value，
+         * 所以要等到下一次删除或者分配时才把它放入空闲链表或者直接重用。
+         */
+        Node<K,V> pendingFree;
+
+        /**
+         * 已清空的可重用结点组成的链表，通过next链接
+         */
+        Node<K,V> freeNodes;
+
+        /**
+         * freeNodes中的结点数，不超过MAX_FREE_NODES
+         */
+        int freeNodeCount;
+
+        /**
+         * 扰动函数，见 {@link #setHashSpreader(HashSpreader)}。null表示默认的 XOR_SHIFT。
+         */
+        HashSpreader spreader;
+
+        /**
+         * 混入hash的随机种子，开启哈希洪水防御时生成
+         */
+        int hashSeed;
+
+        /**
+         * SipHash的128位密钥
+         */
+        long hashKey0, hashKey1;
+
+        /**
+         * 插入长度达到 TREEIFY_THRESHOLD 的桶的次数
+         */
+        int degradedBinCount;
+
+        /**
+         * table的占用位图，每个桶一位。位为0的桶一定是空的；位为1的桶通常不空，
+         * 但只要求是空桶的超集，遍历时仍然要检查桶是否为null。没有开启或者还没有分配表时为null。
+         * 增量扩容期间只对应新表。
+         */
+        long[] occupied;
+
+        /**
+         * 延迟清空模式下每个桶的代数，与table等长；stamps[i]不等于generation的桶是clear之前留下的，
+         * 视为空桶。没有开启或者还没有分配表时为null。
+         */
+        int[] stamps;
+
+        /**
+         * 当前的代数，每次延迟清空加一，分配新表时归零
+         */
+        int generation;
+
+        /**
+         * 表扩容（容量翻倍）的次数，不包括第一次分配表，见 {@link #stats()}
+         */
+        int resizeCount;
+
+        /**
+         * 链表桶被转换成红黑树的次数
+         */
+        int treeifyCount;
+
+        /**
+         * 红黑树桶被转换回链表的次数
+         */
+        int untreeifyCount;
+
+        /**
+         * clone得到的map保留的部分：扰动函数和哈希洪水防御的种子与密钥
+         */
+        Extras<K,V> settings() {
+            Extras<K,V> x = new Extras<>();
+            x.spreader = spreader;
+            x.hashSeed = hashSeed;
+            x.hashKey0 = hashKey0;
+            x.hashKey1 = hashKey1;
+            x.degradedBinCount = degradedBinCount;
+            return x;
+        }
+    }
+
+    /**
+     * 返回extras，还没有分配时分配
+     */
+    final Extras<K,V> extras() {
+        Extras<K,V> x;
+        return ((x = extras) != null) ? x : (extras = new Extras<>());
+    }
+
     /* ---------------- Public operations -------------- */
 
     /**
@@ -425,6 +671,11 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     /**
      * Map.putAll方法的实现和构造器
      *
+     * 先按插入之后的映射数（当前的size加上m的size，key有重复时会偏大）一次性扩容到位，
+     * 避免逐个插入的过程中多次扩容。m也是 HashMap 并且两者计算hash的方式相同时，直接使用m的结点中
+     * 缓存的hash，不再调用hashCode；m不是 LinkedHashMap、当前map也不是 LinkedHashMap 时，
+     * 按桶的顺序遍历m的表，见 spliceBin。
+     *
      * @param m the map
      * @param evict 初始构造map时为false,否则为true (传递到 afterNodeInsertion 方法)
      * 
@@ -432,23 +683,117 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     final void putMapEntries(Map<? extends K, ? extends V> m, boolean evict) {
         int s = m.size();
         if (s > 0) {
-            if (table == null) { // pre-size
-                //将m的size当成当前map的阈值，计算出当前map所需的合适容量
-                float ft = ((float)s / loadFactor) + 1.0F;
-                //MAXIMUM_CAPACITY=2的30次方
-                int t = ((ft < (float)MAXIMUM_CAPACITY) ? 
-                         (int)ft : MAXIMUM_CAPACITY);
-                //如果当前map所需的合适容量已经大于当前阈值，需要通过m的size来计算出新的阈值
-                if (t > threshold)
-                    threshold = tableSizeFor(t);
-            }
-            else if (s > threshold)//容量大于阈值则扩容。此处不扩容也没关系，因为putVal方法有扩容操作
-                resize();
+            if (m == this) { //key都已存在，不需要扩容
+                for (Map.Entry<K,V> e : entrySet())
+                    putVal(((Node<K,V>)e).hash, e.getKey(), e.getValue(), false, evict);
+                return;
+            }
+            presize((int)Math.min((long)size + s, Integer.MAX_VALUE));
+            if (m instanceof HashMap && sameHashing((HashMap<?,?>)m)) {
+                @SuppressWarnings("unchecked")
+                HashMap<K,V> src = (HashMap<K,V>)m;
+                if (!(src instanceof LinkedHashMap) && !(this instanceof LinkedHashMap)) {
+                    //LinkedHashMap的迭代顺序是链表的顺序，插入时还要处理removeEldestEntry，只能逐个插入
+                    if (table == null)
+                        resize();
+                    int mc = modCount;
+                    Node<K,V>[] t;
+                    if ((t = src.oldTable) != null) {
+                        for (Node<K,V> e : t)
+                            if (e != null)
+                                spliceBin(e, evict);
+                    }
+                    if ((t = src.table) != null) {
+                        for (int i = src.nextBin(t, 0); i < t.length; i = src.nextBin(t, i + 1))
+                            if (t[i] != null)
+                                spliceBin(t[i], evict);
+                    }
+                    if (modCount == mc)
+                        ++modCount;
+                    return;
+                }
+                for (Map.Entry<K,V> e : src.entrySet()) {
+                    Node<K,V> p = (Node<K,V>)e;
+                    putVal(p.hash, p.key, p.value, false, evict);
+                }
+                return;
+            }
             //循环将每一组键值对都put到当前map中
             for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
                 K key = e.getKey();
                 V value = e.getValue();
-                putVal(hash(key), key, value, false, evict);
+                putVal(hashOf(key), key, value, false, evict);
+            }
+        }
+    }
+
+    /**
+     * 保证map能容纳want个映射而不需要扩容。table还没有分配时只修改阈值（即初始容量），
+     * 否则连续扩容直到阈值足够，增量扩容中的旧桶也全部迁移完。
+     */
+    final void presize(int want) {
+        if (table == null) { // pre-size
+            //将want当成当前map的阈值，计算出当前map所需的合适容量
+            float ft = ((float)want / loadFactor) + 1.0F;
+            //MAXIMUM_CAPACITY=2的30次方
+            int t = ((ft < (float)MAXIMUM_CAPACITY) ?
+                     (int)ft : MAXIMUM_CAPACITY);
+            //如果当前map所需的合适容量已经大于当前阈值，需要重新计算阈值
+            if (t > threshold)
+                threshold = tableSizeFor(t);
+        }
+        else if (want > threshold) {
+            while (want > threshold && table.length < MAXIMUM_CAPACITY)
+                resize();
+            finishResize();//批量插入时不需要增量扩容，直接迁移完所有的桶
+        }
+    }
+
+    /**
+     * m计算hash的方式是否与这个map相同，即对同一个key，m的结点中缓存的hash就是这个map的 hashOf
+     */
+    final boolean sameHashing(HashMap<?,?> m) {
+        return ((modes | m.modes) & HASH_FLOODING_DEFENSE) == 0 &&
+            spreaderOrNull() == m.spreaderOrNull();
+    }
+
+    /**
+     * 把另一个hash计算方式相同的map中一个桶（链表或者红黑树，都沿next遍历）的所有结点复制到这个map中。
+     *
+     * 同一个桶中的key互不相等，所以只要这些结点要放入的桶现在都是空的，就可以直接创建结点插到桶的头部，
+     * 不需要调用equals，也不需要逐个检查扩容；否则用缓存的hash逐个调用 putVal。
+     * 当前表的容量不小于m的容量时，m中不同的桶总是落在这里不同的桶中，往空map中合并时几乎所有的桶都走前一条路径。
+     * 原来的桶足够长时，把结点数达到 TREEIFY_THRESHOLD 的目标桶树化。
+     */
+    final void spliceBin(Node<K,V> first, boolean evict) {
+        Node<K,V>[] tab = table;
+        int n = tab.length;
+        for (Node<K,V> e = first; e != null; e = e.next) {
+            if (binAt(tab, e.hash & (n - 1)) != null) {
+                for (e = first; e != null; e = e.next)
+                    putVal(e.hash, e.key, e.value, false, evict);
+                return;
+            }
+        }
+        int len = 0;
+        for (Node<K,V> e = first; e != null; e = e.next) {
+            int i = e.hash & (n - 1);
+            tab[i] = newNode(e.hash, e.key, e.value, binAt(tab, i));
+            if ((modes & (LAZY_CLEAR | OCCUPANCY_BITMAP)) != 0)
+                binFilled(i);
+            ++len;
+        }
+        size += len;
+        if (len >= TREEIFY_THRESHOLD && n >= MIN_TREEIFY_CAPACITY) {
+            for (Node<K,V> e = first; e != null; e = e.next) {
+                Node<K,V> p = tab[e.hash & (n - 1)];
+                if (p instanceof TreeNode)
+                    continue;
+                int c = 0;
+                for (; p != null; p = p.next)
+                    ++c;
+                if (c >= TREEIFY_THRESHOLD)
+                    treeifyBin(tab, e.hash);
             }
         }
     }
@@ -490,7 +835,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     public V get(Object key) {
         Node<K,V> e;
-        return (e = getNode(hash(key), key)) == null ? null : e.value;
+        return (e = getNode(hashOf(key), key)) == null ? null : e.value;
     }
 
     /**
@@ -502,19 +847,28 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     final Node<K,V> getNode(int hash, Object key) {
         Node<K,V>[] tab; Node<K,V> first, e; int n; K k;
+        if (oldTable != null)
+            transferFor(hash);
         if ((tab = table) != null && (n = tab.length) > 0 &&
-            (first = tab[(n - 1) & hash]) != null) {
+            (first = binAt(tab, (n - 1) & hash)) != null) {
             if (first.hash == hash && // always check first node
                 ((k = first.key) == key || (key != null && key.equals(k))))
                 return first;
             if ((e = first.next) != null) {
                 if (first instanceof TreeNode)
                     return ((TreeNode<K,V>)first).getTreeNode(hash, key);
+                int c = 1;
                 do {
+                    ++c;
                     if (e.hash == hash &&
-                        ((k = e.key) == key || (key != null && key.equals(k))))
+                        ((k = e.key) == key || (key != null && key.equals(k)))) {
+                        if (c > longProbeLimit)
+                            HashMapEvents.longProbe(this, n, c, true, key);
                         return e;
+                    }
                 } while ((e = e.next) != null);
+                if (c > longProbeLimit)
+                    HashMapEvents.longProbe(this, n, c, false, key);
             }
         }
         return null;
@@ -529,7 +883,127 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      * key.
      */
     public boolean containsKey(Object key) {
-        return getNode(hash(key), key) != null;
+        return getNode(hashOf(key), key) != null;
+    }
+
+    /**
+     * 批量查找：把keys[i]对应的value存入values[i]，不存在的key存入null。
+     * 结果与对每个key依次调用 {@link #get(Object)} 相同。
+     *
+     * 逐个调用get时，每次查找都要先等待桶数组中的槽位、再等待结点从内存中读出，
+     * 两次缓存未命中互相依赖，不同key的查找之间也无法重叠。这里每次取 PROBE_BATCH 个key，
+     * 先计算所有的hash，再读取所有的桶，然后读取所有的首结点，最后才比较key，
+     * 同一步中的内存读取互不依赖，可以同时进行。map比CPU缓存大很多、一批有几十上百个key时效果最明显；
+     * 小map或者只有几个key时与逐个调用get差别不大。
+     *
+     * @param keys   要查找的key
+     * @param values 存放结果的数组，长度不能小于keys的长度
+     * @return 找到的key的个数
+     * @throws IllegalArgumentException 如果values比keys短
+     * @throws NullPointerException 如果keys或者values为null
+     */
+    public int getAll(Object[] keys, V[] values) {
+        int len = keys.length;
+        if (values.length < len)
+            throw new IllegalArgumentException("values.length < keys.length");
+        int found = 0;
+        int[] hashes = new int[Math.min(len, PROBE_BATCH)];
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Node<K,V>[] heads = (Node<K,V>[])new Node[hashes.length];
+        for (int off = 0; off < len; off += PROBE_BATCH) {
+            int m = Math.min(len - off, PROBE_BATCH);
+            probeHeads(keys, off, m, hashes, heads);
+            for (int i = 0; i < m; ++i) {
+                Node<K,V> e = findNode(heads[i], hashes[i], keys[off + i]);
+                if (e == null)
+                    values[off + i] = null;
+                else {
+                    values[off + i] = e.value;
+                    afterNodeAccess(e);  // 与 LinkedHashMap.get 一致
+                    ++found;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 批量判断key是否存在：keys[i]存在时把result[i]设为true，否则设为false。
+     * 结果与对每个key依次调用 {@link #containsKey(Object)} 相同，实现方式见 {@link #getAll}。
+     *
+     * @param keys   要查找的key
+     * @param result 存放结果的数组，长度不能小于keys的长度
+     * @return 存在的key的个数
+     * @throws IllegalArgumentException 如果result比keys短
+     * @throws NullPointerException 如果keys或者result为null
+     */
+    public int containsKeys(Object[] keys, boolean[] result) {
+        int len = keys.length;
+        if (result.length < len)
+            throw new IllegalArgumentException("result.length < keys.length");
+        int found = 0;
+        int[] hashes = new int[Math.min(len, PROBE_BATCH)];
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Node<K,V>[] heads = (Node<K,V>[])new Node[hashes.length];
+        for (int off = 0; off < len; off += PROBE_BATCH) {
+            int m = Math.min(len - off, PROBE_BATCH);
+            probeHeads(keys, off, m, hashes, heads);
+            for (int i = 0; i < m; ++i) {
+                boolean b = findNode(heads[i], hashes[i], keys[off + i]) != null;
+                result[off + i] = b;
+                if (b)
+                    ++found;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 批量操作的前三步：计算keys[off, off + m)的hash存入hashes，读取它们所在的桶的首结点存入heads，
+     * 再读取每个首结点的hash，首结点不可能匹配并且后面没有结点的桶置为null。
+     * 每一步都是独立的循环，循环内的内存读取互不依赖。
+     */
+    final void probeHeads(Object[] keys, int off, int m, int[] hashes, Node<K,V>[] heads) {
+        for (int i = 0; i < m; ++i)
+            hashes[i] = hashOf(keys[off + i]);
+        if (oldTable != null) {
+            for (int i = 0; i < m && oldTable != null; ++i)
+                transferFor(hashes[i]);
+        }
+        Node<K,V>[] tab; int n;
+        if ((tab = table) == null || (n = tab.length) == 0) {
+            Arrays.fill(heads, 0, m, null);
+            return;
+        }
+        for (int i = 0; i < m; ++i)
+            heads[i] = binAt(tab, (n - 1) & hashes[i]);
+        for (int i = 0; i < m; ++i) {
+            Node<K,V> p = heads[i];
+            if (p != null && p.hash != hashes[i] && p.next == null)
+                heads[i] = null;
+        }
+    }
+
+    /**
+     * 在以first开头的桶中查找key，与 getNode 的后半部分相同，但不发出长查找事件
+     */
+    final Node<K,V> findNode(Node<K,V> first, int hash, Object key) {
+        Node<K,V> e; K k;
+        if (first == null)
+            return null;
+        if (first.hash == hash &&
+            ((k = first.key) == key || (key != null && key.equals(k))))
+            return first;
+        if ((e = first.next) != null) {
+            if (first instanceof TreeNode)
+                return ((TreeNode<K,V>)first).getTreeNode(hash, key);
+            do {
+                if (e.hash == hash &&
+                    ((k = e.key) == key || (key != null && key.equals(k))))
+                    return e;
+            } while ((e = e.next) != null);
+        }
+        return null;
     }
 
     /**
@@ -541,7 +1015,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      *         (返回null也可能是已存在的key关键的value值就是null)
      */
     public V put(K key, V value) {
-        return putVal(hash(key), key, value, false, true);
+        return putVal(hashOf(key), key, value, false, true);
     }
 
     /**
@@ -557,28 +1031,39 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     final V  putVal(int hash, K key, V value, boolean onlyIfAbsent,
                    boolean evict) {
         Node<K,V>[] tab; Node<K,V> p; int n, i;
+        boolean degraded = false;   // 新的key是否被插入到一个过长的桶中
         //如果table为空，则先进行一次扩容操作
         if ((tab = table) == null || (n = tab.length) == 0)
             n = (tab = resize()).length;
+        //增量扩容期间，先把hash所在的旧桶迁移到新表
+        if (oldTable != null)
+            transferFor(hash);
         //通过(n - 1) & hash来计算tab的下标位置，判断此位置是否为null，不为null代表hash碰撞了
-        if ((p = tab[i = (n - 1) & hash]) == null)
+        if ((p = binAt(tab, i = (n - 1) & hash)) == null) {
             tab[i] = newNode(hash, key, value, null);
+            if ((modes & (LAZY_CLEAR | OCCUPANCY_BITMAP)) != 0)
+                binFilled(i);
+        }
         else {//hash碰撞，java7使用单链表解决碰撞问题，java8增加了红黑树                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                                
             Node<K,V> e; K k;
             //通过key判断是否与桶的第一个Node相等，满足的话e指向此node,后续通过onlyIfAbsent来确定是否改变value
             if (p.hash == hash &&
                 ((k = p.key) == key || (key != null && key.equals(k))))
                 e = p;
-            else if (p instanceof TreeNode)//如果p结点是树结构，则将此对象添加到子树
-                e = ((TreeNode<K,V>)p).putTreeVal(this, tab, hash, key, value);
+            else if (p instanceof TreeNode) {//如果p结点是树结构，则将此对象添加到子树
+                if ((e = ((TreeNode<K,V>)p).putTreeVal(this, tab, hash, key, value)) == null)
+                    degraded = true;
+            }
             else {
                 for (int binCount = 0; ; ++binCount) {
                     if ((e = p.next) == null) {//判断桶的下一个结点是否为null
                         p.next = newNode(hash, key, value, null);
                         //binCount = 0 代表当前桶只有2个结点。TREEIFY_THRESHOLD - 1 = 7 所以 binCount=7时代表当前桶只有9个结点
                         //故链表的长度大于8时，桶将由单向链表结构转化为树结构
-                        if (binCount >= TREEIFY_THRESHOLD - 1) // -1 for 1st
+                        if (binCount >= TREEIFY_THRESHOLD - 1) { // -1 for 1st
                             treeifyBin(tab, hash);
+                            degraded = true;
+                        }
                         break;
                     }
                     //通过key判断是否与桶的当前Node结点e相等，相等代表找到已存在key的结点，后续决定是否替换value即可
@@ -603,6 +1088,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         if (++size > threshold)
             resize();
         afterNodeInsertion(evict);//为LinkedHashMap所准备的回调方法
+        if (degraded && (modes & HASH_FLOODING_DEFENSE) != 0)
+            noteDegradedBin(key);
         return null;
     }
 
@@ -610,9 +1097,17 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      * 初始化或者翻倍size。如果为null则使用阈值当成新的容量。
      * 否则，每个桶结点上的元素位置要么不变，要么移动2的指数次。
      *
+     * 开启增量扩容并且表足够大时，这里只分配新表，旧表中的桶在之后的访问中逐步迁移，
+     * 见 transferFor。
+     *
      * @return the table
      */
     final Node<K,V>[] resize() {
+        //上一次增量扩容还没有完成时，先迁移完剩余的桶
+        if (oldTable != null)
+            finishResize();
+        if ((modes & STALE_BINS) != 0)
+            purgeStale();
         Node<K,V>[] oldTab = table;
         //扩容前的容量
         int oldCap = (oldTab == null) ? 0 : oldTab.length;
@@ -645,108 +1140,908 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         @SuppressWarnings({"rawtypes","unchecked"})
             Node<K,V>[] newTab = (Node<K,V>[])new Node[newCap]; //创建新的table
         table = newTab;
+        if ((modes & OCCUPANCY_BITMAP) != 0)
+            extras.occupied = new long[(newCap + 63) >>> 6];
+        if ((modes & LAZY_CLEAR) != 0) {
+            extras.stamps = new int[newCap];
+            extras.generation = 0;
+        }
         if (oldTab != null) {
-            for (int j = 0; j < oldCap; ++j) {
-                Node<K,V> e;
-                if ((e = oldTab[j]) != null) {//将旧tab中非空结点移到新table
-                    oldTab[j] = null;
-                    if (e.next == null)//桶结点只有一个元素
-                        newTab[e.hash & (newCap - 1)] = e;
-                    else if (e instanceof TreeNode) //桶结点已经是树结构
-                        ((TreeNode<K,V>)e).split(this, newTab, j, oldCap);
-                    else { //桶结点是链表
-                        Node<K,V> loHead = null, loTail = null;
-                        Node<K,V> hiHead = null, hiTail = null;
-                        Node<K,V> next;
-                        do {//将链表随机分散为两个链表
-                            next = e.next;
-                            if ((e.hash & oldCap) == 0) {
-                                if (loTail == null)
-                                    loHead = e;
-                                else
-                                    loTail.next = e;
-                                loTail = e;
-                            }
-                            else {
-                                if (hiTail == null)
-                                    hiHead = e;
-                                else
-                                    hiTail.next = e;
-                                hiTail = e;
-                            }
-                        } while ((e = next) != null);
-                        //loTail链表index不变
-                        if (loTail != null) {
-                            loTail.next = null;
-                            newTab[j] = loHead;
-                        }
-                        //hiTail链表index改变
-                        if (hiTail != null) {
-                            hiTail.next = null;
-                            newTab[j + oldCap] = hiHead;
-                        }
-                    }
-                }
+            ++extras().resizeCount;
+            Object event = flightRecorderEvents ? HashMapEvents.beginResize() : null;
+            String mode;
+            if ((modes & INCREMENTAL_RESIZE) != 0 && oldCap >= MIN_INCREMENTAL_RESIZE_CAPACITY) {
+                //增量扩容：保留旧表，之后每次访问时迁移一部分桶
+                transferIndex = 0;
+                oldTable = oldTab;
+                mode = "incremental";
+            }
+            else if ((modes & (PARALLEL_RESIZE | NODE_RECYCLING)) == PARALLEL_RESIZE &&
+                     oldCap >= MIN_PARALLEL_RESIZE_CAPACITY &&
+                     ForkJoinPool.getCommonPoolParallelism() > 1 &&
+                     !(this instanceof LinkedHashMap)) {
+                //并行扩容：每个旧桶只会写入新表的j和j + oldCap两个槽位，不同的桶互不影响。
+                //拆分红黑树时的反树化会分配结点，回收的结点池不是线程安全的，开启结点回收时只能串行迁移
+                countUntreeify(ForkJoinPool.commonPool().invoke(
+                    new TransferTask<>(this, oldTab, newTab, 0, oldCap)));
+                mode = "parallel";
+            }
+            else {
+                int c = 0;
+                for (int j = 0; j < oldCap; ++j)//将旧tab中非空结点移到新table
+                    c += transferBin(oldTab, newTab, j);
+                countUntreeify(c);
+                mode = "serial";
             }
+            if (event != null)
+                HashMapEvents.endResize(event, this, oldCap, newCap, mode);
         }
         return newTab;
     }
 
     /**
-     * 除非table太小，进行扩容操作。否则将通过hash计算出的index位置的桶的所有结点全部替换
+     * 并行扩容的任务：迁移旧表中下标在 [lo, hi) 之间的桶。范围大于 PARALLEL_RESIZE_GRAIN 时
+     * 对半拆分成两个子任务。TreeNode.split 只会写入自己所在的两个槽位，也可以并行执行。
+     * 任务不修改map的字段，反树化的次数作为结果返回，由调用者累加到统计计数中。
      */
-    final void treeifyBin(Node<K,V>[] tab, int hash) {
-        int n, index; Node<K,V> e;
-        // tab为空或长度小于64则进行扩容操作
-        if (tab == null || (n = tab.length) < MIN_TREEIFY_CAPACITY)//MIN_TREEIFY_CAPACITY=64
-            resize();
-        else if ((e = tab[index = (n - 1) & hash]) != null) {//如果当前桶不为空
-            TreeNode<K,V> hd = null, tl = null;
-            do {//循环将当前桶的所有Node结点替换成TreeNode结点
-                TreeNode<K,V> p = replacementTreeNode(e, null);
-                if (tl == null)
-                    hd = p;
-                else {
-                    p.prev = tl;
-                    tl.next = p;
-                }
-                tl = p;
-            } while ((e = e.next) != null);
-            //头结点不为空则将单链表转换成树
-            if ((tab[index] = hd) != null)
-                hd.treeify(tab);
+    static final class TransferTask<K,V> extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 5232453952276885070L;
+        final HashMap<K,V> map;
+        final Node<K,V>[] oldTab, newTab;
+        final int lo, hi;
+
+        TransferTask(HashMap<K,V> map, Node<K,V>[] oldTab, Node<K,V>[] newTab,
+                     int lo, int hi) {
+            this.map = map;
+            this.oldTab = oldTab;
+            this.newTab = newTab;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected Integer compute() {
+            int l = lo, h = hi, c = 0;
+            if (h - l > PARALLEL_RESIZE_GRAIN) {
+                // lo、hi都是PARALLEL_RESIZE_GRAIN的倍数，所以mid也是
+                int mid = (l + h) >>> 1;
+                TransferTask<K,V> left = new TransferTask<>(map, oldTab, newTab, l, mid);
+                TransferTask<K,V> right = new TransferTask<>(map, oldTab, newTab, mid, h);
+                invokeAll(left, right);
+                c = left.join() + right.join();
+            }
+            else {
+                for (int j = l; j < h; ++j)
+                    c += map.transferBin(oldTab, newTab, j);
+            }
+            return c;
         }
     }
 
     /**
-     * Copies all of the mappings from the specified map to this map.
-     * These mappings will replace any mappings that this map had for
-     * any of the keys currently in the specified map.
+     * 把oldTab中下标为j的桶迁移到容量为其两倍的newTab中，迁移之后oldTab[j]为null。
+     * 链表按照 hash & oldCap 拆分成下标不变的lo链表和下标为 j + oldCap 的hi链表，
+     * 两条链表都保持原有的顺序；树结构由 TreeNode.split 拆分。
      *
-     * @param m mappings to be stored in this map
-     * @throws NullPointerException if the specified map is null
+     * @return 拆分树结构时反树化的次数（0到2）。并行扩容时会在多个线程中调用，
+     *         所以由调用者累加到 untreeifyCount
      */
-    public void putAll(Map<? extends K, ? extends V> m) {
-        putMapEntries(m, true);
+    final int transferBin(Node<K,V>[] oldTab, Node<K,V>[] newTab, int j) {
+        Node<K,V> e; int oldCap = oldTab.length, c = 0;
+        if ((e = oldTab[j]) != null) {
+            oldTab[j] = null;
+            if (e.next == null)//桶结点只有一个元素
+                newTab[e.hash & (newTab.length - 1)] = e;
+            else if (e instanceof TreeNode) //桶结点已经是树结构
+                c = ((TreeNode<K,V>)e).split(this, newTab, j, oldCap);
+            else { //桶结点是链表
+                Node<K,V> loHead = null, loTail = null;
+                Node<K,V> hiHead = null, hiTail = null;
+                Node<K,V> next;
+                do {//将链表随机分散为两个链表
+                    next = e.next;
+                    if ((e.hash & oldCap) == 0) {
+                        if (loTail == null)
+                            loHead = e;
+                        else
+                            loTail.next = e;
+                        loTail = e;
+                    }
+                    else {
+                        if (hiTail == null)
+                            hiHead = e;
+                        else
+                            hiTail.next = e;
+                        hiTail = e;
+                    }
+                } while ((e = next) != null);
+                //loTail链表index不变
+                if (loTail != null) {
+                    loTail.next = null;
+                    newTab[j] = loHead;
+                }
+                //hiTail链表index改变
+                if (hiTail != null) {
+                    hiTail.next = null;
+                    newTab[j + oldCap] = hiHead;
+                }
+            }
+            //并行扩容时每个任务的下标范围是 PARALLEL_RESIZE_GRAIN 的倍数，不同的任务不会写同一个long
+            Extras<K,V> ex = extras;
+            long[] occ = (ex == null) ? null : ex.occupied;
+            if (occ != null) {
+                int k = j + oldCap;
+                if (newTab[j] != null)
+                    occ[j >>> 6] |= 1L << j;
+                if (newTab[k] != null)
+                    occ[k >>> 6] |= 1L << k;
+            }
+        }
+        return c;
     }
 
     /**
-     * Removes the mapping for the specified key from this map if present.
-     *
-     * @param  key key whose mapping is to be removed from the map
-     * @return the previous value associated with <tt>key</tt>, or
-     *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
-     *         (A <tt>null</tt> return can also indicate that the map
-     *         previously associated <tt>null</tt> with <tt>key</tt>.)
+     * 增量扩容期间，在每次按key访问map之前调用。先迁移hash所在的旧桶，
+     * 这样接下来的查找、插入和删除只需要访问新表；然后按顺序迁移 RESIZE_STEP 个旧桶，
+     * 所有的旧桶都迁移完之后丢弃旧表。
      */
-    public V remove(Object key) {
-        Node<K,V> e;
-        return (e = removeNode(hash(key), key, null, false, true)) == null ?
-            null : e.value;
+    final void transferFor(int hash) {
+        Node<K,V>[] oldTab = oldTable, newTab = table;
+        int oldCap = oldTab.length;
+        int c = transferBin(oldTab, newTab, hash & (oldCap - 1));
+        int i = transferIndex, bound = Math.min(i + RESIZE_STEP, oldCap);
+        for (; i < bound; ++i)
+            c += transferBin(oldTab, newTab, i);
+        countUntreeify(c);
+        if ((transferIndex = i) >= oldCap) {
+            oldTable = null;
+            transferIndex = 0;
+        }
     }
 
     /**
-     * Implements Map.remove and related methods
+     * 迁移完进行中的增量扩容的所有旧桶。遍历整个表的操作（迭代器、forEach等）
+     * 以及再次扩容之前都要先调用此方法，这样它们只需要处理一张表。
+     */
+    final void finishResize() {
+        Node<K,V>[] oldTab;
+        if ((oldTab = oldTable) != null) {
+            Node<K,V>[] newTab = table;
+            int c = 0;
+            for (int j = transferIndex; j < oldTab.length; ++j)
+                c += transferBin(oldTab, newTab, j);
+            countUntreeify(c);
+            oldTable = null;
+            transferIndex = 0;
+        }
+    }
+
+    /**
+     * 开启或关闭增量扩容。默认关闭。
+     *
+     * 关闭时，扩容在触发它的那一次put中把所有的桶从旧表迁移到新表，对于千万级的map，
+     * 这一次put可能需要数百毫秒。开启之后（与 Redis 的渐进式 rehash 类似），
+     * 容量不小于 2的14次方 的表扩容时只分配新表，之后的每次 get、put、remove 等按key的访问
+     * 先迁移key所在的旧桶，再按顺序迁移少量旧桶，把扩容的开销平摊到后续的访问中。
+     * 迁移使用与一次性扩容相同的高低位拆分，桶内的顺序不变。
+     *
+     * 代价是：迁移期间新旧两张表同时存在；迭代器、forEach、containsValue 等遍历整个表的操作
+     * 以及 putAll 会先一次性迁移完剩余的桶；get 在迁移期间也会修改表的结构，
+     * 所以即使没有其它线程修改map，多个线程同时读也需要外部同步。
+     *
+     * 此设置不会被序列化，反序列化得到的map总是关闭增量扩容；clone 得到的map保留此设置。
+     *
+     * @param incremental 是否开启增量扩容
+     */
+    public void setIncrementalResize(boolean incremental) {
+        if (!incremental)
+            finishResize();
+        setMode(INCREMENTAL_RESIZE, incremental);
+    }
+
+    /**
+     * 设置或清除modes中的位
+     */
+    final void setMode(int bit, boolean on) {
+        modes = on ? (modes | bit) : (modes & ~bit);
+    }
+
+    /**
+     * 返回是否开启了增量扩容
+     *
+     * @see #setIncrementalResize(boolean)
+     */
+    public boolean isIncrementalResize() {
+        return (modes & INCREMENTAL_RESIZE) != 0;
+    }
+
+    /**
+     * 开启或关闭并行扩容。默认关闭。
+     *
+     * 扩容时每个旧桶j中的结点只会迁移到新表的j和j + oldCap两个槽位，不同的旧桶之间互不影响。
+     * 开启之后，容量不小于 2的16次方 的表扩容时，把旧表的下标范围 [0, oldCap) 拆分成
+     * 多个 ForkJoin 任务，在 {@link ForkJoinPool#commonPool()} 中并行迁移，树结构的桶也一样。
+     * 调用 put 的线程等待所有任务完成之后才返回，所以扩容对调用者仍然是同步的，
+     * 只是耗时随CPU核数缩短，适合一次装载大量数据的场景。
+     *
+     * 如果同时开启了增量扩容，足够大的表按增量扩容处理。LinkedHashMap 在树结构退化时
+     * 需要修改双向链表，所以总是在当前线程扩容。树结构退化时分配的结点可能来自回收的结点池，
+     * 而结点池只能由一个线程访问，所以开启了 {@link #setNodeRecycling 结点回收} 时也在当前线程扩容。
+     * 公共线程池的并行度不大于1时也不会并行。
+     *
+     * 此设置不会被序列化；clone 得到的map保留此设置。
+     *
+     * @param parallel 是否开启并行扩容
+     */
+    public void setParallelResize(boolean parallel) {
+        setMode(PARALLEL_RESIZE, parallel);
+    }
+
+    /**
+     * 返回是否开启了并行扩容
+     *
+     * @see #setParallelResize(boolean)
+     */
+    public boolean isParallelResize() {
+        return (modes & PARALLEL_RESIZE) != 0;
+    }
+
+    /**
+     * 开启或关闭结点回收。默认关闭。
+     *
+     * 开启之后，remove 等操作删除的结点会被清空并保存在这个map自己的空闲链表中（最多
+     * {@value #MAX_FREE_NODES} 个），之后的 put 以及红黑树退化成链表时优先重用它们而不是
+     * 分配新的结点，与key无关。适合不断插入和删除、大小基本稳定的map（例如新的会话不断替换
+     * 过期的会话），可以大幅减少年轻代的分配。放入空闲链表的结点不再引用原来的key和value。
+     *
+     * 通过 entrySet 的迭代器、forEach 或 spliterator 交给调用者的 Map.Entry 就是结点本身，
+     * 这样的结点被标记之后不会再回收，调用者持有的Entry在映射被删除之后也不会变成别的映射。
+     * 关闭时不做这种标记（避免只读遍历写结点），所以开启时会先把已有的结点全部标记一遍。
+     * 树结构的桶中的结点不回收。LinkedHashMap 使用自己的结点类型，不受此设置影响。
+     *
+     * 此设置不会被序列化；clone 得到的map保留此设置，但不共享空闲结点。
+     *
+     * @param recycling 是否回收被删除的结点
+     */
+    public void setNodeRecycling(boolean recycling) {
+        Node<K,V>[] tab;
+        if (recycling && (modes & NODE_RECYCLING) == 0) {
+            finishResize();
+            if (size > 0 && (tab = table) != null) {
+                for (int i = nextBin(tab, 0); i < tab.length; i = nextBin(tab, i + 1)) {
+                    for (Node<K,V> e = tab[i]; e != null; e = e.next)
+                        e.escaped = true;
+                }
+            }
+        }
+        setMode(NODE_RECYCLING, recycling);
+        Extras<K,V> ex;
+        if (recycling)
+            extras();
+        else if ((ex = extras) != null) {
+            ex.pendingFree = ex.freeNodes = null;
+            ex.freeNodeCount = 0;
+        }
+    }
+
+    /**
+     * 返回是否开启了结点回收
+     *
+     * @see #setNodeRecycling(boolean)
+     */
+    public boolean isNodeRecycling() {
+        return (modes & NODE_RECYCLING) != 0;
+    }
+
+    /**
+     * 开启或关闭桶的占用位图：每个桶对应一位，在桶从空变为非空（插入、扩容迁移）和从非空变为空（删除）时更新。
+     *
+     * 迭代器、各个视图和map的 forEach、spliterator、containsValue、replaceAll 和 clear
+     * 默认要检查表中的每一个槽位，耗时与容量而不是映射数成正比。map从很大缩小到很小之后容量不会减少，
+     * 例如从一千万个映射删除到只剩一千个，每次遍历仍然要检查一千六百多万个槽位。
+     * 开启之后用 {@link Long#numberOfTrailingZeros(long)} 在位图中直接跳到下一个非空桶，
+     * 每64个空桶只需要读取一个long。
+     *
+     * 代价是每个桶多占用1位内存（表本身每个桶占4到8字节），以及插入空桶和删除桶中最后一个结点时的一次位运算。
+     * 满的map上遍历本来就很少遇到空桶，不会变快。
+     *
+     * 此设置不会被序列化；clone 得到的map保留此设置。
+     *
+     * @param enabled 是否维护占用位图
+     */
+    public void setOccupancyBitmap(boolean enabled) {
+        if (enabled == ((modes & OCCUPANCY_BITMAP) != 0))
+            return;
+        setMode(OCCUPANCY_BITMAP, enabled);
+        if (enabled) {
+            finishResize();
+            if ((modes & STALE_BINS) != 0)
+                purgeStale();
+            if (table != null)
+                extras().occupied = bitmapOf(table);
+            else
+                extras();
+        }
+        else
+            extras.occupied = null;
+    }
+
+    /**
+     * 是否维护桶的占用位图
+     *
+     * @see #setOccupancyBitmap(boolean)
+     */
+    public boolean isOccupancyBitmap() {
+        return (modes & OCCUPANCY_BITMAP) != 0;
+    }
+
+    /**
+     * 开启或关闭延迟清空：表中每个桶带一个代数，{@link #clear()} 只把map的代数加一，
+     * 代数不同的桶在查找、插入和删除时都被当作空桶，下次写入时直接覆盖，耗时与容量无关。
+     *
+     * 默认的 clear 要把表中的每个槽位都置为null，耗时与容量成正比。预先分配了很大的容量、
+     * 每次只放入少量映射又频繁清空重用的map（例如每个请求使用的临时map），clear 的开销会远大于实际的使用。
+     *
+     * 代价：
+     * <ul>
+     * <li>每个桶多占用一个int，每次按key访问多读取一次代数；
+     * <li>clear 之前的结点仍然被表引用，直到所在的桶被重新写入、表扩容或者关闭延迟清空，
+     *     在此之前key和value都不会被垃圾回收。映射很大的对象时不要使用；
+     * <li>扩容和重新hash之前先把过期的桶清理一遍；遍历时逐个比较代数以跳过过期的桶。
+     *     同时开启了 {@link #setOccupancyBitmap(boolean) 占用位图} 时，clear 还要清零位图，
+     *     耗时是容量的1/64，但遍历可以直接跳过过期的桶。
+     * </ul>
+     * 此设置不会被序列化；clone 得到的map保留此设置。
+     *
+     * @param enabled 是否延迟清空
+     */
+    public void setLazyClear(boolean enabled) {
+        if (enabled == ((modes & LAZY_CLEAR) != 0))
+            return;
+        if (enabled) {
+            finishResize();
+            Extras<K,V> ex = extras();
+            modes |= LAZY_CLEAR;
+            if (table != null) {
+                ex.stamps = new int[table.length];
+                ex.generation = 0;
+            }
+        }
+        else {
+            if ((modes & STALE_BINS) != 0)
+                purgeStale();
+            modes &= ~LAZY_CLEAR;
+            extras.stamps = null;
+        }
+    }
+
+    /**
+     * 是否开启延迟清空
+     *
+     * @see #setLazyClear(boolean)
+     */
+    public boolean isLazyClear() {
+        return (modes & LAZY_CLEAR) != 0;
+    }
+
+    /**
+     * 把表缩小到能容纳当前所有映射而不需要扩容的最小容量（2的幂）。map为空时释放整个表，
+     * 下次插入时按默认容量重新分配。
+     *
+     * resize 只会让表翻倍，map在高峰期扩容之后，即使映射数降下来，表也一直保持高峰时的大小，
+     * 遍历、clear 和占用的内存都与这个容量成正比。确定map不会再增长时可以调用此方法释放这部分内存；
+     * 之后再插入时仍然按需扩容。
+     *
+     * 缩容是扩容拆分的逆过程：每次容量减半时，把下标为j和j + newCap的两个桶连接成一个，
+     * 两个桶中至少有一个是红黑树时先反树化，合并之后仍然达到 TREEIFY_THRESHOLD 的桶重新树化。
+     * 耗时与原来的容量成正比。
+     */
+    public void trimToSize() {
+        Node<K,V>[] tab;
+        finishResize();
+        if ((tab = table) == null)
+            return;
+        if (size == 0) {
+            table = null;
+            threshold = 0;
+            Extras<K,V> ex;
+            if ((ex = extras) != null) {
+                ex.occupied = null;
+                ex.stamps = null;
+                ex.generation = 0;
+            }
+            modes &= ~STALE_BINS;
+            ++modCount;
+            return;
+        }
+        int c = tab.length;
+        while (c > 1 && size <= thresholdFor(c >>> 1))
+            c >>>= 1;
+        if (c < tab.length)
+            shrink(c);
+    }
+
+    /**
+     * 开启或关闭自动缩容。默认关闭。
+     *
+     * 开启之后，删除映射使size低于阈值的1/4时（负载因子为0.75时即填充率低于0.1875），
+     * 把容量减半直到填充率不超过负载因子的一半，最小缩到默认容量16。扩容之后和缩容之后的填充率
+     * 都是负载因子的一半左右，映射数需要再翻倍或者再减少一半以上才会触发下一次调整，
+     * 在阈值附近反复插入和删除时不会来回扩容、缩容。
+     *
+     * 只有 remove、compute 等按key删除的方法以及视图的 removeIf、removeAll、retainAll 会触发缩容，
+     * 通过迭代器删除和 clear 不会，清空之后需要释放内存时调用 {@link #trimToSize()}。
+     * 此设置不会被序列化；clone 得到的map保留此设置。
+     *
+     * @param enabled 是否自动缩容
+     */
+    public void setAutoShrink(boolean enabled) {
+        setMode(AUTO_SHRINK, enabled);
+    }
+
+    /**
+     * 是否开启自动缩容
+     *
+     * @see #setAutoShrink(boolean)
+     */
+    public boolean isAutoShrink() {
+        return (modes & AUTO_SHRINK) != 0;
+    }
+
+    /**
+     * 返回当前table中下标为i的桶，延迟清空留下的过期桶返回null
+     */
+    final Node<K,V> binAt(Node<K,V>[] tab, int i) {
+        Extras<K,V> ex; int[] st;
+        if ((modes & LAZY_CLEAR) == 0 || (st = (ex = extras).stamps) == null)
+            return tab[i];
+        return (st[i] == ex.generation) ? tab[i] : null;
+    }
+
+    /**
+     * 把table中所有过期的桶置为null
+     */
+    final void purgeStale() {
+        Node<K,V>[] tab = table;
+        Extras<K,V> ex = extras;
+        int[] st = (ex == null) ? null : ex.stamps;
+        if (tab != null && st != null) {
+            int g = ex.generation;
+            for (int i = 0; i < tab.length; ++i) {
+                if (st[i] != g)
+                    tab[i] = null;
+            }
+        }
+        modes &= ~STALE_BINS;
+    }
+
+    /**
+     * 容量为cap时的扩容阈值，与 resize 的计算方式相同
+     */
+    final int thresholdFor(int cap) {
+        float ft = (float)cap * loadFactor;
+        return (cap < MAXIMUM_CAPACITY && ft < (float)MAXIMUM_CAPACITY ?
+                (int)ft : Integer.MAX_VALUE);
+    }
+
+    /**
+     * 自动缩容：容量减半直到填充率不超过负载因子的一半，不小于默认容量
+     */
+    final void shrinkIfSparse() {
+        Node<K,V>[] tab;
+        if ((tab = table) == null)
+            return;
+        int c = tab.length;
+        while (c > DEFAULT_INITIAL_CAPACITY &&
+               (long)size << 1 <= thresholdFor(c >>> 1))
+            c >>>= 1;
+        if (c < tab.length)
+            shrink(c);
+    }
+
+    /**
+     * 把表缩小到newCap。在原来的数组中原地合并：容量从n减半时，桶j + n/2 连接到桶j的尾部，
+     * 最后复制出长度为newCap的新表。合并时两个桶中的红黑树先反树化成链表，
+     * 全部合并完之后，把长度达到 TREEIFY_THRESHOLD 的链表重新树化。
+     */
+    final void shrink(int newCap) {
+        finishResize();
+        if ((modes & STALE_BINS) != 0)
+            purgeStale();
+        Node<K,V>[] tab = table;
+        int oldCap = tab.length;
+        Object event = flightRecorderEvents ? HashMapEvents.beginResize() : null;
+        for (int n = oldCap >>> 1; n >= newCap; n >>>= 1) {
+            for (int j = 0; j < n; ++j) {
+                Node<K,V> hi = tab[j + n];
+                if (hi == null)
+                    continue;
+                tab[j + n] = null;
+                Node<K,V> lo = tab[j];
+                if (lo == null) {
+                    tab[j] = hi;
+                    continue;
+                }
+                if (lo instanceof TreeNode) {
+                    lo = ((TreeNode<K,V>)lo).untreeify(this);
+                    countUntreeify(1);
+                }
+                if (hi instanceof TreeNode) {
+                    hi = ((TreeNode<K,V>)hi).untreeify(this);
+                    countUntreeify(1);
+                }
+                tab[j] = lo;
+                while (lo.next != null)
+                    lo = lo.next;
+                lo.next = hi;
+            }
+        }
+        tab = table = Arrays.copyOf(tab, newCap);
+        threshold = thresholdFor(newCap);
+        if ((modes & OCCUPANCY_BITMAP) != 0)
+            extras.occupied = bitmapOf(tab);
+        if ((modes & LAZY_CLEAR) != 0) {
+            extras.stamps = new int[newCap];
+            extras.generation = 0;
+        }
+        ++modCount;
+        if (newCap >= MIN_TREEIFY_CAPACITY) {
+            for (int j = 0; j < newCap; ++j) {
+                Node<K,V> e;
+                if ((e = tab[j]) == null || e instanceof TreeNode)
+                    continue;
+                int binCount = 0;
+                for (; e != null && binCount < TREEIFY_THRESHOLD; e = e.next)
+                    ++binCount;
+                if (binCount >= TREEIFY_THRESHOLD)
+                    treeifyBin(tab, tab[j].hash);
+            }
+        }
+        if (event != null)
+            HashMapEvents.endResize(event, this, oldCap, newCap, "shrink");
+    }
+
+    /**
+     * 扫描tab，返回它的占用位图
+     */
+    static long[] bitmapOf(Node<?,?>[] tab) {
+        long[] occ = new long[(tab.length + 63) >>> 6];
+        for (int i = 0; i < tab.length; ++i) {
+            if (tab[i] != null)
+                occ[i >>> 6] |= 1L << i;
+        }
+        return occ;
+    }
+
+    /**
+     * 桶i从空变为非空之后调用，开启了延迟清空或者占用位图时才需要
+     */
+    final void binFilled(int i) {
+        Extras<K,V> ex = extras;
+        int[] st; long[] occ;
+        if ((st = ex.stamps) != null)
+            st[i] = ex.generation;
+        if ((occ = ex.occupied) != null)
+            occ[i >>> 6] |= 1L << i;
+    }
+
+    /**
+     * 桶i从非空变为空之后调用，开启了占用位图时才需要
+     */
+    final void clearBin(int i) {
+        long[] occ;
+        if ((occ = extras.occupied) != null)
+            occ[i >>> 6] &= ~(1L << i);
+    }
+
+    /**
+     * 累加反树化的次数
+     */
+    final void countUntreeify(int c) {
+        if (c != 0)
+            extras().untreeifyCount += c;
+    }
+
+    /**
+     * 返回tab中下标不小于i的第一个可能非空的桶的下标，没有时返回tab.length。
+     * tab是当前的table并且开启了占用位图时在位图中查找，否则逐个检查槽位，这时返回的桶一定非空。
+     * 延迟清空留下的过期桶总是被跳过：逐个检查时比较代数，位图则在clear时已经清零。
+     */
+    final int nextBin(Node<K,V>[] tab, int i) {
+        int n = tab.length;
+        Extras<K,V> ex = extras;
+        long[] occ = (ex == null) ? null : ex.occupied;
+        if (occ == null || tab != table) {
+            int[] st = (ex != null && tab == table) ? ex.stamps : null;
+            if (st == null) {
+                while (i < n && tab[i] == null)
+                    ++i;
+            }
+            else {
+                int g = ex.generation;
+                while (i < n && (tab[i] == null || st[i] != g))
+                    ++i;
+            }
+            return i;
+        }
+        if (i >= n)
+            return n;
+        int w = i >>> 6;
+        long word = occ[w] & (-1L << i);
+        while (word == 0L) {
+            if (++w >= occ.length)
+                return n;
+            word = occ[w];
+        }
+        return Math.min((w << 6) + Long.numberOfTrailingZeros(word), n);
+    }
+
+    /**
+     * 开启或关闭哈希洪水防御。默认关闭。
+     *
+     * 默认的hash只是 h ^ (h >>> 16)，能控制key的攻击者（例如HTTP头和查询参数的名字）
+     * 很容易构造出大量落在同一个桶中的key；树结构的桶只在key实现了 Comparable 时才有效。
+     * 开启之后：
+     * <ul>
+     * <li>每个map生成一个随机种子混入hash，hashCode不同的key无法被预测地集中到同一个桶；
+     * <li>put、computeIfAbsent、compute 和 merge 记录插入长度达到 TREEIFY_THRESHOLD 的桶的次数，达到
+     *     {@value #FLOODING_THRESHOLD} 次并且插入的是String时，认为受到了攻击；
+     * <li>此后String类型的key改用以随机密钥计算的 SipHash-2-4，整张表按新的hash重建，
+     *     hashCode相同的字符串（例如 "Aa" 和 "BB"）也会被分散开。
+     * </ul>
+     * 开启或关闭时，已有的映射按新的hash重新分布。迭代顺序与关闭时不同，并且每个map不一样。
+     *
+     * LinkedHashMap 在 HashMap 之外直接用 {@link #hash(Object)} 计算hash，所以不支持这个设置。
+     * 此设置不会被序列化；clone 得到的map保留此设置和种子。
+     *
+     * @param defense 是否开启哈希洪水防御
+     * @throws UnsupportedOperationException 如果这是一个 LinkedHashMap
+     */
+    public void setHashFloodingDefense(boolean defense) {
+        if (this instanceof LinkedHashMap)
+            throw new UnsupportedOperationException(
+                "hash flooding defense is not supported by LinkedHashMap");
+        if (defense == ((modes & HASH_FLOODING_DEFENSE) != 0))
+            return;
+        Extras<K,V> ex = extras();
+        setMode(HASH_FLOODING_DEFENSE, defense);
+        setMode(CUSTOM_HASHING, defense || ex.spreader != null);
+        modes &= ~KEYED_HASHING;
+        ex.degradedBinCount = 0;
+        ex.hashSeed = defense ? ThreadLocalRandom.current().nextInt() : 0;
+        rehash();
+    }
+
+    /**
+     * 返回是否开启了哈希洪水防御
+     *
+     * @see #setHashFloodingDefense(boolean)
+     */
+    public boolean isHashFloodingDefense() {
+        return (modes & HASH_FLOODING_DEFENSE) != 0;
+    }
+
+    /**
+     * 选择这个map使用的扰动函数。默认是 {@link HashSpreader#XOR_SHIFT}，与 {@link #hash(Object)} 相同。
+     *
+     * hashCode只在少数几位上不同的key（连续的 Long、整数坐标的 Float、由几个小整数组合的记录）
+     * 在默认的扰动下可能集中在少数桶中，可以先用 {@link HashSpreader#diagnose} 对样本key
+     * 比较各个扰动函数的分布，再选择一个。已有的映射按新的扰动函数重新分布，迭代顺序会改变。
+     * 开启了哈希洪水防御时，防御使用的带种子的hash优先，这里的设置在关闭防御之后生效。
+     *
+     * LinkedHashMap 在 HashMap 之外直接用 {@link #hash(Object)} 计算hash，所以不支持这个设置。
+     * 此设置不会被序列化；clone 得到的map保留此设置。
+     *
+     * @param s 扰动函数
+     * @throws NullPointerException 如果s为null
+     * @throws UnsupportedOperationException 如果这是一个 LinkedHashMap
+     */
+    public void setHashSpreader(HashSpreader s) {
+        Objects.requireNonNull(s);
+        if (this instanceof LinkedHashMap)
+            throw new UnsupportedOperationException(
+                "hash spreader is not supported by LinkedHashMap");
+        if (s == getHashSpreader())
+            return;
+        Extras<K,V> ex = extras();
+        ex.spreader = (s == HashSpreader.XOR_SHIFT) ? null : s;
+        setMode(CUSTOM_HASHING, (modes & HASH_FLOODING_DEFENSE) != 0 || ex.spreader != null);
+        if ((modes & HASH_FLOODING_DEFENSE) == 0)
+            rehash();
+    }
+
+    /**
+     * 返回这个map使用的扰动函数
+     *
+     * @see #setHashSpreader(HashSpreader)
+     */
+    public HashSpreader getHashSpreader() {
+        HashSpreader s;
+        return ((s = spreaderOrNull()) == null) ? HashSpreader.XOR_SHIFT : s;
+    }
+
+    /**
+     * 选择的扰动函数，默认的 XOR_SHIFT 返回null
+     */
+    final HashSpreader spreaderOrNull() {
+        Extras<K,V> ex;
+        return ((ex = extras) == null) ? null : ex.spreader;
+    }
+
+    /**
+     * 密钥只在检测到攻击时才需要，用 SecureRandom 生成，放在单独的类中按需初始化
+     */
+    static final class HashKeyHolder {
+        static final SecureRandom RANDOM = new SecureRandom();
+    }
+
+    /**
+     * putVal、computeIfAbsent、compute 和 merge 在key被插入到一个过长的桶之后调用，
+     * 次数足够多时切换到带密钥的hash
+     */
+    final void noteDegradedBin(Object key) {
+        Extras<K,V> ex = extras;
+        if ((modes & KEYED_HASHING) == 0 && key != null && key.getClass() == String.class &&
+            ++ex.degradedBinCount >= FLOODING_THRESHOLD) {
+            SecureRandom rnd = HashKeyHolder.RANDOM;
+            ex.hashKey0 = rnd.nextLong();
+            ex.hashKey1 = rnd.nextLong();
+            modes |= KEYED_HASHING;
+            rehash();
+        }
+    }
+
+    /**
+     * 按 hashOf 重新计算所有结点的hash，在同样长度的新表中重新分布。
+     * 普通结点原样移动，树结构的桶中的结点换成普通结点，最后把仍然过长的桶树化。
+     */
+    final void rehash() {
+        Node<K,V>[] oldTab;
+        finishResize();
+        if ((modes & STALE_BINS) != 0)
+            purgeStale();
+        if (size == 0 || (oldTab = table) == null)
+            return;
+        int n = oldTab.length;
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Node<K,V>[] newTab = (Node<K,V>[])new Node[n];
+        for (int j = 0; j < n; ++j) {
+            Node<K,V> e = oldTab[j], next;
+            oldTab[j] = null;
+            if (e instanceof TreeNode)
+                countUntreeify(1);
+            for (; e != null; e = next) {
+                next = e.next;
+                Node<K,V> p = (e instanceof TreeNode) ? replacementNode(e, null) : e;
+                int h = p.hash = hashOf(p.key);
+                int i = h & (n - 1);
+                p.next = newTab[i];
+                newTab[i] = p;
+            }
+        }
+        table = newTab;
+        if ((modes & OCCUPANCY_BITMAP) != 0)
+            extras.occupied = bitmapOf(newTab);
+        int[] st;
+        if ((modes & LAZY_CLEAR) != 0 && (st = extras.stamps) != null) {
+            //过期的桶已经清理，新表中所有的桶都属于当前的代
+            Arrays.fill(st, 0);
+            extras.generation = 0;
+        }
+        ++modCount;
+        for (int j = 0; j < n; ++j) {
+            int binCount = 0;
+            for (Node<K,V> e = newTab[j]; e != null; e = e.next)
+                ++binCount;
+            if (binCount >= TREEIFY_THRESHOLD)
+                treeifyBin(newTab, newTab[j].hash);
+        }
+    }
+
+    /**
+     * 除非table太小，进行扩容操作。否则将通过hash计算出的index位置的桶的所有结点全部替换
+     */
+    final void treeifyBin(Node<K,V>[] tab, int hash) {
+        int n, index; Node<K,V> e;
+        // tab为空或长度小于64则进行扩容操作
+        if (tab == null || (n = tab.length) < MIN_TREEIFY_CAPACITY)//MIN_TREEIFY_CAPACITY=64
+            resize();
+        else if ((e = tab[index = (n - 1) & hash]) != null) {//如果当前桶不为空
+            Object event = flightRecorderEvents ? HashMapEvents.beginTreeify() : null;
+            TreeNode<K,V> hd = null, tl = null;
+            do {//循环将当前桶的所有Node结点替换成TreeNode结点
+                TreeNode<K,V> p = replacementTreeNode(e, null);
+                if (tl == null)
+                    hd = p;
+                else {
+                    p.prev = tl;
+                    tl.next = p;
+                }
+                tl = p;
+            } while ((e = e.next) != null);
+            //头结点不为空则将单链表转换成树
+            if ((tab[index] = hd) != null) {
+                hd.treeify(tab);
+                ++extras().treeifyCount;
+                if (event != null)
+                    HashMapEvents.endTreeify(event, this, n, index, tab[index]);
+            }
+        }
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map.
+     * These mappings will replace any mappings that this map had for
+     * any of the keys currently in the specified map.
+     *
+     * @param m mappings to be stored in this map
+     * @throws NullPointerException if the specified map is null
+     */
+    public void putAll(Map<? extends K, ? extends V> m) {
+        putMapEntries(m, true);
+    }
+
+    /**
+     * 批量插入：依次把keys[i]映射到values[i]，结果与对每一对依次调用 {@link #put(Object, Object)} 相同。
+     *
+     * 与 {@link #getAll} 一样按 PROBE_BATCH 个key一轮，先计算hash并读取桶和首结点，
+     * 让各个key的缓存未命中重叠。首结点就是要找的key时直接替换value（更新已有映射的常见情况），
+     * 否则用已经算好的hash调用 putVal，这时桶和结点大多已经在缓存中了。
+     *
+     * @param keys   key
+     * @param values value，长度不能小于keys的长度
+     * @throws IllegalArgumentException 如果values比keys短
+     * @throws NullPointerException 如果keys或者values为null
+     */
+    public void putAll(K[] keys, V[] values) {
+        int len = keys.length;
+        if (values.length < len)
+            throw new IllegalArgumentException("values.length < keys.length");
+        int[] hashes = new int[Math.min(len, PROBE_BATCH)];
+        @SuppressWarnings({"rawtypes","unchecked"})
+        Node<K,V>[] heads = (Node<K,V>[])new Node[hashes.length];
+        for (int off = 0; off < len; off += PROBE_BATCH) {
+            int m = Math.min(len - off, PROBE_BATCH);
+            probeHeads(keys, off, m, hashes, heads);
+            Node<K,V>[] tab = table;
+            int keyed = modes & KEYED_HASHING;
+            for (int i = 0; i < m; ++i) {
+                Node<K,V> p = heads[i]; K k;
+                K key = keys[off + i];
+                int hash = hashes[i];
+                //同一轮中前面的插入可能扩容、树化或者重新hash，只有桶的首结点没有变时才能直接使用
+                if (p != null && p.hash == hash && tab == table &&
+                    tab[(tab.length - 1) & hash] == p &&
+                    ((k = p.key) == key || (key != null && key.equals(k)))) {
+                    p.value = values[off + i];
+                    afterNodeAccess(p);
+                }
+                else {
+                    //前面的插入切换到了带密钥的hash之后，预先计算的hash已经过时
+                    if (keyed != (modes & KEYED_HASHING))
+                        hash = hashOf(key);
+                    putVal(hash, key, values[off + i], false, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param  key key whose mapping is to be removed from the map
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>.
+     *         (A <tt>null</tt> return can also indicate that the map
+     *         previously associated <tt>null</tt> with <tt>key</tt>.)
+     */
+    public V remove(Object key) {
+        Node<K,V> e;
+        return (e = removeNode(hashOf(key), key, null, false, true)) == null ?
+            null : e.value;
+    }
+
+    /**
+     * Implements Map.remove and related methods
      *
      * @param hash hash for key
      * @param key the key
@@ -758,8 +2053,10 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     final Node<K,V> removeNode(int hash, Object key, Object value,
                                boolean matchValue, boolean movable) {
         Node<K,V>[] tab; Node<K,V> p; int n, index;
+        if (oldTable != null)
+            transferFor(hash);
         if ((tab = table) != null && (n = tab.length) > 0 &&
-            (p = tab[index = (n - 1) & hash]) != null) {
+            (p = binAt(tab, index = (n - 1) & hash)) != null) {
             Node<K,V> node = null, e; K k; V v;
             if (p.hash == hash &&
                 ((k = p.key) == key || (key != null && key.equals(k))))
@@ -779,21 +2076,150 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                     } while ((e = e.next) != null);
                 }
             }
-            if (node != null && (!matchValue || (v = node.value) == value ||
-                                 (value != null && value.equals(v)))) {
-                if (node instanceof TreeNode)
-                    ((TreeNode<K,V>)node).removeTreeNode(this, tab, movable);
-                else if (node == p)
-                    tab[index] = node.next;
-                else
-                    p.next = node.next;
-                ++modCount;
-                --size;
-                afterNodeRemoval(node);
-                return node;
+            if (node != null && (!matchValue || (v = node.value) == value ||
+                                 (value != null && value.equals(v)))) {
+                if (node instanceof TreeNode)
+                    ((TreeNode<K,V>)node).removeTreeNode(this, tab, movable);
+                else if (node == p)
+                    tab[index] = node.next;
+                else
+                    p.next = node.next;
+                if ((modes & OCCUPANCY_BITMAP) != 0 && tab[index] == null)
+                    clearBin(index);
+                ++modCount;
+                --size;
+                //缩容会替换树结构桶中的结点，要在node交给 afterNodeRemoval 回收之前进行，
+                //否则回收的node可能被重新使用，调用者读到的就是其它映射的value
+                if ((modes & AUTO_SHRINK) != 0 && movable && size < (threshold >>> 2) &&
+                    n > DEFAULT_INITIAL_CAPACITY)
+                    shrinkIfSparse();
+                afterNodeRemoval(node);
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 一次遍历整个表，删除所有满足filter的结点，供视图的 removeIf、removeAll 和 retainAll 使用。
+     *
+     * 通过迭代器逐个删除时，每次 remove 都要重新计算hash并从桶的头部重新查找；这里在遍历链表的同时
+     * 直接修改前一个结点的next，红黑树桶则把保留下来的结点重新连成链表，再根据数量树化或者反树化一次。
+     * modCount只在最后增加一次。filter抛出异常时，已经删除的结点保持删除，表的结构仍然完整。
+     *
+     * @param filter 对结点的判断，不能修改map
+     * @param exposed filter是否会把结点本身当作 Map.Entry 交给调用者（entrySet），
+     *                开启了结点回收时这些结点不能再被回收
+     * @return 是否删除了结点
+     * @throws ConcurrentModificationException 如果filter修改了map
+     */
+    final boolean removeNodes(Predicate<? super Node<K,V>> filter, boolean exposed) {
+        Node<K,V>[] tab;
+        finishResize();
+        if (size == 0 || (tab = table) == null)
+            return false;
+        int mc = modCount, removed = 0;
+        boolean escape = exposed && (modes & NODE_RECYCLING) != 0;
+        try {
+            for (int i = nextBin(tab, 0); i < tab.length; i = nextBin(tab, i + 1)) {
+                Node<K,V> e = tab[i];
+                if (e == null)
+                    continue;
+                if (e instanceof TreeNode) {
+                    removed += removeTreeNodes(tab, i, filter, escape, mc);
+                    if ((modes & OCCUPANCY_BITMAP) != 0 && tab[i] == null)
+                        clearBin(i);
+                    continue;
+                }
+                for (Node<K,V> p = null, next; e != null; e = next) {
+                    next = e.next;
+                    if (escape)
+                        e.escaped = true;
+                    boolean rm = filter.test(e);
+                    if (modCount != mc)
+                        throw new ConcurrentModificationException();
+                    if (rm) {
+                        if (p == null)
+                            tab[i] = next;
+                        else
+                            p.next = next;
+                        --size;
+                        ++removed;
+                        afterNodeRemoval(e);
+                    }
+                    else
+                        p = e;
+                }
+                if ((modes & OCCUPANCY_BITMAP) != 0 && tab[i] == null)
+                    clearBin(i);
+            }
+        } finally {
+            if (removed > 0)
+                ++modCount;
+        }
+        if ((modes & AUTO_SHRINK) != 0 && removed > 0)
+            shrinkIfSparse();
+        return removed > 0;
+    }
+
+    /**
+     * removeNodes 中处理红黑树桶tab[i]：沿next遍历，保留的结点重新连成链表，
+     * 有结点被删除时再整体树化，或者剩下的结点太少时反树化
+     *
+     * @return 删除的结点数
+     */
+    final int removeTreeNodes(Node<K,V>[] tab, int i, Predicate<? super Node<K,V>> filter,
+                              boolean escape, int mc) {
+        TreeNode<K,V> hd = null, tl = null, e = (TreeNode<K,V>)tab[i], next;
+        int kept = 0, removed = 0;
+        try {
+            for (; e != null; e = next) {
+                next = (TreeNode<K,V>)e.next;
+                if (escape)
+                    e.escaped = true;
+                boolean rm = filter.test(e);
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+                if (rm) {
+                    --size;
+                    ++removed;
+                    afterNodeRemoval(e);
+                }
+                else {
+                    if ((e.prev = tl) == null)
+                        hd = e;
+                    else
+                        tl.next = e;
+                    tl = e;
+                    ++kept;
+                }
+            }
+        } finally {
+            if (removed > 0) {
+                //filter抛出异常时，还没有判断的结点原样保留
+                for (; e != null; e = (TreeNode<K,V>)e.next) {
+                    if ((e.prev = tl) == null)
+                        hd = e;
+                    else
+                        tl.next = e;
+                    tl = e;
+                    ++kept;
+                }
+                if (tl != null)
+                    tl.next = null;
+                if (kept == 0)
+                    tab[i] = null;
+                else if (kept <= UNTREEIFY_THRESHOLD) {
+                    tab[i] = hd.untreeify(this);
+                    countUntreeify(1);
+                }
+                else {
+                    tab[i] = hd;
+                    hd.treeify(tab);
+                }
             }
         }
-        return null;
+        return removed;
     }
 
     /**
@@ -803,10 +2229,34 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     public void clear() {
         Node<K,V>[] tab;
         modCount++;
+        oldTable = null;//旧表中剩余的结点直接丢弃
+        transferIndex = 0;
         if ((tab = table) != null && size > 0) {
             size = 0;
-            for (int i = 0; i < tab.length; ++i)
-                tab[i] = null;
+            Extras<K,V> ex = extras;
+            long[] occ = (ex == null) ? null : ex.occupied;
+            int[] st = (ex == null) ? null : ex.stamps;
+            if (st != null) {
+                //延迟清空：只增加代数，旧的桶在下次写入、扩容或者关闭延迟清空时才被覆盖
+                if (++ex.generation == 0) { //代数回绕，旧的代数可能与新的相同，真正清空一次
+                    Arrays.fill(tab, null);
+                    Arrays.fill(st, 0);
+                    modes &= ~STALE_BINS;
+                }
+                else
+                    modes |= STALE_BINS;
+                if (occ != null)
+                    Arrays.fill(occ, 0L);
+            }
+            else if (occ == null) {
+                for (int i = 0; i < tab.length; ++i)
+                    tab[i] = null;
+            }
+            else {
+                for (int i = nextBin(tab, 0); i < tab.length; i = nextBin(tab, i + 1))
+                    tab[i] = null;
+                Arrays.fill(occ, 0L);
+            }
         }
     }
 
@@ -820,8 +2270,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     public boolean containsValue(Object value) {
         Node<K,V>[] tab; V v;
+        finishResize();
         if ((tab = table) != null && size > 0) {
-            for (int i = 0; i < tab.length; ++i) {
+            for (int i = nextBin(tab, 0); i < tab.length; i = nextBin(tab, i + 1)) {
                 for (Node<K,V> e = tab[i]; e != null; e = e.next) {
                     if ((v = e.value) == value ||
                         (value != null && value.equals(v)))
@@ -862,18 +2313,37 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         public final Iterator<K> iterator()     { return new KeyIterator(); }
         public final boolean contains(Object o) { return containsKey(o); }
         public final boolean remove(Object key) {
-            return removeNode(hash(key), key, null, false, true) != null;
+            return removeNode(hashOf(key), key, null, false, true) != null;
         }
         public final Spliterator<K> spliterator() {
             return new KeySpliterator<>(HashMap.this, 0, -1, 0, 0);
         }
+        public final boolean removeIf(Predicate<? super K> filter) {
+            Objects.requireNonNull(filter);
+            return removeNodes(e -> filter.test(e.key), false);
+        }
+        public final boolean removeAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            if (c.size() < size) { //要删除的key较少时逐个删除，不需要遍历整个表
+                boolean modified = false;
+                for (Object o : c)
+                    modified |= remove(o);
+                return modified;
+            }
+            return removeNodes(e -> c.contains(e.key), false);
+        }
+        public final boolean retainAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            return removeNodes(e -> !c.contains(e.key), false);
+        }
         public final void forEach(Consumer<? super K> action) {
             Node<K,V>[] tab;
             if (action == null)
                 throw new NullPointerException();
+            finishResize();
             if (size > 0 && (tab = table) != null) {
                 int mc = modCount;
-                for (int i = 0; i < tab.length; ++i) {
+                for (int i = nextBin(tab, 0); i < tab.length; i = nextBin(tab, i + 1)) {
                     for (Node<K,V> e = tab[i]; e != null; e = e.next)
                         action.accept(e.key);
                 }
@@ -915,13 +2385,26 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         public final Spliterator<V> spliterator() {
             return new ValueSpliterator<>(HashMap.this, 0, -1, 0, 0);
         }
+        public final boolean removeIf(Predicate<? super V> filter) {
+            Objects.requireNonNull(filter);
+            return removeNodes(e -> filter.test(e.value), false);
+        }
+        public final boolean removeAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            return removeNodes(e -> c.contains(e.value), false);
+        }
+        public final boolean retainAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            return removeNodes(e -> !c.contains(e.value), false);
+        }
         public final void forEach(Consumer<? super V> action) {
             Node<K,V>[] tab;
             if (action == null)
                 throw new NullPointerException();
+            finishResize();
             if (size > 0 && (tab = table) != null) {
                 int mc = modCount;
-                for (int i = 0; i < tab.length; ++i) {
+                for (int i = nextBin(tab, 0); i < tab.length; i = nextBin(tab, i + 1)) {
                     for (Node<K,V> e = tab[i]; e != null; e = e.next)
                         action.accept(e.value);
                 }
@@ -963,7 +2446,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 return false;
             Map.Entry<?,?> e = (Map.Entry<?,?>) o;
             Object key = e.getKey();
-            Node<K,V> candidate = getNode(hash(key), key);
+            Node<K,V> candidate = getNode(hashOf(key), key);
             return candidate != null && candidate.equals(e);
         }
         public final boolean remove(Object o) {
@@ -971,22 +2454,44 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 Map.Entry<?,?> e = (Map.Entry<?,?>) o;
                 Object key = e.getKey();
                 Object value = e.getValue();
-                return removeNode(hash(key), key, value, true, true) != null;
+                return removeNode(hashOf(key), key, value, true, true) != null;
             }
             return false;
         }
         public final Spliterator<Map.Entry<K,V>> spliterator() {
             return new EntrySpliterator<>(HashMap.this, 0, -1, 0, 0);
         }
+        public final boolean removeIf(Predicate<? super Map.Entry<K,V>> filter) {
+            Objects.requireNonNull(filter);
+            return removeNodes(filter, true);
+        }
+        public final boolean removeAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            if (c.size() < size) {
+                boolean modified = false;
+                for (Object o : c)
+                    modified |= remove(o);
+                return modified;
+            }
+            return removeNodes(c::contains, true);
+        }
+        public final boolean retainAll(Collection<?> c) {
+            Objects.requireNonNull(c);
+            return removeNodes(e -> !c.contains(e), true);
+        }
         public final void forEach(Consumer<? super Map.Entry<K,V>> action) {
             Node<K,V>[] tab;
             if (action == null)
                 throw new NullPointerException();
+            finishResize();
             if (size > 0 && (tab = table) != null) {
                 int mc = modCount;
-                for (int i = 0; i < tab.length; ++i) {
-                    for (Node<K,V> e = tab[i]; e != null; e = e.next)
+                for (int i = nextBin(tab, 0); i < tab.length; i = nextBin(tab, i + 1)) {
+                    for (Node<K,V> e = tab[i]; e != null; e = e.next) {
+                        if ((modes & NODE_RECYCLING) != 0)
+                            e.escaped = true;
                         action.accept(e);
+                    }
                 }
                 if (modCount != mc)
                     throw new ConcurrentModificationException();
@@ -999,23 +2504,23 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     @Override
     public V getOrDefault(Object key, V defaultValue) {
         Node<K,V> e;
-        return (e = getNode(hash(key), key)) == null ? defaultValue : e.value;
+        return (e = getNode(hashOf(key), key)) == null ? defaultValue : e.value;
     }
 
     @Override
     public V putIfAbsent(K key, V value) {
-        return putVal(hash(key), key, value, true, true);
+        return putVal(hashOf(key), key, value, true, true);
     }
 
     @Override
     public boolean remove(Object key, Object value) {
-        return removeNode(hash(key), key, value, true, true) != null;
+        return removeNode(hashOf(key), key, value, true, true) != null;
     }
 
     @Override
     public boolean replace(K key, V oldValue, V newValue) {
         Node<K,V> e; V v;
-        if ((e = getNode(hash(key), key)) != null &&
+        if ((e = getNode(hashOf(key), key)) != null &&
             ((v = e.value) == oldValue || (v != null && v.equals(oldValue)))) {
             e.value = newValue;
             afterNodeAccess(e);
@@ -1027,7 +2532,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     @Override
     public V replace(K key, V value) {
         Node<K,V> e;
-        if ((e = getNode(hash(key), key)) != null) {
+        if ((e = getNode(hashOf(key), key)) != null) {
             V oldValue = e.value;
             e.value = value;
             afterNodeAccess(e);
@@ -1041,7 +2546,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                              Function<? super K, ? extends V> mappingFunction) {
         if (mappingFunction == null)
             throw new NullPointerException();
-        int hash = hash(key);
+        int hash = hashOf(key);
         Node<K,V>[] tab; Node<K,V> first; int n, i;
         int binCount = 0;
         TreeNode<K,V> t = null;
@@ -1049,7 +2554,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         if (size > threshold || (tab = table) == null ||
             (n = tab.length) == 0)
             n = (tab = resize()).length;
-        if ((first = tab[i = (n - 1) & hash]) != null) {
+        if (oldTable != null)
+            transferFor(hash);
+        if ((first = binAt(tab, i = (n - 1) & hash)) != null) {
             if (first instanceof TreeNode)
                 old = (t = (TreeNode<K,V>)first).getTreeNode(hash, key);
             else {
@@ -1081,12 +2588,17 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             t.putTreeVal(this, tab, hash, key, v);
         else {
             tab[i] = newNode(hash, key, v, first);
+            if ((modes & (LAZY_CLEAR | OCCUPANCY_BITMAP)) != 0)
+                binFilled(i);
             if (binCount >= TREEIFY_THRESHOLD - 1)
                 treeifyBin(tab, hash);
         }
         ++modCount;
         ++size;
         afterNodeInsertion(true);
+        if ((t != null || binCount >= TREEIFY_THRESHOLD - 1) &&
+            (modes & HASH_FLOODING_DEFENSE) != 0)
+            noteDegradedBin(key);
         return v;
     }
 
@@ -1095,7 +2607,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         if (remappingFunction == null)
             throw new NullPointerException();
         Node<K,V> e; V oldValue;
-        int hash = hash(key);
+        int hash = hashOf(key);
         if ((e = getNode(hash, key)) != null &&
             (oldValue = e.value) != null) {
             V v = remappingFunction.apply(key, oldValue);
@@ -1115,7 +2627,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                      BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
         if (remappingFunction == null)
             throw new NullPointerException();
-        int hash = hash(key);
+        int hash = hashOf(key);
         Node<K,V>[] tab; Node<K,V> first; int n, i;
         int binCount = 0;
         TreeNode<K,V> t = null;
@@ -1123,7 +2635,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         if (size > threshold || (tab = table) == null ||
             (n = tab.length) == 0)
             n = (tab = resize()).length;
-        if ((first = tab[i = (n - 1) & hash]) != null) {
+        if (oldTable != null)
+            transferFor(hash);
+        if ((first = binAt(tab, i = (n - 1) & hash)) != null) {
             if (first instanceof TreeNode)
                 old = (t = (TreeNode<K,V>)first).getTreeNode(hash, key);
             else {
@@ -1153,106 +2667,621 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 t.putTreeVal(this, tab, hash, key, v);
             else {
                 tab[i] = newNode(hash, key, v, first);
+                if ((modes & (LAZY_CLEAR | OCCUPANCY_BITMAP)) != 0)
+                    binFilled(i);
+                if (binCount >= TREEIFY_THRESHOLD - 1)
+                    treeifyBin(tab, hash);
+            }
+            ++modCount;
+            ++size;
+            afterNodeInsertion(true);
+            if ((t != null || binCount >= TREEIFY_THRESHOLD - 1) &&
+                (modes & HASH_FLOODING_DEFENSE) != 0)
+                noteDegradedBin(key);
+        }
+        return v;
+    }
+
+    @Override
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null)
+            throw new NullPointerException();
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        int hash = hashOf(key);
+        Node<K,V>[] tab; Node<K,V> first; int n, i;
+        int binCount = 0;
+        TreeNode<K,V> t = null;
+        Node<K,V> old = null;
+        if (size > threshold || (tab = table) == null ||
+            (n = tab.length) == 0)
+            n = (tab = resize()).length;
+        if (oldTable != null)
+            transferFor(hash);
+        if ((first = binAt(tab, i = (n - 1) & hash)) != null) {
+            if (first instanceof TreeNode)
+                old = (t = (TreeNode<K,V>)first).getTreeNode(hash, key);
+            else {
+                Node<K,V> e = first; K k;
+                do {
+                    if (e.hash == hash &&
+                        ((k = e.key) == key || (key != null && key.equals(k)))) {
+                        old = e;
+                        break;
+                    }
+                    ++binCount;
+                } while ((e = e.next) != null);
+            }
+        }
+        if (old != null) {
+            V v;
+            if (old.value != null)
+                v = remappingFunction.apply(old.value, value);
+            else
+                v = value;
+            if (v != null) {
+                old.value = v;
+                afterNodeAccess(old);
+            }
+            else
+                removeNode(hash, key, null, false, true);
+            return v;
+        }
+        if (value != null) {
+            if (t != null)
+                t.putTreeVal(this, tab, hash, key, value);
+            else {
+                tab[i] = newNode(hash, key, value, first);
+                if ((modes & (LAZY_CLEAR | OCCUPANCY_BITMAP)) != 0)
+                    binFilled(i);
                 if (binCount >= TREEIFY_THRESHOLD - 1)
                     treeifyBin(tab, hash);
             }
             ++modCount;
             ++size;
             afterNodeInsertion(true);
+            if ((t != null || binCount >= TREEIFY_THRESHOLD - 1) &&
+                (modes & HASH_FLOODING_DEFENSE) != 0)
+                noteDegradedBin(key);
+        }
+        return value;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Node<K,V>[] tab;
+        if (action == null)
+            throw new NullPointerException();
+        finishResize();
+        if (size > 0 && (tab = table) != null) {
+            int mc = modCount;
+            for (int i = nextBin(tab, 0); i < tab.length; i = nextBin(tab, i + 1)) {
+                for (Node<K,V> e = tab[i]; e != null; e = e.next)
+                    action.accept(e.key, e.value);
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        Node<K,V>[] tab;
+        if (function == null)
+            throw new NullPointerException();
+        finishResize();
+        if (size > 0 && (tab = table) != null) {
+            int mc = modCount;
+            for (int i = nextBin(tab, 0); i < tab.length; i = nextBin(tab, i + 1)) {
+                for (Node<K,V> e = tab[i]; e != null; e = e.next) {
+                    e.value = function.apply(e.key, e.value);
+                }
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * 并行批量操作的粒度：按 {@link java.util.concurrent.ConcurrentHashMap} 的约定，
+     * 根据 parallelismThreshold 返回拆分的次数。返回0表示在当前线程中顺序执行。
+     */
+    final int batchFor(long b) {
+        long n;
+        if (b == Long.MAX_VALUE || (n = size) <= 1L || n < b)
+            return 0;
+        int sp = ForkJoinPool.getCommonPoolParallelism() << 2; // slack of 4
+        return (b <= 0L || (n /= b) >= sp) ? sp : (int)n;
+    }
+
+    /**
+     * 执行批量任务：batch 为0时直接在当前线程中扫描，否则交给公共的 ForkJoinPool
+     */
+    static <K,V,R> R invokeBulk(BulkTask<K,V,R> task) {
+        return (task.batch > 0) ? ForkJoinPool.commonPool().invoke(task) : task.scan();
+    }
+
+    /**
+     * 并行地对每个映射执行给定的操作。
+     *
+     * 与 {@link java.util.concurrent.ConcurrentHashMap} 的批量操作一样，parallelismThreshold 是
+     * 并行执行所需的（估计的）映射数：映射数小于它时在当前线程中顺序执行，{@code Long.MAX_VALUE}
+     * 总是顺序执行，1 则按公共 {@link ForkJoinPool} 的并行度拆分出最多的任务。
+     * 并行执行时表被拆分成互不相交的下标范围，每个任务只遍历自己的桶，不创建任何 Map.Entry 对象；
+     * modCount 只在所有任务完成之后检查一次。
+     *
+     * action 可能在多个线程中同时执行，调用的顺序不确定，执行期间不能修改这个map，
+     * 自身访问的共享状态需要自行同步。LinkedHashMap 也按桶的顺序而不是链表的顺序访问。
+     *
+     * @param parallelismThreshold 并行执行所需的映射数
+     * @param action 对每个映射执行的操作
+     * @throws NullPointerException 如果action为null
+     * @throws ConcurrentModificationException 如果执行期间map被修改
+     */
+    public void forEach(long parallelismThreshold,
+                        BiConsumer<? super K, ? super V> action) {
+        Node<K,V>[] tab;
+        if (action == null)
+            throw new NullPointerException();
+        finishResize();
+        if (size > 0 && (tab = table) != null) {
+            int mc = modCount;
+            invokeBulk(new ForEachTask<>(this, tab, 0, tab.length,
+                                         batchFor(parallelismThreshold), action));
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * 并行地把每个映射的value替换为function的结果，用于对所有映射的批量重新计算。
+     * 每个结点只被一个任务修改，所有任务完成之后新的value对调用者可见。
+     * parallelismThreshold 和并发的约定见 {@link #forEach(long, BiConsumer)}。
+     *
+     * @param parallelismThreshold 并行执行所需的映射数
+     * @param function 计算新value的函数
+     * @throws NullPointerException 如果function为null
+     * @throws ConcurrentModificationException 如果执行期间map被修改
+     */
+    public void replaceAll(long parallelismThreshold,
+                           BiFunction<? super K, ? super V, ? extends V> function) {
+        Node<K,V>[] tab;
+        if (function == null)
+            throw new NullPointerException();
+        finishResize();
+        if (size > 0 && (tab = table) != null) {
+            int mc = modCount;
+            invokeBulk(new ReplaceAllTask<>(this, tab, 0, tab.length,
+                                            batchFor(parallelismThreshold), function));
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * 并行地对每个映射执行searchFunction，返回任意一个非null的结果；找到之后其它任务尽快停止，
+     * 不再处理剩下的桶。所有结果都为null时返回null。
+     * parallelismThreshold 和并发的约定见 {@link #forEach(long, BiConsumer)}。
+     *
+     * @param parallelismThreshold 并行执行所需的映射数
+     * @param searchFunction 对每个映射返回非null的结果表示找到，否则返回null
+     * @param <U> 结果的类型
+     * @return 任意一个非null的结果，没有时返回null
+     * @throws NullPointerException 如果searchFunction为null
+     * @throws ConcurrentModificationException 如果执行期间map被修改
+     */
+    public <U> U search(long parallelismThreshold,
+                        BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+        Node<K,V>[] tab;
+        if (searchFunction == null)
+            throw new NullPointerException();
+        finishResize();
+        if (size > 0 && (tab = table) != null) {
+            int mc = modCount;
+            AtomicReference<U> result = new AtomicReference<>();
+            invokeBulk(new SearchTask<>(this, tab, 0, tab.length,
+                                        batchFor(parallelismThreshold), searchFunction, result));
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+            return result.get();
+        }
+        return null;
+    }
+
+    /**
+     * 并行地用transformer转换每个映射，再用reducer合并所有非null的结果。
+     * 合并的顺序不确定，reducer应当满足结合律和交换律。
+     * parallelismThreshold 和并发的约定见 {@link #forEach(long, BiConsumer)}。
+     *
+     * @param parallelismThreshold 并行执行所需的映射数
+     * @param transformer 把映射转换成待合并的值，返回null表示跳过这个映射
+     * @param reducer 合并两个值
+     * @param <U> 结果的类型
+     * @return 合并的结果，没有非null的值时返回null
+     * @throws NullPointerException 如果transformer或者reducer为null
+     * @throws ConcurrentModificationException 如果执行期间map被修改
+     */
+    public <U> U reduce(long parallelismThreshold,
+                        BiFunction<? super K, ? super V, ? extends U> transformer,
+                        BiFunction<? super U, ? super U, ? extends U> reducer) {
+        Node<K,V>[] tab;
+        if (transformer == null || reducer == null)
+            throw new NullPointerException();
+        finishResize();
+        if (size > 0 && (tab = table) != null) {
+            int mc = modCount;
+            U r = invokeBulk(new ReduceTask<>(this, tab, 0, tab.length,
+                                              batchFor(parallelismThreshold), transformer, reducer));
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+            return r;
+        }
+        return null;
+    }
+
+    /**
+     * 并行地用reducer合并所有非null的value。
+     * 合并的顺序不确定，reducer应当满足结合律和交换律。
+     *
+     * @param parallelismThreshold 并行执行所需的映射数
+     * @param reducer 合并两个value
+     * @return 合并的结果，map为空或者所有value都为null时返回null
+     * @throws NullPointerException 如果reducer为null
+     * @throws ConcurrentModificationException 如果执行期间map被修改
+     * @see #reduce(long, BiFunction, BiFunction)
+     */
+    public V reduceValues(long parallelismThreshold,
+                          BiFunction<? super V, ? super V, ? extends V> reducer) {
+        if (reducer == null)
+            throw new NullPointerException();
+        return reduce(parallelismThreshold, (k, v) -> v, reducer);
+    }
+
+    /**
+     * 并行批量操作的任务：处理tab中下标在 [lo, hi) 之间的桶。batch 大于0时对半拆分成两个子任务，
+     * batch 每次减半，与 ConcurrentHashMap 的批量任务相同。两个子任务的结果用 combine 合并。
+     */
+    abstract static class BulkTask<K,V,R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = -3417862459112364372L;
+        final HashMap<K,V> map;
+        final Node<K,V>[] tab;
+        final int lo, hi, batch;
+
+        BulkTask(HashMap<K,V> map, Node<K,V>[] tab, int lo, int hi, int batch) {
+            this.map = map;
+            this.tab = tab;
+            this.lo = lo;
+            this.hi = hi;
+            this.batch = batch;
+        }
+
+        /**
+         * 创建处理 [l, h) 的同类任务
+         */
+        abstract BulkTask<K,V,R> subtask(int l, int h, int b);
+
+        /**
+         * 在当前线程中处理 [lo, hi) 中的所有结点
+         */
+        abstract R scan();
+
+        R combine(R a, R b) {
+            return null;
+        }
+
+        /**
+         * 剩下的桶是否不需要再处理
+         */
+        boolean done() {
+            return false;
+        }
+
+        protected final R compute() {
+            int l = lo, h = hi;
+            if (batch > 0 && h - l > 1 && !done()) {
+                int mid = (l + h) >>> 1, b = batch >>> 1;
+                BulkTask<K,V,R> left = subtask(l, mid, b), right = subtask(mid, h, b);
+                invokeAll(left, right);
+                return combine(left.join(), right.join());
+            }
+            return scan();
+        }
+    }
+
+    static final class ForEachTask<K,V> extends BulkTask<K,V,Void> {
+        private static final long serialVersionUID = 7396405893817652712L;
+        final BiConsumer<? super K, ? super V> action;
+
+        ForEachTask(HashMap<K,V> map, Node<K,V>[] tab, int lo, int hi, int batch,
+                    BiConsumer<? super K, ? super V> action) {
+            super(map, tab, lo, hi, batch);
+            this.action = action;
+        }
+
+        BulkTask<K,V,Void> subtask(int l, int h, int b) {
+            return new ForEachTask<>(map, tab, l, h, b, action);
+        }
+
+        Void scan() {
+            HashMap<K,V> m = map;
+            Node<K,V>[] t = tab;
+            for (int i = m.nextBin(t, lo), h = hi; i < h; i = m.nextBin(t, i + 1)) {
+                for (Node<K,V> e = t[i]; e != null; e = e.next)
+                    action.accept(e.key, e.value);
+            }
+            return null;
+        }
+    }
+
+    static final class ReplaceAllTask<K,V> extends BulkTask<K,V,Void> {
+        private static final long serialVersionUID = -1265903780152338120L;
+        final BiFunction<? super K, ? super V, ? extends V> function;
+
+        ReplaceAllTask(HashMap<K,V> map, Node<K,V>[] tab, int lo, int hi, int batch,
+                       BiFunction<? super K, ? super V, ? extends V> function) {
+            super(map, tab, lo, hi, batch);
+            this.function = function;
+        }
+
+        BulkTask<K,V,Void> subtask(int l, int h, int b) {
+            return new ReplaceAllTask<>(map, tab, l, h, b, function);
+        }
+
+        Void scan() {
+            HashMap<K,V> m = map;
+            Node<K,V>[] t = tab;
+            for (int i = m.nextBin(t, lo), h = hi; i < h; i = m.nextBin(t, i + 1)) {
+                for (Node<K,V> e = t[i]; e != null; e = e.next)
+                    e.value = function.apply(e.key, e.value);
+            }
+            return null;
+        }
+    }
+
+    static final class SearchTask<K,V,U> extends BulkTask<K,V,Void> {
+        private static final long serialVersionUID = 2830496247113628554L;
+        final BiFunction<? super K, ? super V, ? extends U> searchFunction;
+        final AtomicReference<U> result;
+
+        SearchTask(HashMap<K,V> map, Node<K,V>[] tab, int lo, int hi, int batch,
+                   BiFunction<? super K, ? super V, ? extends U> searchFunction,
+                   AtomicReference<U> result) {
+            super(map, tab, lo, hi, batch);
+            this.searchFunction = searchFunction;
+            this.result = result;
+        }
+
+        BulkTask<K,V,Void> subtask(int l, int h, int b) {
+            return new SearchTask<>(map, tab, l, h, b, searchFunction, result);
+        }
+
+        boolean done() {
+            return result.get() != null;
         }
-        return v;
-    }
 
-    @Override
-    public V merge(K key, V value,
-                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
-        if (value == null)
-            throw new NullPointerException();
-        if (remappingFunction == null)
-            throw new NullPointerException();
-        int hash = hash(key);
-        Node<K,V>[] tab; Node<K,V> first; int n, i;
-        int binCount = 0;
-        TreeNode<K,V> t = null;
-        Node<K,V> old = null;
-        if (size > threshold || (tab = table) == null ||
-            (n = tab.length) == 0)
-            n = (tab = resize()).length;
-        if ((first = tab[i = (n - 1) & hash]) != null) {
-            if (first instanceof TreeNode)
-                old = (t = (TreeNode<K,V>)first).getTreeNode(hash, key);
-            else {
-                Node<K,V> e = first; K k;
-                do {
-                    if (e.hash == hash &&
-                        ((k = e.key) == key || (key != null && key.equals(k)))) {
-                        old = e;
-                        break;
+        Void scan() {
+            HashMap<K,V> m = map;
+            Node<K,V>[] t = tab;
+            for (int i = m.nextBin(t, lo), h = hi; i < h && result.get() == null;
+                 i = m.nextBin(t, i + 1)) {
+                for (Node<K,V> e = t[i]; e != null; e = e.next) {
+                    U u;
+                    if ((u = searchFunction.apply(e.key, e.value)) != null) {
+                        result.compareAndSet(null, u);
+                        return null;
                     }
-                    ++binCount;
-                } while ((e = e.next) != null);
+                }
             }
+            return null;
         }
-        if (old != null) {
-            V v;
-            if (old.value != null)
-                v = remappingFunction.apply(old.value, value);
-            else
-                v = value;
-            if (v != null) {
-                old.value = v;
-                afterNodeAccess(old);
-            }
-            else
-                removeNode(hash, key, null, false, true);
-            return v;
+    }
+
+    static final class ReduceTask<K,V,U> extends BulkTask<K,V,U> {
+        private static final long serialVersionUID = -6548932361458372290L;
+        final BiFunction<? super K, ? super V, ? extends U> transformer;
+        final BiFunction<? super U, ? super U, ? extends U> reducer;
+
+        ReduceTask(HashMap<K,V> map, Node<K,V>[] tab, int lo, int hi, int batch,
+                   BiFunction<? super K, ? super V, ? extends U> transformer,
+                   BiFunction<? super U, ? super U, ? extends U> reducer) {
+            super(map, tab, lo, hi, batch);
+            this.transformer = transformer;
+            this.reducer = reducer;
         }
-        if (value != null) {
-            if (t != null)
-                t.putTreeVal(this, tab, hash, key, value);
-            else {
-                tab[i] = newNode(hash, key, value, first);
-                if (binCount >= TREEIFY_THRESHOLD - 1)
-                    treeifyBin(tab, hash);
+
+        BulkTask<K,V,U> subtask(int l, int h, int b) {
+            return new ReduceTask<>(map, tab, l, h, b, transformer, reducer);
+        }
+
+        U combine(U a, U b) {
+            return (a == null) ? b : (b == null) ? a : reducer.apply(a, b);
+        }
+
+        U scan() {
+            HashMap<K,V> m = map;
+            Node<K,V>[] t = tab;
+            U r = null;
+            for (int i = m.nextBin(t, lo), h = hi; i < h; i = m.nextBin(t, i + 1)) {
+                for (Node<K,V> e = t[i]; e != null; e = e.next) {
+                    U u;
+                    if ((u = transformer.apply(e.key, e.value)) != null)
+                        r = (r == null) ? u : reducer.apply(r, u);
+                }
             }
-            ++modCount;
-            ++size;
-            afterNodeInsertion(true);
+            return r;
         }
-        return value;
     }
 
-    @Override
-    public void forEach(BiConsumer<? super K, ? super V> action) {
+    /**
+     * 返回一个包含当前所有映射的不可变map，它用最小完美哈希代替桶和链表，
+     * 占用的空间更少，查找时只需要一次探测和一次 equals。
+     * 之后对这个 HashMap 的修改不会影响返回的map。
+     *
+     * @return 当前映射的不可变快照
+     * @see FrozenHashMap
+     */
+    public FrozenHashMap<K,V> freeze() {
         Node<K,V>[] tab;
-        if (action == null)
-            throw new NullPointerException();
+        finishResize();
+        int n = 0;
+        Object[] ks = new Object[size], vs = new Object[size];
         if (size > 0 && (tab = table) != null) {
-            int mc = modCount;
-            for (int i = 0; i < tab.length; ++i) {
-                for (Node<K,V> e = tab[i]; e != null; e = e.next)
-                    action.accept(e.key, e.value);
+            for (int i = nextBin(tab, 0); i < tab.length; i = nextBin(tab, i + 1)) {
+                for (Node<K,V> e = tab[i]; e != null; e = e.next) {
+                    ks[n] = e.key;
+                    vs[n++] = e.value;
+                }
             }
-            if (modCount != mc)
-                throw new ConcurrentModificationException();
         }
+        return new FrozenHashMap<>(ks, vs, n);
     }
 
-    @Override
-    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
-        Node<K,V>[] tab;
-        if (function == null)
-            throw new NullPointerException();
-        if (size > 0 && (tab = table) != null) {
-            int mc = modCount;
-            for (int i = 0; i < tab.length; ++i) {
-                for (Node<K,V> e = tab[i]; e != null; e = e.next) {
-                    e.value = function.apply(e.key, e.value);
+    /**
+     * 返回这个map内部结构的统计快照：容量、映射数、阈值、空桶数、链表长度的直方图、
+     * 红黑树桶的数量和深度、查找命中时平均和最多比较的结点数，以及扩容、树化和反树化的累计次数。
+     *
+     * 只读取table（增量扩容期间还有旧表中尚未迁移的桶），不修改map，也不迁移任何桶；
+     * 耗时与容量加上树中的结点数成正比，除了返回的快照之外不分配内存，可以定期对正在使用的map调用。
+     * 与其它读操作一样，多线程访问时需要外部同步，否则结果可能不一致。
+     *
+     * 累计次数从map创建（或者 clone、反序列化）开始计算。
+     *
+     * @return 统计快照
+     * @see HashMapStats
+     */
+    public HashMapStats stats() {
+        Node<K,V>[] tab = table, old = oldTable;
+        Extras<K,V> ex = extras;
+        int[] chains = new int[TREEIFY_THRESHOLD + 1];
+        long probes = 0L;
+        int entries = 0, empty = 0, maxChain = 0;
+        int treeBins = 0, treeNodes = 0, maxDepth = 0;
+        for (int t = 0; t < 2; ++t) {
+            Node<K,V>[] a = (t == 0) ? tab : old;
+            if (a == null)
+                continue;
+            for (int i = 0; i < a.length; ++i) {
+                Node<K,V> e = (t == 0) ? binAt(a, i) : a[i];
+                if (e == null) {
+                    if (t == 0)
+                        ++empty;
+                }
+                else if (e instanceof TreeNode) {
+                    //中序遍历，沿parent指针回溯，不需要栈
+                    TreeNode<K,V> p = ((TreeNode<K,V>)e).root(), q;
+                    int d = 1;
+                    ++treeBins;
+                    for (; p.left != null; p = p.left)
+                        ++d;
+                    for (;;) {
+                        ++treeNodes;
+                        probes += d;
+                        if (d > maxDepth)
+                            maxDepth = d;
+                        if (p.right != null) {
+                            p = p.right;
+                            ++d;
+                            for (; p.left != null; p = p.left)
+                                ++d;
+                        }
+                        else {
+                            while ((q = p.parent) != null && q.right == p) {
+                                p = q;
+                                --d;
+                            }
+                            if (q == null)
+                                break;
+                            p = q;
+                            --d;
+                        }
+                    }
+                }
+                else {
+                    int len = 0;
+                    for (; e != null; e = e.next)
+                        probes += ++len;
+                    entries += len;
+                    if (len >= chains.length)
+                        chains = Arrays.copyOf(chains, Math.max(len + 1, chains.length << 1));
+                    ++chains[len];
+                    if (len > maxChain)
+                        maxChain = len;
                 }
             }
-            if (modCount != mc)
-                throw new ConcurrentModificationException();
         }
+        entries += treeNodes;
+        chains = Arrays.copyOf(chains, maxChain + 1);
+        chains[0] = empty;
+        return new HashMapStats((tab == null) ? 0 : tab.length, size, threshold, loadFactor,
+                                old != null, chains, treeBins, treeNodes, maxDepth,
+                                (entries == 0) ? 0.0 : (double)probes / entries,
+                                Math.max(maxChain, maxDepth),
+                                (ex == null) ? 0 : ex.resizeCount,
+                                (ex == null) ? 0 : ex.treeifyCount,
+                                (ex == null) ? 0 : ex.untreeifyCount);
+    }
+
+    /**
+     * 开启或关闭所有 HashMap（包括 LinkedHashMap 和 HashSet 内部的map）的 JDK Flight Recorder 事件：
+     * <ul>
+     * <li>java.util.HashMapResize：表扩容，包括新旧容量、映射数、迁移方式和迁移旧桶的耗时；
+     * <li>java.util.HashMapTreeify：链表桶被转换成红黑树，包括桶下标、结点数和key的类型；
+     * <li>java.util.HashMapUntreeify：红黑树桶被转换回链表；
+     * <li>java.util.HashMapTreeSplit：扩容时红黑树桶被拆分到两个桶中；
+     * <li>java.util.HashMapLongProbe：查找时遍历的链表长度超过
+     *     {@link #setLongProbeEventThreshold(int) 阈值}，包括是否命中和key的类型。
+     * </ul>
+     * 所有事件都有一个 map 字段（map的 identityHashCode），用来关联同一个map上的事件，
+     * 再结合事件的时间戳和线程，把GC压力和请求的停顿对应到具体的map增长上。
+     *
+     * 关闭时（默认）扩容和树化只多一次静态字段的读取，查找只多一次整数比较，
+     * 不会加载 jdk.jfr 中的类，也不分配事件对象。开启之后，是否真正记录还取决于JFR是否在录制，
+     * 以及录制配置中是否启用了这些事件。长查找事件在冲突严重的map上可能非常频繁，
+     * 必要时在录制配置中为它设置 threshold 或者只在排查问题时开启。
+     *
+     * 设置对所有线程生效，但没有同步，其它线程可能稍晚才看到变化。
+     *
+     * @param enabled 是否发出事件
+     */
+    public static void setFlightRecorderEvents(boolean enabled) {
+        flightRecorderEvents = enabled;
+        longProbeLimit = enabled ? longProbeThreshold : Integer.MAX_VALUE;
+    }
+
+    /**
+     * 是否发出 JDK Flight Recorder 事件
+     *
+     * @see #setFlightRecorderEvents(boolean)
+     */
+    public static boolean isFlightRecorderEvents() {
+        return flightRecorderEvents;
+    }
+
+    /**
+     * 设置长查找事件的阈值：一次查找在链表桶中比较的结点数超过chainLength时发出
+     * java.util.HashMapLongProbe 事件。红黑树桶中的查找不会发出这个事件。
+     * 默认值是 TREEIFY_THRESHOLD（8），即容量足够时本该被树化的长度。
+     *
+     * @param chainLength 阈值
+     * @throws IllegalArgumentException 如果chainLength小于1
+     * @see #setFlightRecorderEvents(boolean)
+     */
+    public static void setLongProbeEventThreshold(int chainLength) {
+        if (chainLength < 1)
+            throw new IllegalArgumentException("Illegal chain length: " + chainLength);
+        longProbeThreshold = chainLength;
+        if (flightRecorderEvents)
+            longProbeLimit = chainLength;
+    }
+
+    /**
+     * 返回长查找事件的阈值
+     *
+     * @see #setLongProbeEventThreshold(int)
+     */
+    public static int getLongProbeEventThreshold() {
+        return longProbeThreshold;
     }
 
     /* ------------------------------------------------------------ */
@@ -1300,6 +3329,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     private void writeObject(java.io.ObjectOutputStream s)
         throws IOException {
+        finishResize();
         int buckets = capacity();
         // Write out the threshold, loadfactor, and any hidden stuff
         s.defaultWriteObject();
@@ -1352,9 +3382,303 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                     K key = (K) s.readObject();
                 @SuppressWarnings("unchecked")
                     V value = (V) s.readObject();
-                putVal(hash(key), key, value, false, false);
+                putVal(hashOf(key), key, value, false, false);
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // Binary snapshots
+
+    /**
+     * 快照格式的魔数 "HMS1"，同时写在末尾，用来发现截断的快照
+     */
+    static final int SNAPSHOT_MAGIC = 0x484D5331;
+
+    /**
+     * 快照头部的字节数：魔数、容量、映射数、负载因子、扰动函数、标志
+     */
+    static final int SNAPSHOT_HEADER = 18;
+
+    /**
+     * 快照标志：写入时开启了哈希洪水防御，缓存的hash依赖随机种子，读取时必须重新计算
+     */
+    static final int SNAPSHOT_SEEDED_HASHES = 1;
+
+    /**
+     * 读写快照时缓冲区的初始大小。单个映射编码后超过这个大小时缓冲区会扩大到能容纳这个映射。
+     */
+    static final int SNAPSHOT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * 读取快照时对前多少个映射重新计算hash，与快照中缓存的hash比较
+     */
+    static final int SNAPSHOT_VERIFIED_ENTRIES = 64;
+
+    /**
+     * 把所有映射以紧凑的二进制格式写入out，键和值由给定的 {@link BinaryCodec} 编码。
+     * 用 {@link #readSnapshot} 读回。
+     *
+     * 序列化（writeObject）把每个键和值都交给 ObjectOutputStream.writeObject，读取时再逐个调用
+     * hashCode、putVal 和 equals 重建map，千万级的map需要几分钟。快照按桶的顺序写出每个映射缓存的hash
+     * 和编码后的字节，并记录表的容量，读取时直接按hash把结点放进预先分配好的表中，
+     * 不需要重新计算hash，也不需要调用 equals。
+     *
+     * 格式（大端字节序）：
+     * <pre>
+     *   int   魔数 0x484D5331
+     *   int   容量（桶数组的长度）
+     *   int   映射数 n
+     *   float 负载因子
+     *   byte  扰动函数，{@link HashSpreader} 的序号
+     *   byte  标志，1 表示开启了哈希洪水防御，hash不能复用
+     *   n 个映射，按桶的下标顺序，同一个桶中按next的顺序：
+     *     int hash | int 键的长度 | int 值的长度 | 键的编码 | 值的编码
+     *     （长度为-1表示null，没有编码）
+     *   int   魔数
+     * </pre>
+     *
+     * 写入使用一个64KB的缓冲区，写满之后交给out，内存占用与map的大小无关。
+     * 与 writeObject 一样，写入期间不能修改map。
+     *
+     * 读取时复用缓存的hash，所以key的hashCode必须在不同的虚拟机中保持不变，例如 String、
+     * Integer、Long 这样按值计算hashCode的类型；按对象标识计算hashCode的key（包括枚举）不能使用快照。
+     *
+     * @param out 目标通道，写完之后不会关闭
+     * @param keyCodec key的编解码器
+     * @param valueCodec value的编解码器
+     * @throws IOException 如果写入out时发生I/O错误
+     * @throws NullPointerException 如果任一参数为null
+     * @throws ConcurrentModificationException 如果写入期间map被修改
+     */
+    public void writeSnapshot(WritableByteChannel out,
+                              BinaryCodec<? super K> keyCodec,
+                              BinaryCodec<? super V> valueCodec) throws IOException {
+        Objects.requireNonNull(out);
+        Objects.requireNonNull(keyCodec);
+        Objects.requireNonNull(valueCodec);
+        finishResize();
+        if ((modes & STALE_BINS) != 0)
+            purgeStale();
+        Node<K,V>[] tab = table;
+        int mc = modCount;
+        ByteBuffer buf = ByteBuffer.allocate(SNAPSHOT_BUFFER_SIZE);
+        buf.putInt(SNAPSHOT_MAGIC)
+           .putInt(capacity())
+           .putInt(size)
+           .putFloat(loadFactor)
+           .put((byte)getHashSpreader().ordinal())
+           .put((byte)((modes & HASH_FLOODING_DEFENSE) != 0 ? SNAPSHOT_SEEDED_HASHES : 0));
+        if (size > 0 && tab != null) {
+            for (int i = nextBin(tab, 0); i < tab.length; i = nextBin(tab, i + 1)) {
+                for (Node<K,V> e = tab[i]; e != null; e = e.next) {
+                    for (;;) {
+                        int start = buf.position();
+                        try {
+                            putSnapshotEntry(buf, e, keyCodec, valueCodec);
+                            break;
+                        } catch (BufferOverflowException x) {
+                            buf.position(start);
+                            if (start > 0)
+                                flushSnapshot(out, buf);
+                            else //一个映射就超过了缓冲区的大小
+                                buf = ByteBuffer.allocate(buf.capacity() << 1);
+                        }
+                    }
+                }
+            }
+        }
+        if (buf.remaining() < 4)
+            flushSnapshot(out, buf);
+        buf.putInt(SNAPSHOT_MAGIC);
+        flushSnapshot(out, buf);
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * 把结点e编码到buf中，空间不足时抛出 BufferOverflowException，由调用者恢复buf的位置
+     */
+    static <K,V> void putSnapshotEntry(ByteBuffer buf, Node<K,V> e,
+                                       BinaryCodec<? super K> keyCodec,
+                                       BinaryCodec<? super V> valueCodec) {
+        K k; V v;
+        if (buf.remaining() < 12)
+            throw new BufferOverflowException();
+        buf.putInt(e.hash);
+        int lengths = buf.position(), p;
+        buf.position(lengths + 8);
+        int kl = -1, vl = -1;
+        if ((k = e.key) != null) {
+            p = buf.position();
+            keyCodec.encode(k, buf);
+            kl = buf.position() - p;
+        }
+        if ((v = e.value) != null) {
+            p = buf.position();
+            valueCodec.encode(v, buf);
+            vl = buf.position() - p;
+        }
+        buf.putInt(lengths, kl).putInt(lengths + 4, vl);
+    }
+
+    static void flushSnapshot(WritableByteChannel out, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining())
+            out.write(buf);
+        buf.clear();
+    }
+
+    /**
+     * 读取 {@link #writeSnapshot} 写出的快照，返回一个新的 HashMap。
+     *
+     * 新map的负载因子和扰动函数与写出快照的map相同，容量与写出快照的map相同，
+     * 但不超过能容纳快照中所有映射的最小容量（至少为默认容量）。映射按桶的顺序依次读出，结点直接放到
+     * 由缓存的hash确定的桶的末尾，不调用 hashCode 和 equals；长度达到 TREEIFY_THRESHOLD 的桶在读完之后树化。
+     * 作为检查，前 SNAPSHOT_VERIFIED_ENTRIES 个key会重新计算hash，与缓存的不一致时（例如key的hashCode
+     * 依赖对象标识）之后的映射都改为按重新计算的hash逐个插入。写出时开启了哈希洪水防御的快照，
+     * 读出的map同样开启防御，所有的映射都逐个插入。
+     *
+     * 读取使用一个64KB的缓冲区（单个映射更大时扩大到能容纳它），in中快照之后的数据可能已经被读入缓冲区。
+     *
+     * @param in 源通道，读完之后不会关闭
+     * @param keyCodec key的编解码器，与写出时使用的相同
+     * @param valueCodec value的编解码器，与写出时使用的相同
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     * @return 包含快照中所有映射的map
+     * @throws java.io.EOFException 如果快照不完整
+     * @throws java.io.StreamCorruptedException 如果数据不是有效的快照
+     * @throws IOException 如果读取in时发生I/O错误
+     * @throws NullPointerException 如果任一参数为null
+     */
+    public static <K,V> HashMap<K,V> readSnapshot(ReadableByteChannel in,
+                                                  BinaryCodec<? extends K> keyCodec,
+                                                  BinaryCodec<? extends V> valueCodec)
+        throws IOException {
+        Objects.requireNonNull(in);
+        Objects.requireNonNull(keyCodec);
+        Objects.requireNonNull(valueCodec);
+        ByteBuffer buf = ByteBuffer.allocate(SNAPSHOT_BUFFER_SIZE);
+        buf.flip();
+        buf = fillSnapshot(in, buf, SNAPSHOT_HEADER);
+        int magic = buf.getInt(), cap = buf.getInt(), mappings = buf.getInt();
+        float lf = buf.getFloat();
+        int spread = buf.get(), flags = buf.get();
+        HashSpreader[] spreaders = HashSpreader.values();
+        if (magic != SNAPSHOT_MAGIC || cap <= 0 || cap > MAXIMUM_CAPACITY ||
+            (cap & (cap - 1)) != 0 || mappings < 0 || !(lf > 0) ||
+            spread < 0 || spread >= spreaders.length)
+            throw new StreamCorruptedException("Invalid HashMap snapshot header");
+        //通道的长度已知时，映射数不能超过剩下的字节数能容纳的映射数（每个映射至少12个字节）
+        if (in instanceof SeekableByteChannel) {
+            SeekableByteChannel sc = (SeekableByteChannel)in;
+            if ((long)mappings * 12 + 4 > sc.size() - sc.position() + buf.remaining())
+                throw new EOFException("Truncated HashMap snapshot");
+        }
+        HashMap<K,V> m = new HashMap<>(0, lf);
+        //头部中的容量不可信：映射很少而容量很大的快照只要几十个字节就能要求分配巨大的表，
+        //所以表最大只分配到能容纳mappings个映射的最小容量fit（不小于默认容量）
+        int fit = DEFAULT_INITIAL_CAPACITY;
+        while (fit < MAXIMUM_CAPACITY && m.thresholdFor(fit) < mappings)
+            fit <<= 1;
+        m.threshold = Math.min(cap, fit);
+        if (spreaders[spread] != HashSpreader.XOR_SHIFT)
+            m.setHashSpreader(spreaders[spread]);
+        boolean seeded = (flags & SNAPSHOT_SEEDED_HASHES) != 0;
+        if (seeded)
+            m.setHashFloodingDefense(true);
+        //容量不足以容纳所有映射的快照不是 writeSnapshot 写出的，容量大于fit的快照
+        //（例如写出之前删除过大量映射）按fit分配，这两种情况都只能逐个插入
+        boolean direct = !seeded && cap <= fit && mappings <= m.thresholdFor(cap);
+        Node<K,V>[] tab = null;
+        if (direct && mappings > 0) {
+            m.threshold = m.thresholdFor(cap);
+            @SuppressWarnings({"rawtypes","unchecked"})
+            Node<K,V>[] t = (Node<K,V>[])new Node[cap];
+            m.table = tab = t;
+        }
+        Node<K,V> tail = null;
+        int last = -1, binCount = 0;
+        for (int n = 0; n < mappings; ++n) {
+            buf = fillSnapshot(in, buf, 12);
+            int hash = buf.getInt(), kl = buf.getInt(), vl = buf.getInt();
+            if (kl < -1 || vl < -1 || (long)kl + vl > Integer.MAX_VALUE - 2)
+                throw new StreamCorruptedException("Invalid HashMap snapshot entry");
+            buf = fillSnapshot(in, buf, Math.max(kl, 0) + Math.max(vl, 0));
+            K key = null; V value = null;
+            int p = buf.position();
+            if (kl >= 0) {
+                key = keyCodec.decode(buf, kl);
+                buf.position(p += kl);
+            }
+            if (vl >= 0) {
+                value = valueCodec.decode(buf, vl);
+                buf.position(p + vl);
+            }
+            if (direct && n < SNAPSHOT_VERIFIED_ENTRIES && m.hashOf(key) != hash) {
+                m.snapshotBinDone(tab, last, binCount);
+                direct = false;
+            }
+            if (!direct) {
+                m.putVal(m.hashOf(key), key, value, false, false);
+                continue;
+            }
+            int i = hash & (cap - 1);
+            Node<K,V> e = m.newNode(hash, key, value, null);
+            if (i == last) {
+                tail.next = e;
+                ++binCount;
+            }
+            else {
+                if (i < last || tab[i] != null)
+                    throw new StreamCorruptedException("HashMap snapshot is not in bucket order");
+                m.snapshotBinDone(tab, last, binCount);
+                tab[i] = e;
+                last = i;
+                binCount = 1;
             }
+            tail = e;
+            ++m.size;
+        }
+        if (direct)
+            m.snapshotBinDone(tab, last, binCount);
+        buf = fillSnapshot(in, buf, 4);
+        if (buf.getInt() != SNAPSHOT_MAGIC)
+            throw new StreamCorruptedException("Invalid HashMap snapshot trailer");
+        return m;
+    }
+
+    /**
+     * readSnapshot 中一个桶读完之后调用，结点数达到 TREEIFY_THRESHOLD 时树化
+     */
+    final void snapshotBinDone(Node<K,V>[] tab, int i, int binCount) {
+        if (i >= 0 && binCount >= TREEIFY_THRESHOLD && tab.length >= MIN_TREEIFY_CAPACITY)
+            treeifyBin(tab, tab[i].hash);
+    }
+
+    /**
+     * 保证buf（读模式）中至少有n个字节，不足时从in中读取，n超过缓冲区的大小时换一个更大的缓冲区
+     *
+     * @return 可能是新的缓冲区
+     */
+    static ByteBuffer fillSnapshot(ReadableByteChannel in, ByteBuffer buf, int n)
+        throws IOException {
+        if (buf.remaining() >= n)
+            return buf;
+        if (n > buf.capacity()) {
+            ByteBuffer b = ByteBuffer.allocate(Math.max(n, buf.capacity() << 1));
+            b.put(buf);
+            buf = b;
         }
+        else
+            buf.compact();
+        while (buf.position() < n) {
+            if (in.read(buf) < 0)
+                throw new EOFException("Truncated HashMap snapshot");
+        }
+        buf.flip();
+        return buf;
     }
 
     /* ------------------------------------------------------------ */
@@ -1367,12 +3691,13 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         int index;             // current slot
 
         HashIterator() {
+            finishResize();
             expectedModCount = modCount;
             Node<K,V>[] t = table;
             current = next = null;
             index = 0;
             if (t != null && size > 0) { // advance to first entry
-                do {} while (index < t.length && (next = t[index++]) == null);
+                do {} while ((index = nextBin(t, index)) < t.length && (next = t[index++]) == null);
             }
         }
 
@@ -1388,7 +3713,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             if (e == null)
                 throw new NoSuchElementException();
             if ((next = (current = e).next) == null && (t = table) != null) {
-                do {} while (index < t.length && (next = t[index++]) == null);
+                do {} while ((index = nextBin(t, index)) < t.length && (next = t[index++]) == null);
             }
             return e;
         }
@@ -1401,7 +3726,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 throw new ConcurrentModificationException();
             current = null;
             K key = p.key;
-            removeNode(hash(key), key, null, false, false);
+            removeNode(hashOf(key), key, null, false, false);
             expectedModCount = modCount;
         }
     }
@@ -1418,19 +3743,30 @@ public class HashMap<K,V> extends AbstractMap<K,V>
 
     final class EntryIterator extends HashIterator
         implements Iterator<Map.Entry<K,V>> {
-        public final Map.Entry<K,V> next() { return nextNode(); }
+        public final Map.Entry<K,V> next() {
+            Node<K,V> e = nextNode();
+            if ((modes & NODE_RECYCLING) != 0)
+                e.escaped = true;
+            return e;
+        }
     }
 
     /* ------------------------------------------------------------ */
     // spliterators
 
     static class HashMapSpliterator<K,V> {
+        /**
+         * 没有占用位图时，拆分一个范围所抽样的桶数
+         */
+        static final int SPLIT_SAMPLES = 256;
+
         final HashMap<K,V> map;
         Node<K,V> current;          // current node
         int index;                  // current index, modified on advance/split
         int fence;                  // one past last index
         int est;                    // size estimate
         int expectedModCount;       // for comodification checks
+        int splitEst;               // size estimate of the prefix split off by splitIndex
 
         HashMapSpliterator(HashMap<K,V> m, int origin,
                            int fence, int est,
@@ -1446,6 +3782,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             int hi;
             if ((hi = fence) < 0) {
                 HashMap<K,V> m = map;
+                m.finishResize();
                 est = m.size;
                 expectedModCount = m.modCount;
                 Node<K,V>[] tab = m.table;
@@ -1458,6 +3795,98 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             getFence(); // force init
             return (long) est;
         }
+
+        /**
+         * trySplit 用：选择拆分点，使 [index, mid) 和 [mid, fence) 中的结点数大致相等。
+         *
+         * 按下标对半拆分时，稀疏或者分布不均的表（例如连续的小整数key只占用表的前一部分）
+         * 会得到结点数相差很大的两半，并行流中的任务负载不均衡。开启了占用位图时按非空桶的个数拆分，
+         * 位图中的计数是精确的；否则在范围内等距抽样 SPLIT_SAMPLES 个桶，两半的抽样明显不均衡时
+         * 按抽样中非空桶的累计数拆分，否则仍然对半拆分。两半的估计大小也按这个比例分配，而不是各取一半。
+         * 只能得到桶的个数而不是结点数，所以拆分出的部分仍然不报告 SIZED。
+         *
+         * @return 拆分点，-1表示不能拆分；拆分时前一半的估计大小存入 splitEst，est 减去这部分
+         */
+        final int splitIndex() {
+            int hi = getFence(), lo = index;
+            if (current != null || hi - lo < 2)
+                return -1;
+            HashMap<K,V> m = map;
+            Node<K,V>[] tab = m.table;
+            int mid = -1, total = 0, left = 0;
+            if (tab != null && tab.length >= hi) {
+                long[] occ = (m.extras == null) ? null : m.extras.occupied;
+                if (occ != null) {
+                    int w0 = lo >>> 6, w1 = (hi - 1) >>> 6;
+                    long first = -1L << lo, last = -1L >>> (63 - ((hi - 1) & 63));
+                    for (int w = w0; w <= w1; ++w) {
+                        long b = occ[w];
+                        if (w == w0)
+                            b &= first;
+                        if (w == w1)
+                            b &= last;
+                        total += Long.bitCount(b);
+                    }
+                    if (total >= 2) {
+                        int half = total >>> 1;
+                        for (int w = w0; mid < 0; ++w) {
+                            long b = occ[w];
+                            if (w == w0)
+                                b &= first;
+                            if (w == w1)
+                                b &= last;
+                            int c = Long.bitCount(b);
+                            if (left + c < half)
+                                left += c;
+                            else {
+                                for (;; b &= b - 1) {
+                                    if (++left == half) {
+                                        mid = (w << 6) + Long.numberOfTrailingZeros(b) + 1;
+                                        break;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+                else {
+                    int step = (hi - lo + SPLIT_SAMPLES - 1) / SPLIT_SAMPLES;
+                    int bisect = (lo + hi) >>> 1, below = 0;
+                    for (int i = lo; i < hi; i += step) {
+                        if (m.binAt(tab, i) != null) {
+                            ++total;
+                            if (i < bisect)
+                                ++below;
+                        }
+                    }
+                    //两半的抽样数之差在随机误差（约两倍标准差）以内时，按下标对半拆分更准确
+                    int skew = Math.abs(2 * below - total);
+                    if (total >= 2 && skew * skew > 4 * total) {
+                        int half = total >>> 1;
+                        for (int i = lo; ; i += step) {
+                            if (m.binAt(tab, i) != null && ++left == half) {
+                                mid = Math.min(i + step, hi - 1);
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            int e = est;
+            if (mid < 0) { //没有可用的计数，按下标对半拆分
+                mid = (lo + hi) >>> 1;
+                splitEst = est = e >>> 1;
+            }
+            else if (e < 2)
+                splitEst = est = e >>> 1;
+            else {
+                //两半都不能等于整个map的大小，否则会被误认为 SIZED
+                int le = (int)((long)e * left / total);
+                splitEst = Math.max(1, Math.min(le, e - 1));
+                est = e - splitEst;
+            }
+            return mid;
+        }
     }
 
     static final class KeySpliterator<K,V>
@@ -1469,9 +3898,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         }
 
         public KeySpliterator<K,V> trySplit() {
-            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
-            return (lo >= mid || current != null) ? null :
-                new KeySpliterator<>(map, lo, index = mid, est >>>= 1,
+            int lo = index, mid = splitIndex();
+            return (mid < 0) ? null :
+                new KeySpliterator<>(map, lo, index = mid, splitEst,
                                         expectedModCount);
         }
 
@@ -1480,6 +3909,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             if (action == null)
                 throw new NullPointerException();
             HashMap<K,V> m = map;
+            if (fence < 0)
+                m.finishResize();
             Node<K,V>[] tab = m.table;
             if ((hi = fence) < 0) {
                 mc = expectedModCount = m.modCount;
@@ -1492,8 +3923,11 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 Node<K,V> p = current;
                 current = null;
                 do {
-                    if (p == null)
+                    if (p == null) {
+                        if ((i = m.nextBin(tab, i)) >= hi)
+                            break;
                         p = tab[i++];
+                    }
                     else {
                         action.accept(p.key);
                         p = p.next;
@@ -1511,8 +3945,13 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             Node<K,V>[] tab = map.table;
             if (tab != null && tab.length >= (hi = getFence()) && index >= 0) {
                 while (current != null || index < hi) {
-                    if (current == null)
+                    if (current == null) {
+                        if ((index = map.nextBin(tab, index)) >= hi) {
+                            index = hi;
+                            break;
+                        }
                         current = tab[index++];
+                    }
                     else {
                         K k = current.key;
                         current = current.next;
@@ -1541,9 +3980,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         }
 
         public ValueSpliterator<K,V> trySplit() {
-            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
-            return (lo >= mid || current != null) ? null :
-                new ValueSpliterator<>(map, lo, index = mid, est >>>= 1,
+            int lo = index, mid = splitIndex();
+            return (mid < 0) ? null :
+                new ValueSpliterator<>(map, lo, index = mid, splitEst,
                                           expectedModCount);
         }
 
@@ -1552,6 +3991,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             if (action == null)
                 throw new NullPointerException();
             HashMap<K,V> m = map;
+            if (fence < 0)
+                m.finishResize();
             Node<K,V>[] tab = m.table;
             if ((hi = fence) < 0) {
                 mc = expectedModCount = m.modCount;
@@ -1564,8 +4005,11 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 Node<K,V> p = current;
                 current = null;
                 do {
-                    if (p == null)
+                    if (p == null) {
+                        if ((i = m.nextBin(tab, i)) >= hi)
+                            break;
                         p = tab[i++];
+                    }
                     else {
                         action.accept(p.value);
                         p = p.next;
@@ -1583,8 +4027,13 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             Node<K,V>[] tab = map.table;
             if (tab != null && tab.length >= (hi = getFence()) && index >= 0) {
                 while (current != null || index < hi) {
-                    if (current == null)
+                    if (current == null) {
+                        if ((index = map.nextBin(tab, index)) >= hi) {
+                            index = hi;
+                            break;
+                        }
                         current = tab[index++];
+                    }
                     else {
                         V v = current.value;
                         current = current.next;
@@ -1612,9 +4061,9 @@ public class HashMap<K,V> extends AbstractMap<K,V>
         }
 
         public EntrySpliterator<K,V> trySplit() {
-            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
-            return (lo >= mid || current != null) ? null :
-                new EntrySpliterator<>(map, lo, index = mid, est >>>= 1,
+            int lo = index, mid = splitIndex();
+            return (mid < 0) ? null :
+                new EntrySpliterator<>(map, lo, index = mid, splitEst,
                                           expectedModCount);
         }
 
@@ -1623,6 +4072,8 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             if (action == null)
                 throw new NullPointerException();
             HashMap<K,V> m = map;
+            if (fence < 0)
+                m.finishResize();
             Node<K,V>[] tab = m.table;
             if ((hi = fence) < 0) {
                 mc = expectedModCount = m.modCount;
@@ -1635,9 +4086,14 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 Node<K,V> p = current;
                 current = null;
                 do {
-                    if (p == null)
+                    if (p == null) {
+                        if ((i = m.nextBin(tab, i)) >= hi)
+                            break;
                         p = tab[i++];
+                    }
                     else {
+                        if ((m.modes & NODE_RECYCLING) != 0)
+                            p.escaped = true;
                         action.accept(p);
                         p = p.next;
                     }
@@ -1654,11 +4110,18 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             Node<K,V>[] tab = map.table;
             if (tab != null && tab.length >= (hi = getFence()) && index >= 0) {
                 while (current != null || index < hi) {
-                    if (current == null)
+                    if (current == null) {
+                        if ((index = map.nextBin(tab, index)) >= hi) {
+                            index = hi;
+                            break;
+                        }
                         current = tab[index++];
+                    }
                     else {
                         Node<K,V> e = current;
                         current = current.next;
+                        if ((map.modes & NODE_RECYCLING) != 0)
+                            e.escaped = true;
                         action.accept(e);
                         if (map.modCount != expectedModCount)
                             throw new ConcurrentModificationException();
@@ -1689,12 +4152,50 @@ public class HashMap<K,V> extends AbstractMap<K,V>
 
     // Create a regular (non-tree) node
     Node<K,V> newNode(int hash, K key, V value, Node<K,V> next) {
-        return new Node<>(hash, key, value, next);
+        return allocNode(hash, key, value, next);
     }
 
     // For conversion from TreeNodes to plain nodes
     Node<K,V> replacementNode(Node<K,V> p, Node<K,V> next) {
-        return new Node<>(p.hash, p.key, p.value, next);
+        return allocNode(p.hash, p.key, p.value, next);
+    }
+
+    /**
+     * 分配一个普通结点，开启结点回收并且有可重用的结点时重用它
+     */
+    final Node<K,V> allocNode(int hash, K key, V value, Node<K,V> next) {
+        Extras<K,V> ex; Node<K,V> p;
+        if ((modes & NODE_RECYCLING) == 0)
+            return new Node<>(hash, key, value, next);
+        if ((p = (ex = extras).pendingFree) != null)
+            ex.pendingFree = null;
+        else if ((p = ex.freeNodes) != null) {
+            ex.freeNodes = p.next;
+            --ex.freeNodeCount;
+        }
+        else
+            return new Node<>(hash, key, value, next);
+        p.hash = hash;
+        p.key = key;
+        p.value = value;
+        p.next = next;
+        return p;
+    }
+
+    /**
+     * 回收一个刚被删除的结点。它先成为pendingFree，上一个pendingFree被清空后放入空闲链表。
+     */
+    final void recycleNode(Node<K,V> p) {
+        Extras<K,V> ex = extras;
+        Node<K,V> q;
+        if ((q = ex.pendingFree) != null && ex.freeNodeCount < MAX_FREE_NODES) {
+            q.key = null;
+            q.value = null;
+            q.next = ex.freeNodes;
+            ex.freeNodes = q;
+            ++ex.freeNodeCount;
+        }
+        ex.pendingFree = p;
     }
 
     // Create a tree bin node
@@ -1712,6 +4213,11 @@ public class HashMap<K,V> extends AbstractMap<K,V>
      */
     void reinitialize() {
         table = null;
+        oldTable = null;
+        transferIndex = 0;
+        Extras<K,V> ex = extras;
+        extras = (ex == null) ? null : ex.settings();
+        modes &= ~STALE_BINS;
         entrySet = null;
         keySet = null;
         values = null;
@@ -1723,13 +4229,16 @@ public class HashMap<K,V> extends AbstractMap<K,V>
     // Callbacks to allow LinkedHashMap post-actions
     void afterNodeAccess(Node<K,V> p) { }
     void afterNodeInsertion(boolean evict) { }
-    void afterNodeRemoval(Node<K,V> p) { }
+    void afterNodeRemoval(Node<K,V> p) {
+        if ((modes & NODE_RECYCLING) != 0 && !p.escaped && !(p instanceof TreeNode))
+            recycleNode(p);
+    }
 
     // Called only from writeObject, to ensure compatible ordering.
     void internalWriteEntries(java.io.ObjectOutputStream s) throws IOException {
         Node<K,V>[] tab;
         if (size > 0 && (tab = table) != null) {
-            for (int i = 0; i < tab.length; ++i) {
+            for (int i = nextBin(tab, 0); i < tab.length; i = nextBin(tab, i + 1)) {
                 for (Node<K,V> e = tab[i]; e != null; e = e.next) {
                     s.writeObject(e.key);
                     s.writeObject(e.value);
@@ -1900,6 +4409,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
          */
         final Node<K,V> untreeify(HashMap<K,V> map) {
             Node<K,V> hd = null, tl = null;
+            int c = 0;
             for (Node<K,V> q = this; q != null; q = q.next) {
                 Node<K,V> p = map.replacementNode(q, null);
                 if (tl == null)
@@ -1907,7 +4417,10 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 else
                     tl.next = p;
                 tl = p;
+                ++c;
             }
+            if (flightRecorderEvents)
+                HashMapEvents.untreeify(map, c);
             return hd;
         }
 
@@ -1991,6 +4504,7 @@ public class HashMap<K,V> extends AbstractMap<K,V>
             if (root == null || root.right == null ||
                 (rl = root.left) == null || rl.left == null) {
                 tab[index] = first.untreeify(map);  // too small
+                map.countUntreeify(1);
                 return;
             }
             TreeNode<K,V> p = this, pl = left, pr = right, replacement;
@@ -2074,8 +4588,10 @@ public class HashMap<K,V> extends AbstractMap<K,V>
          * @param tab the table for recording bin heads
          * @param index the index of the table being split
          * @param bit the bit of hash to split on
+         * @return 反树化的次数（0到2），并行扩容时不能直接修改map的计数
          */
-        final void split(HashMap<K,V> map, Node<K,V>[] tab, int index, int bit) {
+        final int split(HashMap<K,V> map, Node<K,V>[] tab, int index, int bit) {
+            Object event = flightRecorderEvents ? HashMapEvents.beginSplit() : null;
             TreeNode<K,V> b = this;
             // Relink into lo and hi lists, preserving order
             TreeNode<K,V> loHead = null, loTail = null;
@@ -2102,9 +4618,12 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 }
             }
 
+            int untreeified = 0;
             if (loHead != null) {
-                if (lc <= UNTREEIFY_THRESHOLD)
+                if (lc <= UNTREEIFY_THRESHOLD) {
                     tab[index] = loHead.untreeify(map);
+                    ++untreeified;
+                }
                 else {
                     tab[index] = loHead;
                     if (hiHead != null) // (else is already treeified)
@@ -2112,14 +4631,19 @@ public class HashMap<K,V> extends AbstractMap<K,V>
                 }
             }
             if (hiHead != null) {
-                if (hc <= UNTREEIFY_THRESHOLD)
+                if (hc <= UNTREEIFY_THRESHOLD) {
                     tab[index + bit] = hiHead.untreeify(map);
+                    ++untreeified;
+                }
                 else {
                     tab[index + bit] = hiHead;
                     if (loHead != null)
                         hiHead.treeify(tab);
                 }
             }
+            if (event != null)
+                HashMapEvents.endSplit(event, map, index, bit, lc, hc);
+            return untreeified;
         }
 
         /* ------------------------------------------------------------ */
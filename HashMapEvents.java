@@ -0,0 +1,217 @@
+package java.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * HashMap 的 JDK Flight Recorder 事件：扩容和缩容、树化、反树化、红黑树桶的拆分，
+ * 以及链表长度超过阈值的查找。通过 {@link HashMap#setFlightRecorderEvents(boolean)} 开启。
+ *
+ * HashMap 只在开启之后才会引用这个类，所以关闭时不会加载 jdk.jfr，
+ * 即使在虚拟机启动的早期阶段被使用的 HashMap 也不受影响。
+ * 事件对象在这里创建，HashMap 中只以 Object 的形式持有，避免 HashMap 的字节码依赖事件类型。
+ *
+ * 所有事件都带有 map 字段（map的 identityHashCode），用来把同一个map上的多个事件关联起来；
+ * 是否记录以及阈值、栈信息等由JFR的配置决定。
+ */
+final class HashMapEvents {
+
+    private HashMapEvents() {}
+
+    static final String CATEGORY = "Collections";
+
+    @Name("java.util.HashMapResize")
+    @Label("HashMap Resize")
+    @Category({"Java Application", CATEGORY})
+    @Description("Table of a HashMap was doubled, or shrunk by trimToSize or auto-shrink (mode \"shrink\"); " +
+                 "duration covers the transfer of the old buckets (only the allocation for incremental resizes)")
+    static final class Resize extends Event {
+        @Label("Map")
+        int map;
+
+        @Label("Old Capacity")
+        int oldCapacity;
+
+        @Label("New Capacity")
+        int newCapacity;
+
+        @Label("Size")
+        int size;
+
+        @Label("Mode")
+        String mode;
+    }
+
+    @Name("java.util.HashMapTreeify")
+    @Label("HashMap Treeify")
+    @Category({"Java Application", CATEGORY})
+    @Description("A bucket of a HashMap was converted from a linked list into a red-black tree")
+    static final class Treeify extends Event {
+        @Label("Map")
+        int map;
+
+        @Label("Capacity")
+        int capacity;
+
+        @Label("Bucket")
+        int bucket;
+
+        @Label("Nodes")
+        int nodes;
+
+        @Label("Key Class")
+        Class<?> keyClass;
+    }
+
+    @Name("java.util.HashMapUntreeify")
+    @Label("HashMap Untreeify")
+    @Category({"Java Application", CATEGORY})
+    @Description("A red-black tree bucket of a HashMap became small enough to be converted back into a list")
+    static final class Untreeify extends Event {
+        @Label("Map")
+        int map;
+
+        @Label("Nodes")
+        int nodes;
+    }
+
+    @Name("java.util.HashMapTreeSplit")
+    @Label("HashMap Tree Split")
+    @Category({"Java Application", CATEGORY})
+    @Description("A red-black tree bucket of a HashMap was split into two buckets during a resize")
+    static final class Split extends Event {
+        @Label("Map")
+        int map;
+
+        @Label("Old Capacity")
+        int oldCapacity;
+
+        @Label("Bucket")
+        int bucket;
+
+        @Label("Low Nodes")
+        int lowNodes;
+
+        @Label("High Nodes")
+        int highNodes;
+    }
+
+    @Name("java.util.HashMapLongProbe")
+    @Label("HashMap Long Probe")
+    @Category({"Java Application", CATEGORY})
+    @Description("A HashMap lookup walked a bucket list longer than the configured threshold")
+    static final class LongProbe extends Event {
+        @Label("Map")
+        int map;
+
+        @Label("Capacity")
+        int capacity;
+
+        @Label("Size")
+        int size;
+
+        @Label("Chain Length")
+        int chainLength;
+
+        @Label("Hit")
+        boolean hit;
+
+        @Label("Key Class")
+        Class<?> keyClass;
+    }
+
+    /**
+     * 在迁移旧桶之前调用，返回的对象交给 {@link #endResize}
+     */
+    static Object beginResize() {
+        Resize e = new Resize();
+        if (!e.isEnabled())
+            return null;
+        e.begin();
+        return e;
+    }
+
+    static void endResize(Object event, HashMap<?,?> map, int oldCap, int newCap, String mode) {
+        Resize e = (Resize)event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.map = System.identityHashCode(map);
+            e.oldCapacity = oldCap;
+            e.newCapacity = newCap;
+            e.size = map.size;
+            e.mode = mode;
+            e.commit();
+        }
+    }
+
+    static Object beginTreeify() {
+        Treeify e = new Treeify();
+        if (!e.isEnabled())
+            return null;
+        e.begin();
+        return e;
+    }
+
+    static void endTreeify(Object event, HashMap<?,?> map, int capacity, int bucket,
+                           HashMap.Node<?,?> hd) {
+        Treeify e = (Treeify)event;
+        e.end();
+        if (e.shouldCommit()) {
+            int n = 0;
+            for (HashMap.Node<?,?> p = hd; p != null; p = p.next)
+                ++n;
+            e.map = System.identityHashCode(map);
+            e.capacity = capacity;
+            e.bucket = bucket;
+            e.nodes = n;
+            e.keyClass = (hd.key == null) ? null : hd.key.getClass();
+            e.commit();
+        }
+    }
+
+    static void untreeify(HashMap<?,?> map, int nodes) {
+        Untreeify e = new Untreeify();
+        if (e.shouldCommit()) {
+            e.map = System.identityHashCode(map);
+            e.nodes = nodes;
+            e.commit();
+        }
+    }
+
+    static Object beginSplit() {
+        Split e = new Split();
+        if (!e.isEnabled())
+            return null;
+        e.begin();
+        return e;
+    }
+
+    static void endSplit(Object event, HashMap<?,?> map, int bucket, int bit, int lc, int hc) {
+        Split e = (Split)event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.map = System.identityHashCode(map);
+            e.oldCapacity = bit;
+            e.bucket = bucket;
+            e.lowNodes = lc;
+            e.highNodes = hc;
+            e.commit();
+        }
+    }
+
+    static void longProbe(HashMap<?,?> map, int capacity, int length, boolean hit, Object key) {
+        LongProbe e = new LongProbe();
+        if (e.shouldCommit()) {
+            e.map = System.identityHashCode(map);
+            e.capacity = capacity;
+            e.size = map.size;
+            e.chainLength = length;
+            e.hit = hit;
+            e.keyClass = (key == null) ? null : key.getClass();
+            e.commit();
+        }
+    }
+}
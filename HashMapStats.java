@@ -0,0 +1,136 @@
+package java.util;
+
+/**
+ * HashMap 内部结构的统计快照，由 {@link HashMap#stats()} 返回。创建之后不再变化，
+ * 与map之后的修改无关。
+ *
+ * 链表长度的直方图 {@link #chainLengths()} 的下标是桶中的结点数，值是这样的桶的个数，
+ * 下标0是空桶数；红黑树桶不计入直方图，单独由 {@link #treeBins()} 等方法报告。
+ * 查找代价按命中时比较的结点数计算：链表中第k个结点需要比较k次，树中深度为d的结点需要比较d次。
+ *
+ * @see HashMap#stats()
+ * @since 1.8
+ */
+public final class HashMapStats {
+    private final int capacity;
+    private final int size;
+    private final int threshold;
+    private final float loadFactor;
+    private final boolean resizing;
+    private final int[] chainLengths;
+    private final int treeBins;
+    private final int treeNodes;
+    private final int maxTreeDepth;
+    private final double averageProbes;
+    private final int maxProbes;
+    private final int resizes;
+    private final int treeifications;
+    private final int untreeifications;
+
+    HashMapStats(int capacity, int size, int threshold, float loadFactor,
+                 boolean resizing, int[] chainLengths, int treeBins,
+                 int treeNodes, int maxTreeDepth, double averageProbes,
+                 int maxProbes, int resizes, int treeifications,
+                 int untreeifications) {
+        this.capacity = capacity;
+        this.size = size;
+        this.threshold = threshold;
+        this.loadFactor = loadFactor;
+        this.resizing = resizing;
+        this.chainLengths = chainLengths;
+        this.treeBins = treeBins;
+        this.treeNodes = treeNodes;
+        this.maxTreeDepth = maxTreeDepth;
+        this.averageProbes = averageProbes;
+        this.maxProbes = maxProbes;
+        this.resizes = resizes;
+        this.treeifications = treeifications;
+        this.untreeifications = untreeifications;
+    }
+
+    /** 桶数组的长度，还没有分配时为0 */
+    public int capacity()             { return capacity; }
+
+    /** 映射数 */
+    public int size()                 { return size; }
+
+    /** 扩容的阈值；还没有分配表时是初始容量，0表示默认容量 */
+    public int threshold()            { return threshold; }
+
+    /** 负载因子 */
+    public float loadFactor()         { return loadFactor; }
+
+    /** size与capacity之比 */
+    public double fill() {
+        return (capacity == 0) ? 0.0 : (double)size / capacity;
+    }
+
+    /**
+     * 是否有进行中的增量扩容。此时旧表中尚未迁移的桶也被统计在内，
+     * 但 {@link #emptyBuckets()} 只计算新表。
+     */
+    public boolean resizing()         { return resizing; }
+
+    /** 空桶数 */
+    public int emptyBuckets()         { return chainLengths[0]; }
+
+    /**
+     * 链表长度的直方图：下标为k的元素是恰好有k个结点的链表桶的个数，下标0是空桶数。
+     * 数组的长度是最长链表的长度加一。
+     *
+     * @return 直方图的副本
+     */
+    public int[] chainLengths()       { return chainLengths.clone(); }
+
+    /** 最长的链表桶中的结点数，不包括红黑树桶 */
+    public int maxChainLength()       { return chainLengths.length - 1; }
+
+    /** 红黑树桶的个数 */
+    public int treeBins()             { return treeBins; }
+
+    /** 所有红黑树桶中的结点数 */
+    public int treeNodes()            { return treeNodes; }
+
+    /** 最深的红黑树的深度，根结点的深度为1；没有红黑树桶时为0 */
+    public int maxTreeDepth()         { return maxTreeDepth; }
+
+    /** 对所有已有的key各查找一次，平均每次比较的结点数；map为空时为0 */
+    public double averageProbes()     { return averageProbes; }
+
+    /** 查找一个已有的key最多需要比较的结点数 */
+    public int maxProbes()            { return maxProbes; }
+
+    /** 累计扩容次数，不包括第一次分配表 */
+    public int resizes()              { return resizes; }
+
+    /** 链表桶被转换成红黑树的累计次数 */
+    public int treeifications()       { return treeifications; }
+
+    /** 红黑树桶被转换回链表的累计次数 */
+    public int untreeifications()     { return untreeifications; }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("capacity=").append(capacity)
+          .append(" size=").append(size)
+          .append(" threshold=").append(threshold)
+          .append(String.format(" fill=%.3f", fill()));
+        if (resizing)
+            sb.append(" (resizing)");
+        sb.append(" empty=").append(chainLengths[0])
+          .append(" chains=[");
+        for (int i = 1; i < chainLengths.length; ++i) {
+            if (i > 1)
+                sb.append(' ');
+            sb.append(i).append(':').append(chainLengths[i]);
+        }
+        sb.append("] treeBins=").append(treeBins)
+          .append(" treeNodes=").append(treeNodes)
+          .append(" maxTreeDepth=").append(maxTreeDepth)
+          .append(String.format(" probes=%.3f/%d", averageProbes, maxProbes))
+          .append(" resizes=").append(resizes)
+          .append(" treeifies=").append(treeifications)
+          .append(" untreeifies=").append(untreeifications);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,170 @@
+package java.util;
+
+/**
+ * HashMap 把key的hashCode转换成桶下标之前使用的扰动函数，
+ * 通过 {@link HashMap#setHashSpreader(HashSpreader)} 为每个map单独选择。
+ *
+ * 桶下标是 {@code (n - 1) & spread(hashCode)}，只用到低位。默认的 {@link #XOR_SHIFT}
+ * 只把高16位异或到低16位，对于只在少数几位上不同的hashCode（连续的 Long、整数坐标的 Float、
+ * 由几个小整数组合而成的记录）仍然可能集中在少数桶中。其它扰动函数更慢，但混合得更充分。
+ *
+ * {@link #diagnose(Collection)} 按照 HashMap 的规则计算一组样本key在每个扰动函数下的分布，
+ * 用来根据数据选择扰动函数。
+ *
+ * @see HashMap#setHashSpreader(HashSpreader)
+ * @since 1.8
+ */
+public enum HashSpreader {
+
+    /**
+     * {@code h ^ (h >>> 16)}，与 {@link HashMap#hash(Object)} 相同，是默认值
+     */
+    XOR_SHIFT {
+        public int spread(int h) {
+            return h ^ (h >>> 16);
+        }
+    },
+
+    /**
+     * MurmurHash3 的 fmix32 终结函数：两次乘法和三次异或移位，每一个输入位都影响每一个输出位
+     */
+    MURMUR3 {
+        public int spread(int h) {
+            h = (h ^ (h >>> 16)) * 0x85ebca6b;
+            h = (h ^ (h >>> 13)) * 0xc2b2ae35;
+            return h ^ (h >>> 16);
+        }
+    },
+
+    /**
+     * 乘法散列（Fibonacci hashing）：乘以 2^32 除以黄金分割比，乘积的高位混合得最充分。
+     * 桶下标取的是低位，所以把乘积按位反转，使最高的几位成为桶下标。
+     * 连续的整数和等差数列被均匀地分散开。
+     */
+    FIBONACCI {
+        public int spread(int h) {
+            return Integer.reverse(h * 0x9E3779B9);
+        }
+    };
+
+    /**
+     * 返回hashCode扰动之后的值
+     *
+     * @param h key的hashCode
+     * @return 扰动之后的hash值
+     */
+    public abstract int spread(int h);
+
+    /**
+     * 一组key在某个扰动函数下的分布情况，由 {@link #diagnose} 返回
+     */
+    public static final class Diagnostic {
+        private final HashSpreader spreader;
+        private final int keys;
+        private final int capacity;
+        private final int occupiedBuckets;
+        private final int maxChainLength;
+        private final int treeBins;
+
+        Diagnostic(HashSpreader spreader, int keys, int capacity,
+                   int occupiedBuckets, int maxChainLength, int treeBins) {
+            this.spreader = spreader;
+            this.keys = keys;
+            this.capacity = capacity;
+            this.occupiedBuckets = occupiedBuckets;
+            this.maxChainLength = maxChainLength;
+            this.treeBins = treeBins;
+        }
+
+        /** 扰动函数 */
+        public HashSpreader spreader()   { return spreader; }
+
+        /** 互不相等的key的数量 */
+        public int keys()                { return keys; }
+
+        /** 模拟的桶数组长度 */
+        public int capacity()            { return capacity; }
+
+        /** 至少有一个key的桶数 */
+        public int occupiedBuckets()     { return occupiedBuckets; }
+
+        /** 最长的桶中的key数 */
+        public int maxChainLength()      { return maxChainLength; }
+
+        /**
+         * 会被树化的桶数，即key数不小于 TREEIFY_THRESHOLD 的桶数。
+         * 容量小于 MIN_TREEIFY_CAPACITY 时 HashMap 会扩容而不是树化，此时为0。
+         */
+        public int treeBins()            { return treeBins; }
+
+        /**
+         * hash值完全随机时期望的非空桶数 capacity * (1 - e^(-keys/capacity))，
+         * 与 {@link #occupiedBuckets()} 相差越小说明扰动函数越好
+         */
+        public double expectedOccupiedBuckets() {
+            return capacity * -Math.expm1(-(double)keys / capacity);
+        }
+
+        public String toString() {
+            return String.format("%-9s keys=%d capacity=%d occupied=%d (expected %.0f) " +
+                                 "maxChain=%d treeBins=%d",
+                                 spreader, keys, capacity, occupiedBuckets,
+                                 expectedOccupiedBuckets(), maxChainLength, treeBins);
+        }
+    }
+
+    /**
+     * 按默认负载因子计算容纳这些key的 HashMap 的容量，然后用每一个扰动函数模拟它们的分布
+     *
+     * @param sample 样本key，重复的key只计算一次
+     * @return 每个扰动函数的分布情况，顺序与 {@link #values()} 相同
+     * @throws NullPointerException 如果sample为null
+     */
+    public static List<Diagnostic> diagnose(Collection<?> sample) {
+        int n = new HashSet<Object>(sample).size();
+        float fc = (float)n / HashMap.DEFAULT_LOAD_FACTOR + 1.0f;
+        int cap = (fc < HashMap.DEFAULT_INITIAL_CAPACITY) ? HashMap.DEFAULT_INITIAL_CAPACITY :
+            (fc >= HashMap.MAXIMUM_CAPACITY) ? HashMap.MAXIMUM_CAPACITY :
+            HashMap.tableSizeFor((int)fc);
+        return diagnose(sample, cap);
+    }
+
+    /**
+     * 用每一个扰动函数模拟样本key在长度为capacity的桶数组中的分布
+     *
+     * @param sample   样本key，重复的key只计算一次
+     * @param capacity 桶数组的长度，会被向上取整为2的幂
+     * @return 每个扰动函数的分布情况，顺序与 {@link #values()} 相同
+     * @throws IllegalArgumentException 如果capacity不是正数
+     * @throws NullPointerException 如果sample为null
+     */
+    public static List<Diagnostic> diagnose(Collection<?> sample, int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        int cap = HashMap.tableSizeFor(capacity);
+        HashSet<Object> distinct = new HashSet<>(sample);
+        int[] codes = new int[distinct.size()];
+        int k = 0;
+        for (Object o : distinct)
+            codes[k++] = Objects.hashCode(o);
+        HashSpreader[] all = values();
+        List<Diagnostic> result = new ArrayList<>(all.length);
+        int[] counts = new int[cap];
+        for (HashSpreader s : all) {
+            Arrays.fill(counts, 0);
+            for (int c : codes)
+                ++counts[(cap - 1) & s.spread(c)];
+            int occupied = 0, max = 0, trees = 0;
+            for (int c : counts) {
+                if (c > 0)
+                    ++occupied;
+                if (c > max)
+                    max = c;
+                if (c >= HashMap.TREEIFY_THRESHOLD && cap >= HashMap.MIN_TREEIFY_CAPACITY)
+                    ++trees;
+            }
+            result.add(new Diagnostic(s, codes.length, cap, occupied, max, trees));
+        }
+        return result;
+    }
+}
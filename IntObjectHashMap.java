@@ -0,0 +1,562 @@
+// -- This file was mechanically generated: Do not edit! -- //
+
+package java.util;
+
+import java.util.function.BiFunction;
+import java.util.function.IntFunction;
+
+/**
+ * 键为 int、值为 对象 的哈希表。与 {@code HashMap<Integer,V>} 的语义相同，
+ * 但是键以原始类型直接存放在数组中：put 不会装箱键，每个映射也不需要 Node 对象和键的包装类对象，
+ * get、put、merge、computeIfAbsent 和 forEach 在热路径上不分配任何对象。
+ *
+ * 容量、负载因子和扩容规则与 HashMap 一致：容量总是2的幂（{@link HashMap#tableSizeFor(int)}），
+ * 当映射数量超过 容量 * 负载因子 时容量翻倍。表使用线性探测的开放寻址，删除时后移元素，
+ * 不留墓碑，所以负载因子必须小于1。
+ * 键 0 用来标记空槽位，它的映射单独存放在表外。
+ *
+ * 同类的实现还有 IntIntHashMap、IntObjectHashMap、LongLongHashMap、LongObjectHashMap、
+ * ObjectIntHashMap 和 ObjectLongHashMap，它们的结构完全相同，只是键和值的类型不同，
+ * 都由 genPrimitiveMaps.sh 从 X-X-HashMap.java.template 等模板生成。
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access this map concurrently, and at least one of
+ * the threads modifies the map structurally, it <i>must</i> be
+ * synchronized externally.
+ *
+ * @param <V> the type of mapped values
+ *
+ * @see     HashMap
+ * @since   1.8
+ */
+public class IntObjectHashMap<V> implements Cloneable {
+
+    /**
+     * 默认的初始容量-必须为2的指数值
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 最大容量，必须为2的指数值并且 <= 2的30次方
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * 构造器未指定时使用的默认负载因子值
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 键数组，0 表示空槽位。长度总是2的幂。
+     */
+    transient int[] keys;
+
+    /**
+     * 值数组，与keys按下标对应
+     */
+    transient Object[] vals;
+
+    /**
+     * 是否存在键为 0 的映射
+     */
+    transient boolean hasFreeKey;
+
+    /**
+     * 键为 0 的映射的值
+     */
+    transient V freeValue;
+
+    /**
+     * map中的key-value键值对数量（包括键为 0 的映射）
+     */
+    transient int size;
+
+    /**
+     * map结构被修改的次数，用于 forEach 的 fail-fast
+     */
+    transient int modCount;
+
+    /**
+     * 扩容的阈值 (capacity * load factor)。在表还没有分配时保存初始容量。
+     */
+    int threshold;
+
+    /**
+     * 负载因子
+     */
+    final float loadFactor;
+
+    /**
+     * 遍历映射的回调，避免使用装箱的 BiConsumer
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    /**
+     * 用指定的容量值和指定的负载因子值，构造一个空的map
+     *
+     * @param  initialCapacity 初始化容量值
+     * @param  loadFactor      负载因子值
+     * @throws IllegalArgumentException 如果初始化容量值为负数，或者负载因子不在 (0, 1) 之间
+     */
+    public IntObjectHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        this.threshold = HashMap.tableSizeFor(initialCapacity);
+    }
+
+    /**
+     * 用指定的容量值和默认的负载因子0.75，构造一个空的map
+     *
+     * @param  initialCapacity 初始化容量值
+     * @throws IllegalArgumentException 如果初始化容量值为负数
+     */
+    public IntObjectHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 用默认的容量16和默认的负载因子0.75，构造一个空的map
+     */
+    public IntObjectHashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+    }
+
+    /**
+     * 计算键的hash值。线性探测对聚集比链表敏感得多，而槽位只取hash的低位，
+     * 所以这里用 MurmurHash3 的 fmix 让键的每一位都影响低位，而不是只做 HashMap.hash 的一次异或。
+     */
+    static int hash(int key) {
+        int h = (key ^ (key >>> 16)) * 0x85ebca6b;
+        h = (h ^ (h >>> 13)) * 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 返回map中的key-value映射数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 如果map中不包含key-value映射则返回true
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 查找key所在的槽位，key不能是 0
+     *
+     * @return 槽位下标，不存在时返回-1
+     */
+    final int indexOf(int key) {
+        int[] ks; int k; int n;
+        if ((ks = keys) != null && (n = ks.length) > 0) {
+            int mask = n - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                if ((k = ks[i]) == 0)
+                    return -1;
+                if (k == key)
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 如果map中存在键为key的映射则返回true
+     */
+    public boolean containsKey(int key) {
+        return (key == 0) ? hasFreeKey : indexOf(key) >= 0;
+    }
+
+    /**
+     * 如果map中有一个或多个键映射到value则返回true
+     */
+    public boolean containsValue(Object value) {
+        if (hasFreeKey && Objects.equals(freeValue, value))
+            return true;
+        int[] ks;
+        if ((ks = keys) != null && size > 0) {
+            Object[] vs = vals;
+            for (int i = 0; i < ks.length; ++i) {
+                if (ks[i] != 0 && Objects.equals(vs[i], value))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 返回键映射的值，不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        return getOrDefault(key, null);
+    }
+
+    /**
+     * 返回键映射的值，不存在时返回defaultValue
+     */
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(int key, V defaultValue) {
+        if (key == 0)
+            return hasFreeKey ? freeValue : defaultValue;
+        int i;
+        return ((i = indexOf(key)) < 0) ? defaultValue : (V)vals[i];
+    }
+
+    /**
+     * 在map中添加key-value键值对，如果key已存在，则替换value
+     *
+     * @return 如果map中已存在key则返回此key对应的value,否则返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (key == 0) {
+            V oldValue = freeValue;
+            freeValue = value;
+            if (hasFreeKey)
+                return oldValue;
+            hasFreeKey = true;
+            ++modCount;
+            ++size;
+            return null;
+        }
+        int i = slotFor(key);
+        if (keys[i] != 0) {
+            V oldValue = (V)vals[i];
+            vals[i] = value;
+            return oldValue;
+        }
+        insertAt(i, key, value);
+        return null;
+    }
+
+    /**
+     * 返回key所在的槽位，不存在时返回key应该插入的空槽位。key不能是 0
+     */
+    final int slotFor(int key) {
+        int[] ks; int k;
+        if ((ks = keys) == null || ks.length == 0)
+            ks = resize();
+        int mask = ks.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            if ((k = ks[i]) == 0 || k == key)
+                return i;
+        }
+    }
+
+    /**
+     * 在空槽位i上插入映射，必要时扩容
+     */
+    final void insertAt(int i, int key, V value) {
+        keys[i] = key;
+        vals[i] = value;
+        ++modCount;
+        if (++size > threshold)
+            resize();
+    }
+
+    /**
+     * 初始化或者翻倍容量。元素按hash值重新插入新表。
+     *
+     * @return 新的键数组
+     */
+    final int[] resize() {
+        int[] oldKeys = keys;
+        Object[] oldVals = vals;
+        int oldCap = (oldKeys == null) ? 0 : oldKeys.length;
+        int oldThr = threshold;
+        int newCap;
+        if (oldCap > 0) {
+            if (oldCap >= MAXIMUM_CAPACITY) {
+                if (size >= MAXIMUM_CAPACITY - 1)
+                    throw new IllegalStateException("Map is full");
+                threshold = MAXIMUM_CAPACITY - 1;
+                return oldKeys;
+            }
+            newCap = oldCap << 1;
+        }
+        else if (oldThr > 0)
+            newCap = oldThr;
+        else
+            newCap = DEFAULT_INITIAL_CAPACITY;
+        float ft = (float)newCap * loadFactor;
+        threshold = (newCap < MAXIMUM_CAPACITY) ?
+            Math.min((int)ft, newCap - 1) : MAXIMUM_CAPACITY - 1;
+        int[] newKeys = new int[newCap];
+        Object[] newVals = new Object[newCap];
+        if (oldKeys != null) {
+            int mask = newCap - 1;
+            for (int j = 0; j < oldCap; ++j) {
+                int k;
+                if ((k = oldKeys[j]) != 0) {
+                    int i = hash(k) & mask;
+                    while (newKeys[i] != 0)
+                        i = (i + 1) & mask;
+                    newKeys[i] = k;
+                    newVals[i] = oldVals[j];
+                }
+            }
+        }
+        keys = newKeys;
+        vals = newVals;
+        return newKeys;
+    }
+
+    /**
+     * 删除键为key的映射
+     *
+     * @return 被删除的value，不存在时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (key == 0) {
+            if (!hasFreeKey)
+                return null;
+            V oldValue = freeValue;
+            hasFreeKey = false;
+            freeValue = null;
+            ++modCount;
+            --size;
+            return oldValue;
+        }
+        int i;
+        if ((i = indexOf(key)) < 0)
+            return null;
+        V oldValue = (V)vals[i];
+        removeAt(i);
+        return oldValue;
+    }
+
+    /**
+     * 删除槽位i上的映射，并把其后探测序列上的元素前移，使查找不需要墓碑标记
+     * （Knuth, TAOCP Vol.3, 6.4 Algorithm R）
+     */
+    final void removeAt(int i) {
+        int[] ks = keys;
+        Object[] vs = vals;
+        int mask = ks.length - 1;
+        for (int j = i; ; ) {
+            int k;
+            j = (j + 1) & mask;
+            if ((k = ks[j]) == 0)
+                break;
+            int h = hash(k) & mask;
+            // 只有当k的初始位置不在 (i, j] 区间内时，才能把它移动到i
+            if (i <= j ? (h <= i || h > j) : (h <= i && h > j)) {
+                ks[i] = k;
+                vs[i] = vs[j];
+                i = j;
+            }
+        }
+        ks[i] = 0;
+        vs[i] = null;
+        ++modCount;
+        --size;
+    }
+
+    /**
+     * 删除所有映射
+     */
+    public void clear() {
+        ++modCount;
+        hasFreeKey = false;
+        freeValue = null;
+        if (keys != null && size > 0) {
+            Arrays.fill(keys, 0);
+            Arrays.fill(vals, null);
+        }
+        size = 0;
+    }
+
+    /**
+     * 如果key不存在，用mappingFunction计算值并插入；否则返回已有的值。
+     * 与 Map.computeIfAbsent 相同，映射到null的key被当作不存在，函数返回null时不插入。
+     */
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(int key, IntFunction<? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        int i = -1;
+        if (key == 0) {
+            if (hasFreeKey && freeValue != null)
+                return freeValue;
+        }
+        else if ((i = indexOf(key)) >= 0) {
+            V oldValue = (V)vals[i];
+            if (oldValue != null)
+                return oldValue;
+        }
+        int mc = modCount;
+        V v = mappingFunction.apply(key);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+        if (v == null)
+            return null;
+        if (i >= 0)
+            vals[i] = v;
+        else
+            put(key, v);
+        return v;
+    }
+
+    /**
+     * 如果key不存在，插入value；否则用remappingFunction合并旧值和value。
+     * 与 Map.merge 相同，函数返回null时删除映射。
+     *
+     * @return 合并后与key关联的值
+     */
+    @SuppressWarnings("unchecked")
+    public V merge(int key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null || remappingFunction == null)
+            throw new NullPointerException();
+        if (key == 0) {
+            if (!hasFreeKey) {
+                put(key, value);
+                return value;
+            }
+            V v = (freeValue == null) ? value :
+                remappingFunction.apply(freeValue, value);
+            if (v == null)
+                remove(key);
+            else
+                freeValue = v;
+            return v;
+        }
+        int i = slotFor(key);
+        if (keys[i] == 0) {
+            insertAt(i, key, value);
+            return value;
+        }
+        V oldValue = (V)vals[i];
+        V v = (oldValue == null) ? value :
+            remappingFunction.apply(oldValue, value);
+        if (v == null)
+            removeAt(i);
+        else
+            vals[i] = v;
+        return v;
+    }
+
+    /**
+     * 对每个映射执行action，遍历期间map结构被修改时抛出ConcurrentModificationException
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        if (hasFreeKey)
+            action.accept(0, freeValue);
+        int[] ks;
+        if ((ks = keys) != null && size > 0) {
+            Object[] vs = vals;
+            for (int i = 0; i < ks.length && modCount == mc; ++i) {
+                int k;
+                if ((k = ks[i]) != 0)
+                    action.accept(k, (V)vs[i]);
+            }
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Returns a shallow copy of this map.
+     *
+     * @return a shallow copy of this map
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public IntObjectHashMap<V> clone() {
+        IntObjectHashMap<V> result;
+        try {
+            result = (IntObjectHashMap<V>)super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        if (keys != null) {
+            result.keys = keys.clone();
+            result.vals = vals.clone();
+        }
+        result.modCount = 0;
+        return result;
+    }
+
+    /**
+     * 与 AbstractMap.equals 的语义相同：两个map包含相同的映射时相等
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof IntObjectHashMap))
+            return false;
+        IntObjectHashMap<?> m = (IntObjectHashMap<?>)o;
+        if (m.size != size)
+            return false;
+        if (hasFreeKey &&
+            (!m.hasFreeKey || !Objects.equals(m.freeValue, freeValue)))
+            return false;
+        int[] ks;
+        if ((ks = keys) != null) {
+            Object[] vs = vals;
+            for (int i = 0; i < ks.length; ++i) {
+                int k; int j;
+                if ((k = ks[i]) != 0 &&
+                    ((j = m.indexOf(k)) < 0 ||
+                     !Objects.equals(m.vals[j], vs[i])))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 与 AbstractMap.hashCode 的语义相同：各映射的 key.hashCode() ^ value.hashCode() 之和
+     */
+    @Override
+    public int hashCode() {
+        int h = 0;
+        if (hasFreeKey)
+            h += Objects.hashCode(freeValue);
+        int[] ks;
+        if ((ks = keys) != null) {
+            Object[] vs = vals;
+            for (int i = 0; i < ks.length; ++i) {
+                int k;
+                if ((k = ks[i]) != 0)
+                    h += Integer.hashCode(k) ^
+                        Objects.hashCode(vs[i]);
+            }
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append('{');
+        forEach((k, v) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(k);
+            sb.append('=');
+            sb.append(v == this ? "(this Map)" : v);
+        });
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,1339 @@
+package java.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * 把桶数组和所有映射都保存在一个内存映射文件中的 Map 接口实现。
+ *
+ * 记录的编码方式与 {@link OffHeapHashMap} 相同：键和值由构造时传入的 {@link BinaryCodec}
+ * 编码成字节，get、put 和 remove 直接在映射的文件内容上计算hash、比较key，
+ * 查找的过程与 HashMap.getNode 一样，先定位桶，再沿着链表依次比较hash和key。
+ * 不同的是所有的字节都通过 {@link FileChannel#map} 映射到文件中，
+ * 所以打开一个已经存在的文件时不需要读取或者重建任何东西：构造器只读取文件头，
+ * 然后建立映射，之后访问到的页面由操作系统按需调入。
+ *
+ * 文件的修改只有在 {@link #force()}（或者 {@link #close()}）返回之后才是持久的。
+ * 文件头有两个副本，每次调用 force 时交替写入，并带有递增的版本号和 CRC 校验，
+ * 所以写文件头的过程中崩溃不会损坏之前的版本。进程在两次 force 之间崩溃时，
+ * 下一次打开会从最近一次 force 时的状态恢复：记录只追加不修改，删除映射时追加一条删除标记，
+ * 恢复时按写入的顺序重放最近一次 force 之前的记录，重建桶数组（耗时与记录的数量成正比）。
+ * 每次 force 之后的第一次修改要先写入并同步一次文件头，标记文件正在被修改。
+ *
+ * 被删除或者被替换的记录，以及扩容之后旧的桶数组，在 force 时如果超过了文件已用空间的一半，
+ * 所有存活的记录会被复制到一个新的文件中，然后原子地替换旧的文件。
+ * 单个映射编码后的大小不能超过 64MB。键的编码必须是规范的，见 {@link BinaryCodec} 的说明。
+ * 文件中的hash值由编码后的字节计算，与运行环境无关，文件可以在不同的机器之间复制。
+ *
+ * 不允许 null 键和 null 值。一个文件同一时刻只能被一个 map 打开，
+ * 打开期间文件被加锁，其他进程的打开会失败。使用完毕之后必须调用 {@link #close()}，
+ * 之后除了size和isEmpty之外，对这个 map 及其视图的访问都会抛出 {@link IllegalStateException}。
+ * 映射期间的 I/O 错误以 {@link UncheckedIOException} 抛出。
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access this map concurrently, and at least one of
+ * the threads modifies the map structurally, it <i>must</i> be
+ * synchronized externally. Lookups also write to a per-map scratch buffer,
+ * so unlike {@code HashMap} even concurrent reads must be synchronized.
+ *
+ * <p>The iterators returned by all of this class's "collection view methods"
+ * are <i>fail-fast</i>: if the map is structurally modified at any time after
+ * the iterator is created, in any way except through the iterator's own
+ * <tt>remove</tt> method, the iterator will throw a
+ * {@link ConcurrentModificationException}.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @see     OffHeapHashMap
+ * @see     BinaryCodec
+ */
+public class MappedHashMap<K,V> extends AbstractMap<K,V>
+    implements Map<K,V>, Closeable {
+
+    /*
+     * Implementation notes.
+     *
+     * The file starts with two header slots of SLOT_SIZE bytes, followed
+     * by the data area. Addresses are offsets into the data area, split
+     * like OffHeapHashMap addresses into (chunk index << CHUNK_SHIFT) |
+     * offset; chunk c is a MappedByteBuffer over the file region starting
+     * at FILE_HEADER + (c << CHUNK_SHIFT). Every chunk except the last is
+     * mapped in full; the last one is remapped (doubling) as it grows,
+     * which extends the file. Address 0 is never handed out.
+     *
+     * Records have the OffHeapHashMap layout
+     *
+     *   long next | int hash | int keyLength | int valueLength | key | value
+     *
+     * and the hash is OffHeapHashMap.hashBytes of the key bytes, so that
+     * method is part of the file format. The bucket array lives in the data
+     * area as well, in parts of at most 2^TABLE_SHIFT buckets, each
+     * preceded by a record header with keyLength == SKIP and valueLength
+     * holding the size of the whole part. The same kind of header fills the
+     * unused tail of a chunk when an allocation moves on to the next one.
+     *
+     * Everything is allocated at "top" and, apart from "next" links and
+     * bucket slots, never written again. A replaced value gets a new
+     * record; a removal unlinks the record and appends a tombstone
+     * (valueLength == TOMBSTONE) carrying the key. The records from
+     * logStart to top therefore form a log that, replayed in address order,
+     * reproduces the map without looking at any link or bucket. clear()
+     * just moves logStart.
+     *
+     * A header records generation, state, capacity, size, top, logStart,
+     * garbage and the addresses of the table parts, followed by a CRC32.
+     * The header of generation g goes to slot g & 1, and open() picks the
+     * valid header with the highest generation. force() msyncs all chunks
+     * and then writes a CLEAN header. Before the first mutation after that,
+     * beginUpdate() writes a DIRTY copy of the same header and fsyncs it.
+     * A CLEAN header thus guarantees that links and buckets on disk match
+     * it and the map can be used as is. After a DIRTY one, links and
+     * buckets may be partially updated, but nothing below the recorded top
+     * has been overwritten, so the log up to it is replayed into a fresh
+     * table. A torn header write fails the CRC and the other slot is used.
+     *
+     * Compaction writes the live records to a sibling file, forces it, and
+     * renames it over the original, so it never touches the checkpointed
+     * state either. It keeps the capacity, so iterators (which, like those
+     * of OffHeapHashMap, keep only bucket indices) survive it.
+     */
+
+    /**
+     * 默认的初始容量-必须为2的指数值
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 最大容量，必须为2的指数值并且 <= 2的30次方
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * 构造器未指定时使用的默认负载因子值
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 每个映射块的最大字节数是 2^CHUNK_SHIFT（64MB），也是单个映射记录的最大字节数
+     */
+    static final int CHUNK_SHIFT = 26;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    /**
+     * 最后一个映射块的初始字节数
+     */
+    static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    /**
+     * 桶数组的每一部分最多包含 2^TABLE_SHIFT 个桶（32MB），加上记录头之后不超过一个映射块
+     */
+    static final int TABLE_SHIFT = 22;
+    static final int TABLE_MASK = (1 << TABLE_SHIFT) - 1;
+
+    /**
+     * 记录中各个字段的偏移量，HEADER 是键的编码开始的位置。
+     * 桶数组的每一部分前面有一个 TABLE_HEADER 字节的记录头。
+     */
+    static final int NEXT = 0, HASH = 8, KEY_LENGTH = 12, VALUE_LENGTH = 16,
+        HEADER = 20, TABLE_HEADER = 24;
+
+    /**
+     * keyLength 为 SKIP 的记录头表示跳过 valueLength 个字节；
+     * valueLength 为 TOMBSTONE 的记录是删除标记
+     */
+    static final int SKIP = -1, TOMBSTONE = -1;
+
+    /**
+     * 文件头：两个副本各占一个 SLOT_SIZE，数据区从 FILE_HEADER 开始
+     */
+    static final int SLOT_SIZE = 1 << 12;
+    static final int FILE_HEADER = 2 * SLOT_SIZE;
+
+    /**
+     * 文件头的标识（"HMM1"）和格式版本
+     */
+    static final int MAGIC = 0x484D4D31, FORMAT = 1;
+
+    /**
+     * 文件头中各个字段的偏移量，H_TABLE 开始是桶数组每一部分的地址，之后是 CRC32
+     */
+    static final int H_MAGIC = 0, H_FORMAT = 4, H_GENERATION = 8, H_STATE = 16,
+        H_LOAD_FACTOR = 20, H_CAPACITY = 24, H_SIZE = 28, H_TOP = 32,
+        H_LOG_START = 40, H_GARBAGE = 48, H_TABLE = 56;
+
+    /**
+     * 文件头的状态：CLEAN 表示文件与文件头一致；DIRTY 表示之后可能有未完成的修改
+     */
+    static final int CLEAN = 0, DIRTY = 1;
+
+    /**
+     * map对应的文件
+     */
+    final Path file;
+
+    /**
+     * 打开的文件和文件锁，压缩之后替换为新文件的
+     */
+    FileChannel channel;
+    FileLock lock;
+
+    /**
+     * 键和值的编解码器
+     */
+    final BinaryCodec<K> keyCodec;
+    final BinaryCodec<V> valueCodec;
+
+    /**
+     * 数据区的映射块
+     */
+    MappedByteBuffer[] chunks;
+
+    /**
+     * 桶数组每一部分第一个桶的地址
+     */
+    long[] tableParts;
+
+    /**
+     * 桶的数量
+     */
+    int capacity;
+
+    /**
+     * 下一个记录的地址
+     */
+    long top;
+
+    /**
+     * 恢复时开始重放的地址
+     */
+    long logStart;
+
+    /**
+     * 已经不可达的记录、删除标记和旧的桶数组占用的字节数
+     */
+    long garbage;
+
+    /**
+     * 最近一次写入的文件头的版本号
+     */
+    long generation;
+
+    /**
+     * 最近一次 force 时写入的文件头，之后第一次修改时以 DIRTY 状态重新写入
+     */
+    byte[] checkpoint;
+
+    /**
+     * 最近一次写入的文件头是否是 DIRTY 状态
+     */
+    boolean dirty;
+
+    /**
+     * 编码键和值的堆上缓冲区
+     */
+    ByteBuffer scratch;
+
+    /**
+     * map中的key-value键值对数量
+     */
+    int size;
+
+    /**
+     * map结构被修改的次数，用于迭代器的 fail-fast
+     */
+    int modCount;
+
+    /**
+     * 扩容的阈值 (capacity * load factor)
+     */
+    int threshold;
+
+    /**
+     * 负载因子
+     */
+    final float loadFactor;
+
+    /**
+     * 是否已经调用过close
+     */
+    boolean closed;
+
+    /**
+     * 缓存的 entrySet()
+     */
+    Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * 打开指定的文件。文件不存在或者为空时创建一个空的map，使用指定的容量值和负载因子值；
+     * 否则直接映射文件中已有的内容，容量值和负载因子值以文件中记录的为准。
+     * 如果文件上次没有正常关闭，会恢复到最近一次 {@link #force()} 时的状态。
+     *
+     * @param  file            map对应的文件
+     * @param  keyCodec        键的编解码器
+     * @param  valueCodec      值的编解码器
+     * @param  initialCapacity 初始化容量值
+     * @param  loadFactor      负载因子值
+     * @throws IllegalArgumentException 如果初始化容量值为负数，或者负载因子不是正数
+     * @throws NullPointerException 如果文件或者编解码器为null
+     * @throws StreamCorruptedException 如果文件不是一个有效的 MappedHashMap 文件
+     * @throws IOException 如果文件已经被其他进程打开，或者发生了I/O错误
+     */
+    public MappedHashMap(Path file, BinaryCodec<K> keyCodec,
+                         BinaryCodec<V> valueCodec, int initialCapacity,
+                         float loadFactor) throws IOException {
+        if (file == null || keyCodec == null || valueCodec == null)
+            throw new NullPointerException();
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.file = file;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                                          StandardOpenOption.READ,
+                                          StandardOpenOption.WRITE);
+        try {
+            FileLock l = ch.tryLock();
+            if (l == null)
+                throw new IOException("File is locked by another process: " + file);
+            channel = ch;
+            lock = l;
+            ByteBuffer h = latestHeader(ch);
+            this.loadFactor = (h == null) ? loadFactor : h.getFloat(H_LOAD_FACTOR);
+            chunks = new MappedByteBuffer[0];
+            if (h == null) {
+                top = 8L;               // 地址0表示null
+                newTable(HashMap.tableSizeFor(initialCapacity));
+                logStart = tableParts[0] - TABLE_HEADER;
+                checkpoint();
+            }
+            else
+                load(h);
+        } catch (IOException | RuntimeException | Error e) {
+            OffHeapHashMap.releaseAll(chunks);
+            ch.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开指定的文件，新建时使用指定的容量值和默认的负载因子0.75
+     *
+     * @see #MappedHashMap(Path, BinaryCodec, BinaryCodec, int, float)
+     */
+    public MappedHashMap(Path file, BinaryCodec<K> keyCodec,
+                         BinaryCodec<V> valueCodec, int initialCapacity)
+        throws IOException {
+        this(file, keyCodec, valueCodec, initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 打开指定的文件，新建时使用默认的容量16和默认的负载因子0.75
+     *
+     * @see #MappedHashMap(Path, BinaryCodec, BinaryCodec, int, float)
+     */
+    public MappedHashMap(Path file, BinaryCodec<K> keyCodec,
+                         BinaryCodec<V> valueCodec) throws IOException {
+        this(file, keyCodec, valueCodec, DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /* ---------------- File header -------------- */
+
+    /**
+     * 读取两个文件头中有效并且版本号较大的一个
+     *
+     * @return 文件头，如果文件是新建的（两个文件头都没有写过）则返回null
+     * @throws StreamCorruptedException 如果两个文件头都无效
+     */
+    static ByteBuffer latestHeader(FileChannel ch) throws IOException {
+        ByteBuffer latest = null;
+        boolean blank = true;
+        for (int k = 0; k < 2; ++k) {
+            ByteBuffer h = ByteBuffer.allocate(SLOT_SIZE);
+            while (h.hasRemaining() &&
+                   ch.read(h, (long)k * SLOT_SIZE + h.position()) >= 0)
+                ;
+            if (h.getInt(H_MAGIC) != 0)
+                blank = false;
+            if (isValid(h) && (latest == null ||
+                               h.getLong(H_GENERATION) > latest.getLong(H_GENERATION)))
+                latest = h;
+        }
+        if (latest == null && !blank)
+            throw new StreamCorruptedException("Not a MappedHashMap file");
+        return latest;
+    }
+
+    static int tableParts(int cap) {
+        return cap / Math.min(cap, 1 << TABLE_SHIFT);
+    }
+
+    static int crcOffset(int cap) {
+        return H_TABLE + (tableParts(cap) << 3);
+    }
+
+    static int crc(ByteBuffer h, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(h.array(), 0, length);
+        return (int)crc.getValue();
+    }
+
+    static boolean isValid(ByteBuffer h) {
+        int cap = h.getInt(H_CAPACITY);
+        if (h.getInt(H_MAGIC) != MAGIC || h.getInt(H_FORMAT) != FORMAT ||
+            cap <= 0 || cap > MAXIMUM_CAPACITY || (cap & (cap - 1)) != 0)
+            return false;
+        int end = crcOffset(cap);
+        return h.getInt(end) == crc(h, end);
+    }
+
+    /**
+     * 用当前的状态生成一个文件头
+     */
+    final ByteBuffer header(int state) {
+        ByteBuffer h = ByteBuffer.allocate(SLOT_SIZE);
+        h.putInt(H_MAGIC, MAGIC);
+        h.putInt(H_FORMAT, FORMAT);
+        h.putLong(H_GENERATION, generation);
+        h.putInt(H_STATE, state);
+        h.putFloat(H_LOAD_FACTOR, loadFactor);
+        h.putInt(H_CAPACITY, capacity);
+        h.putInt(H_SIZE, size);
+        h.putLong(H_TOP, top);
+        h.putLong(H_LOG_START, logStart);
+        h.putLong(H_GARBAGE, garbage);
+        for (int k = 0; k < tableParts.length; ++k)
+            h.putLong(H_TABLE + (k << 3), tableParts[k]);
+        int end = crcOffset(capacity);
+        h.putInt(end, crc(h, end));
+        return h;
+    }
+
+    /**
+     * 把文件头写入它的版本号对应的位置
+     */
+    final void writeHeader(ByteBuffer h) throws IOException {
+        long pos = (h.getLong(H_GENERATION) & 1L) * SLOT_SIZE;
+        h.clear();
+        while (h.hasRemaining())
+            channel.write(h, pos + h.position());
+    }
+
+    /**
+     * 同步所有的映射块，然后写入并同步一个新的 CLEAN 文件头
+     */
+    final void checkpoint() throws IOException {
+        for (MappedByteBuffer c : chunks)
+            c.force();
+        ++generation;
+        ByteBuffer h = header(CLEAN);
+        writeHeader(h);
+        channel.force(true);
+        checkpoint = h.array();
+        dirty = false;
+    }
+
+    /**
+     * 在 force 之后的第一次修改之前，把最近一次的文件头以 DIRTY 状态写入另一个位置并同步，
+     * 这样在这之后崩溃时，打开文件会重放记录而不是使用可能只写了一部分的桶数组
+     */
+    final void beginUpdate() {
+        if (dirty)
+            return;
+        ByteBuffer h = ByteBuffer.wrap(checkpoint.clone());
+        h.putLong(H_GENERATION, ++generation);
+        h.putInt(H_STATE, DIRTY);
+        int end = crcOffset(h.getInt(H_CAPACITY));
+        h.putInt(end, crc(h, end));
+        try {
+            writeHeader(h);
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        dirty = true;
+    }
+
+    /**
+     * 按照文件头映射数据区。如果文件头是 DIRTY 状态，重放记录并建立一个新的检查点。
+     */
+    final void load(ByteBuffer h) throws IOException {
+        generation = h.getLong(H_GENERATION);
+        capacity = h.getInt(H_CAPACITY);
+        size = h.getInt(H_SIZE);
+        top = h.getLong(H_TOP);
+        logStart = h.getLong(H_LOG_START);
+        garbage = h.getLong(H_GARBAGE);
+        threshold = thresholdFor(capacity);
+        long[] ps = new long[tableParts(capacity)];
+        for (int k = 0; k < ps.length; ++k)
+            ps[k] = h.getLong(H_TABLE + (k << 3));
+        if (size < 0 || top < 8L || logStart < 8L || logStart > top)
+            throw new StreamCorruptedException("Invalid header");
+        tableParts = ps;
+        checkpoint = h.array();
+        int last = (int)((top - 1) >>> CHUNK_SHIFT);
+        for (int c = 0; c < last; ++c)
+            ensureMapped(c, CHUNK_SIZE);
+        ensureMapped(last, offset(top - 1) + 1);
+        if (h.getInt(H_STATE) == DIRTY) {
+            dirty = true;
+            replay();
+            checkpoint();
+        }
+    }
+
+    /* ---------------- Mapped memory -------------- */
+
+    final void ensureOpen() {
+        if (closed)
+            throw new IllegalStateException("Map has been closed");
+    }
+
+    /**
+     * 保证映射块c至少映射了need个字节
+     */
+    final void ensureMapped(int c, int need) {
+        MappedByteBuffer[] cs = chunks;
+        if (c >= cs.length)
+            chunks = cs = Arrays.copyOf(cs, c + 1);
+        MappedByteBuffer b = cs[c];
+        if (b == null || b.capacity() < need) {
+            int n = (b == null) ? MIN_CHUNK_SIZE : b.capacity();
+            while (n < need)
+                n <<= 1;
+            try {
+                cs[c] = channel.map(FileChannel.MapMode.READ_WRITE,
+                                    FILE_HEADER + ((long)c << CHUNK_SHIFT), n);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (b != null)
+                OffHeapHashMap.release(b);
+        }
+    }
+
+    final ByteBuffer chunk(long a) {
+        return chunks[(int)(a >>> CHUNK_SHIFT)];
+    }
+
+    static int offset(long a) {
+        return (int)a & (CHUNK_SIZE - 1);
+    }
+
+    final long next(long a) {
+        return chunk(a).getLong(offset(a) + NEXT);
+    }
+
+    final void setNext(long a, long next) {
+        chunk(a).putLong(offset(a) + NEXT, next);
+    }
+
+    final int hashOf(long a) {
+        return chunk(a).getInt(offset(a) + HASH);
+    }
+
+    final int keyLength(long a) {
+        return chunk(a).getInt(offset(a) + KEY_LENGTH);
+    }
+
+    final int valueLength(long a) {
+        return chunk(a).getInt(offset(a) + VALUE_LENGTH);
+    }
+
+    final long bucket(long[] parts, int i) {
+        long p = parts[i >>> TABLE_SHIFT] + ((long)(i & TABLE_MASK) << 3);
+        return chunk(p).getLong(offset(p));
+    }
+
+    final long bucket(int i) {
+        return bucket(tableParts, i);
+    }
+
+    final void setBucket(int i, long a) {
+        long p = tableParts[i >>> TABLE_SHIFT] + ((long)(i & TABLE_MASK) << 3);
+        chunk(p).putLong(offset(p), a);
+    }
+
+    /**
+     * 把记录a链接到桶i中prev的后面，prev为0时作为桶的第一个记录
+     */
+    final void link(int i, long prev, long a) {
+        if (prev == 0L)
+            setBucket(i, a);
+        else
+            setNext(prev, a);
+    }
+
+    /**
+     * 在地址a写入一个跳过bytes个字节的记录头
+     */
+    final void writeSkip(long a, int bytes) {
+        ByteBuffer b = chunk(a);
+        int off = offset(a);
+        b.putLong(off + NEXT, 0L);
+        b.putInt(off + HASH, 0);
+        b.putInt(off + KEY_LENGTH, SKIP);
+        b.putInt(off + VALUE_LENGTH, bytes);
+    }
+
+    /**
+     * 从top分配bytes个字节。当前的映射块放不下时，剩下的部分成为垃圾，
+     * 当前的映射块被完整地映射，从下一个映射块开始分配。
+     *
+     * @return 分配的地址
+     */
+    final long allocate(int bytes) {
+        long a = top;
+        int c = (int)(a >>> CHUNK_SHIFT), off = offset(a);
+        if (off + bytes > CHUNK_SIZE) {
+            ensureMapped(c, CHUNK_SIZE);
+            if (off + HEADER <= CHUNK_SIZE)
+                writeSkip(a, CHUNK_SIZE - off);
+            garbage += CHUNK_SIZE - off;
+            ++c;
+            off = 0;
+            a = (long)c << CHUNK_SHIFT;
+        }
+        ensureMapped(c, off + bytes);
+        top = a + bytes;
+        return a;
+    }
+
+    /**
+     * 用scratch中已经编码的键和值写入一条新的记录，next为0。
+     * valueLength 为 TOMBSTONE 时只写入键，作为删除标记。
+     */
+    final long writeRecord(int hash, int keyLength, int valueLength) {
+        int n = keyLength + Math.max(valueLength, 0);
+        long a = allocate(OffHeapHashMap.recordSize(keyLength, n - keyLength));
+        ByteBuffer b = chunk(a), s = scratch;
+        int off = offset(a);
+        b.putLong(off + NEXT, 0L);
+        b.putInt(off + HASH, hash);
+        b.putInt(off + KEY_LENGTH, keyLength);
+        b.putInt(off + VALUE_LENGTH, valueLength);
+        b.position(off + HEADER);
+        s.limit(n);
+        s.position(0);
+        b.put(s);
+        return a;
+    }
+
+    /**
+     * 容量为cap时扩容的阈值
+     */
+    final int thresholdFor(int cap) {
+        float ft = (float)cap * loadFactor;
+        return (cap < MAXIMUM_CAPACITY && ft < (float)MAXIMUM_CAPACITY ?
+                (int)ft : Integer.MAX_VALUE);
+    }
+
+    /**
+     * 桶数组占用的字节数
+     */
+    static long tableBytes(int cap) {
+        int n = Math.min(cap, 1 << TABLE_SHIFT);
+        return (long)(cap / n) * (TABLE_HEADER + (n << 3));
+    }
+
+    /**
+     * 分配一个容量为cap个桶的空桶数组，旧的桶数组成为垃圾
+     */
+    final void newTable(int cap) {
+        int n = Math.min(cap, 1 << TABLE_SHIFT);
+        long[] ps = new long[cap / n];
+        for (int k = 0; k < ps.length; ++k) {
+            int bytes = TABLE_HEADER + (n << 3);
+            long a = allocate(bytes);
+            writeSkip(a, bytes);
+            // 分配的区域可能残留着崩溃之前写入的内容
+            ByteBuffer b = chunk(a);
+            for (int off = offset(a) + TABLE_HEADER, end = offset(a) + bytes;
+                 off < end; off += 8)
+                b.putLong(off, 0L);
+            ps[k] = a + TABLE_HEADER;
+        }
+        if (tableParts != null)
+            garbage += tableBytes(capacity);
+        tableParts = ps;
+        capacity = cap;
+        threshold = thresholdFor(cap);
+    }
+
+    /* ---------------- Recovery and compaction -------------- */
+
+    /**
+     * 比较记录a和记录b中前length个字节的key编码是否相同
+     */
+    final boolean sameKey(long a, long b, int length) {
+        ByteBuffer x = chunk(a), y = chunk(b);
+        int i = offset(a) + HEADER, j = offset(b) + HEADER, end = i + length;
+        for (; i + 8 <= end; i += 8, j += 8) {
+            if (x.getLong(i) != y.getLong(j))
+                return false;
+        }
+        for (; i < end; ++i, ++j) {
+            if (x.get(i) != y.get(j))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 从 logStart 到 top 按写入的顺序重放所有的记录，在top之后重建桶数组和链表。
+     * 只读取记录的hash、长度和key，不使用记录的 next 和旧的桶数组。
+     *
+     * @throws StreamCorruptedException 如果记录无效，或者重放之后的映射数量与文件头不一致
+     */
+    final void replay() throws IOException {
+        long end = top, live = 0L;
+        int expectedSize = size;
+        size = 0;
+        newTable(capacity);
+        for (long a = logStart; a < end; ) {
+            int off = offset(a);
+            if (off + HEADER > CHUNK_SIZE) {
+                // 映射块的末尾放不下一个记录头
+                a = (a | (CHUNK_SIZE - 1)) + 1;
+                continue;
+            }
+            ByteBuffer b = chunk(a);
+            int hash = b.getInt(off + HASH);
+            int klen = b.getInt(off + KEY_LENGTH);
+            int vlen = b.getInt(off + VALUE_LENGTH);
+            int bytes;
+            if (klen == SKIP)
+                bytes = vlen;
+            else if (klen < 0 || klen > CHUNK_SIZE ||
+                     vlen < TOMBSTONE || vlen > CHUNK_SIZE)
+                bytes = -1;
+            else
+                bytes = OffHeapHashMap.recordSize(klen, Math.max(vlen, 0));
+            if (bytes < HEADER || bytes > CHUNK_SIZE - off || a + bytes > end)
+                throw new StreamCorruptedException("Invalid record at " + a);
+            if (klen != SKIP) {
+                int i = hash & (capacity - 1);
+                long prev = 0L, e = bucket(i), rest = 0L;
+                for (; e != 0L; prev = e, e = next(e)) {
+                    if (hashOf(e) == hash && keyLength(e) == klen &&
+                        sameKey(e, a, klen))
+                        break;
+                }
+                if (e != 0L) {
+                    rest = next(e);
+                    live -= OffHeapHashMap.recordSize(klen, valueLength(e));
+                    --size;
+                }
+                if (vlen == TOMBSTONE)
+                    link(i, prev, rest);
+                else {
+                    setNext(a, rest);
+                    link(i, prev, a);
+                    live += bytes;
+                    if (++size > threshold)
+                        resize();
+                }
+            }
+            a += bytes;
+        }
+        if (size != expectedSize)
+            throw new StreamCorruptedException("Expected " + expectedSize +
+                                               " mappings, found " + size);
+        garbage = top - live - tableBytes(capacity);
+    }
+
+    /**
+     * 把所有存活的记录按桶的顺序写入一个新的文件，同步之后原子地替换当前的文件。
+     * 容量不变，所以迭代器不受影响。
+     */
+    final void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+        Files.deleteIfExists(tmp);
+        MappedHashMap<K,V> m =
+            new MappedHashMap<>(tmp, keyCodec, valueCodec, capacity, loadFactor);
+        try {
+            for (int j = 0; j < capacity; ++j) {
+                long tail = 0L;
+                for (long e = bucket(j); e != 0L; e = next(e)) {
+                    ByteBuffer b = chunk(e);
+                    int off = offset(e);
+                    int bytes = OffHeapHashMap.recordSize(b.getInt(off + KEY_LENGTH),
+                                                          b.getInt(off + VALUE_LENGTH));
+                    long n = m.allocate(bytes);
+                    ByteBuffer d = b.duplicate(), nb = m.chunk(n);
+                    d.limit(off + bytes);
+                    d.position(off);
+                    nb.position(offset(n));
+                    nb.put(d);
+                    m.setNext(n, 0L);
+                    m.link(j, tail, n);
+                    tail = n;
+                }
+            }
+            m.size = size;
+            m.generation = generation;
+            m.checkpoint();
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException | Error e) {
+            m.unmap();
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        syncDirectory();
+        unmap();
+        channel = m.channel;
+        lock = m.lock;
+        chunks = m.chunks;
+        tableParts = m.tableParts;
+        top = m.top;
+        logStart = m.logStart;
+        garbage = m.garbage;
+        generation = m.generation;
+        checkpoint = m.checkpoint;
+        dirty = false;
+    }
+
+    /**
+     * 同步文件所在的目录，使文件的替换持久化。不能打开目录的平台上忽略。
+     */
+    final void syncDirectory() {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+                d.force(true);
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * 解除所有的映射并关闭文件（同时释放文件锁），不同步
+     */
+    final void unmap() throws IOException {
+        OffHeapHashMap.releaseAll(chunks);
+        chunks = null;
+        channel.close();
+    }
+
+    /* ---------------- Durability -------------- */
+
+    /**
+     * 把之前所有的修改写入磁盘：返回之后即使进程或者系统崩溃，再次打开文件时也能看到这些修改。
+     * 如果垃圾超过了文件已用空间的一半，会先压缩文件。自上次调用之后没有修改时什么也不做。
+     *
+     * @throws IllegalStateException 如果map已经被关闭
+     * @throws IOException 如果发生了I/O错误
+     */
+    public void force() throws IOException {
+        ensureOpen();
+        if (!dirty)
+            return;
+        if (garbage > (top >>> 1) && top > MIN_CHUNK_SIZE)
+            compact();
+        else
+            checkpoint();
+    }
+
+    /**
+     * 调用 {@link #force()}，然后解除映射并关闭文件。即使 force 失败，文件也会被关闭，
+     * 下一次打开时恢复到最近一次成功的 force 时的状态。可以重复调用。
+     *
+     * @throws IOException 如果发生了I/O错误
+     */
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            force();
+        } finally {
+            closed = true;
+            scratch = null;
+            unmap();
+        }
+    }
+
+    /* ---------------- Encoding -------------- */
+
+    /**
+     * 把key（以及非null的value）依次编码到scratch中，空间不足时扩大scratch重新编码
+     *
+     * @return key编码的字节数，value编码的字节数为 scratch.position() 减去返回值
+     */
+    @SuppressWarnings("unchecked")
+    final int encode(Object key, V value) {
+        ByteBuffer s = scratch;
+        if (s == null)
+            scratch = s = ByteBuffer.allocate(256);
+        for (;;) {
+            try {
+                s.clear();
+                keyCodec.encode((K)key, s);
+                int keyLength = s.position();
+                if (value != null)
+                    valueCodec.encode(value, s);
+                return keyLength;
+            } catch (BufferOverflowException e) {
+                if (s.capacity() >= CHUNK_SIZE)
+                    throw new IllegalArgumentException("Mapping too large");
+                scratch = s = ByteBuffer.allocate(s.capacity() << 1);
+            }
+        }
+    }
+
+    /**
+     * 比较记录a中的key编码与scratch中前length个字节是否相同
+     */
+    final boolean keyEquals(long a, int length) {
+        ByteBuffer b = chunk(a), s = scratch;
+        int off = offset(a) + HEADER, i = 0;
+        for (; i + 8 <= length; i += 8) {
+            if (b.getLong(off + i) != s.getLong(i))
+                return false;
+        }
+        for (; i < length; ++i) {
+            if (b.get(off + i) != s.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    final K decodeKey(long a) {
+        ByteBuffer b = chunk(a);
+        int off = offset(a);
+        b.position(off + HEADER);
+        return keyCodec.decode(b, b.getInt(off + KEY_LENGTH));
+    }
+
+    final V decodeValue(long a) {
+        ByteBuffer b = chunk(a);
+        int off = offset(a);
+        b.position(off + HEADER + b.getInt(off + KEY_LENGTH));
+        return valueCodec.decode(b, b.getInt(off + VALUE_LENGTH));
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * 返回map中的key-value映射数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 查找key对应的记录，与 HashMap.getNode 一样先比较hash，再比较key
+     *
+     * @return 记录的地址，不存在时返回0
+     */
+    final long getRecord(Object key) {
+        ensureOpen();
+        if (key == null || size == 0)
+            return 0L;
+        int klen = encode(key, null);
+        int hash = OffHeapHashMap.hashBytes(scratch, klen);
+        for (long e = bucket(hash & (capacity - 1)); e != 0L; e = next(e)) {
+            if (hashOf(e) == hash && keyLength(e) == klen && keyEquals(e, klen))
+                return e;
+        }
+        return 0L;
+    }
+
+    /**
+     * 返回键映射的值，不存在时返回null
+     *
+     * @throws IllegalStateException 如果map已经被关闭
+     * @throws ClassCastException 如果键的编解码器不能编码key
+     */
+    public V get(Object key) {
+        long e;
+        return (e = getRecord(key)) == 0L ? null : decodeValue(e);
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        long e;
+        return (e = getRecord(key)) == 0L ? defaultValue : decodeValue(e);
+    }
+
+    /**
+     * 如果map中存在键为key的映射则返回true
+     *
+     * @throws IllegalStateException 如果map已经被关闭
+     * @throws ClassCastException 如果键的编解码器不能编码key
+     */
+    public boolean containsKey(Object key) {
+        return getRecord(key) != 0L;
+    }
+
+    /**
+     * 在map中添加key-value键值对，如果key已存在，则替换value。
+     * 修改在下一次 {@link #force()} 之后才是持久的。
+     *
+     * @return 如果map中已存在key则返回此key对应的value,否则返回null
+     * @throws IllegalStateException 如果map已经被关闭
+     * @throws NullPointerException 如果key或者value为null
+     * @throws IllegalArgumentException 如果映射编码后超过64MB
+     * @throws UncheckedIOException 如果扩展文件或者写入文件头时发生了I/O错误
+     */
+    public V put(K key, V value) {
+        return putVal(key, value, false, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true, false);
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        return putVal(key, value, false, true);
+    }
+
+    /**
+     * Implements Map.put and related methods
+     *
+     * @param onlyIfAbsent 如果为true，不替换已存在的value
+     * @param onlyIfPresent 如果为true，key不存在时不插入
+     * @return 之前的value，如果不存在则返回null
+     */
+    final V putVal(K key, V value, boolean onlyIfAbsent, boolean onlyIfPresent) {
+        ensureOpen();
+        if (key == null || value == null)
+            throw new NullPointerException();
+        int klen = encode(key, value);
+        int vlen = scratch.position() - klen;
+        int hash = OffHeapHashMap.hashBytes(scratch, klen);
+        int i = hash & (capacity - 1);
+        long prev = 0L;
+        for (long e = bucket(i); e != 0L; prev = e, e = next(e)) {
+            if (hashOf(e) == hash && keyLength(e) == klen && keyEquals(e, klen)) {
+                V oldValue = decodeValue(e);
+                if (!onlyIfAbsent) {
+                    // 即使编码长度相同也不能覆盖旧的记录，恢复时要用到它
+                    beginUpdate();
+                    long n = writeRecord(hash, klen, vlen);
+                    setNext(n, next(e));
+                    link(i, prev, n);
+                    garbage += OffHeapHashMap.recordSize(klen, valueLength(e));
+                }
+                return oldValue;
+            }
+        }
+        if (onlyIfPresent)
+            return null;
+        beginUpdate();
+        link(i, prev, writeRecord(hash, klen, vlen));
+        ++modCount;
+        if (++size > threshold)
+            resize();
+        return null;
+    }
+
+    /**
+     * 翻倍桶数组的容量。新的桶数组分配在top，记录不需要移动，
+     * 只是按照缓存的hash值把每个桶拆分成高低两条链表，保持原有的顺序。
+     */
+    final void resize() {
+        int oldCap = capacity;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        long[] oldTab = tableParts;
+        newTable(oldCap << 1);
+        for (int j = 0; j < oldCap; ++j) {
+            long e = bucket(oldTab, j);
+            if (e == 0L)
+                continue;
+            long loHead = 0L, loTail = 0L;
+            long hiHead = 0L, hiTail = 0L;
+            long next;
+            do {
+                next = next(e);
+                if ((hashOf(e) & oldCap) == 0) {
+                    if (loTail == 0L)
+                        loHead = e;
+                    else
+                        setNext(loTail, e);
+                    loTail = e;
+                }
+                else {
+                    if (hiTail == 0L)
+                        hiHead = e;
+                    else
+                        setNext(hiTail, e);
+                    hiTail = e;
+                }
+            } while ((e = next) != 0L);
+            if (loTail != 0L) {
+                setNext(loTail, 0L);
+                setBucket(j, loHead);
+            }
+            if (hiTail != 0L) {
+                setNext(hiTail, 0L);
+                setBucket(j + oldCap, hiHead);
+            }
+        }
+    }
+
+    /**
+     * 把key对应的记录从链表中摘除，并追加一条删除标记。
+     * 记录的内容保持不变，所以调用者仍然可以解码它。
+     *
+     * @return 被摘除的记录的地址，不存在时返回0
+     */
+    final long unlink(Object key) {
+        ensureOpen();
+        if (key == null || size == 0)
+            return 0L;
+        int klen = encode(key, null);
+        int hash = OffHeapHashMap.hashBytes(scratch, klen);
+        int i = hash & (capacity - 1);
+        for (long e = bucket(i), prev = 0L; e != 0L; prev = e, e = next(e)) {
+            if (hashOf(e) == hash && keyLength(e) == klen && keyEquals(e, klen)) {
+                beginUpdate();
+                link(i, prev, next(e));
+                writeRecord(hash, klen, TOMBSTONE);
+                garbage += OffHeapHashMap.recordSize(klen, valueLength(e)) +
+                    OffHeapHashMap.recordSize(klen, 0);
+                ++modCount;
+                --size;
+                return e;
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * 删除键为key的映射
+     *
+     * @return 被删除的value，不存在时返回null
+     * @throws IllegalStateException 如果map已经被关闭
+     */
+    public V remove(Object key) {
+        long e;
+        return (e = unlink(key)) == 0L ? null : decodeValue(e);
+    }
+
+    /**
+     * 删除所有映射，容量保持不变。之前的记录都成为垃圾，在下一次 {@link #force()} 时被压缩掉。
+     *
+     * @throws IllegalStateException 如果map已经被关闭
+     */
+    public void clear() {
+        ensureOpen();
+        beginUpdate();
+        ++modCount;
+        newTable(capacity);
+        logStart = tableParts[0] - TABLE_HEADER;
+        garbage = top - tableBytes(capacity);
+        size = 0;
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        if (ks == null) {
+            ks = new KeySet();
+            keySet = ks;
+        }
+        return ks;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public final int size()                 { return size; }
+        public final void clear()               { MappedHashMap.this.clear(); }
+        public final Iterator<K> iterator()     { return new KeyIterator(); }
+        public final boolean contains(Object o) { return containsKey(o); }
+        public final boolean remove(Object key) { return unlink(key) != 0L; }
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        if (vs == null) {
+            vs = new Values();
+            values = vs;
+        }
+        return vs;
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public final int size()                 { return size; }
+        public final void clear()               { MappedHashMap.this.clear(); }
+        public final Iterator<V> iterator()     { return new ValueIterator(); }
+        public final boolean contains(Object o) { return containsValue(o); }
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { MappedHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object value = e.getValue();
+            return value != null && value.equals(get(e.getKey()));
+        }
+        public final boolean remove(Object o) {
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+                return MappedHashMap.this.remove(e.getKey(), e.getValue());
+            }
+            return false;
+        }
+    }
+
+    /* ---------------- Iterators -------------- */
+
+    /**
+     * 迭代器每次解码一整个桶中的所有映射，两次调用之间只保存桶的下标和解码后的对象。
+     */
+    abstract class MappedIterator {
+        int index;             // 下一个要解码的桶
+        Object[] keys = new Object[4];
+        Object[] vals;         // 只有需要value时才解码
+        int pending;           // keys中已解码的数量
+        int cursor;            // keys中下一个要返回的下标
+        K current;             // 上一次返回的key，null表示没有
+        int expectedModCount;  // for fast-fail
+
+        MappedIterator(boolean values) {
+            ensureOpen();
+            expectedModCount = modCount;
+            if (values)
+                vals = new Object[4];
+        }
+
+        public final boolean hasNext() {
+            while (cursor == pending && index < capacity) {
+                ensureOpen();
+                cursor = pending = 0;
+                for (long e = bucket(index++); e != 0L; e = next(e)) {
+                    if (pending == keys.length) {
+                        keys = Arrays.copyOf(keys, pending << 1);
+                        if (vals != null)
+                            vals = Arrays.copyOf(vals, pending << 1);
+                    }
+                    keys[pending] = decodeKey(e);
+                    if (vals != null)
+                        vals[pending] = decodeValue(e);
+                    ++pending;
+                }
+            }
+            return cursor < pending;
+        }
+
+        @SuppressWarnings("unchecked")
+        final int nextIndex() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            current = (K)keys[cursor];
+            return cursor++;
+        }
+
+        public final void remove() {
+            K k = current;
+            if (k == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = null;
+            unlink(k);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends MappedIterator
+        implements Iterator<K> {
+        KeyIterator() { super(false); }
+        @SuppressWarnings("unchecked")
+        public final K next() { return (K)keys[nextIndex()]; }
+    }
+
+    final class ValueIterator extends MappedIterator
+        implements Iterator<V> {
+        ValueIterator() { super(true); }
+        @SuppressWarnings("unchecked")
+        public final V next() { return (V)vals[nextIndex()]; }
+    }
+
+    final class EntryIterator extends MappedIterator
+        implements Iterator<Map.Entry<K,V>> {
+        EntryIterator() { super(true); }
+        @SuppressWarnings("unchecked")
+        public final Map.Entry<K,V> next() {
+            int i = nextIndex();
+            return new Entry((K)keys[i], (V)vals[i]);
+        }
+    }
+
+    /**
+     * 迭代器返回的Entry，保存解码后的key和value，setValue时通过key重新定位记录并写回map。
+     */
+    final class Entry implements Map.Entry<K,V> {
+        final K key;
+        V value;
+
+        Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public final K getKey()        { return key; }
+        public final V getValue()      { return value; }
+        public final String toString() { return key + "=" + value; }
+
+        public final int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        public final V setValue(V newValue) {
+            if (replace(key, newValue) == null)
+                throw new IllegalStateException("Entry was removed");
+            V oldValue = value;
+            value = newValue;
+            return oldValue;
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+                if (key.equals(e.getKey()) && value.equals(e.getValue()))
+                    return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,952 @@
+package java.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import sun.nio.ch.DirectBuffer;
+
+/**
+ * 把桶数组和所有映射都保存在堆外（direct {@link ByteBuffer}）的 Map 接口实现。
+ *
+ * HashMap 的 table 和每个映射的 Node、key、value 对象都在堆上，映射数量达到千万级时，
+ * 垃圾收集器每次都要扫描这些对象，停顿时间随映射数量增长。此实现只在堆上保留少量的
+ * ByteBuffer 对象：键和值由构造时传入的 {@link BinaryCodec} 编码成字节后写入堆外内存，
+ * get、put 和 remove 直接在编码后的字节上计算hash和比较key，只有返回给调用者的value
+ * （以及迭代器返回的key）才会被解码成对象。因此key的编码必须是规范的，
+ * 见 {@link BinaryCodec} 的说明。
+ *
+ * 桶数组的组织方式与 HashMap 相同：容量是2的幂，桶内的映射通过 next 地址链接成链表，
+ * 扩容时每个桶按照 hash & oldCap 拆分成高低两条链表，保持原有的顺序。
+ * 与 HashMap 不同的是，链表不会树化，所以key的编码应当有足够的区分度。
+ *
+ * 映射记录只追加不修改：删除映射，或者用编码长度不同的值替换旧值之后，旧的记录成为垃圾，
+ * 当垃圾超过已用空间的一半时，所有存活的记录被复制到新的内存块中（压缩期间需要两倍的内存）。
+ * 单个映射编码后的大小不能超过 64MB。
+ *
+ * 不允许 null 键和 null 值，因为它们没有对应的编码。
+ *
+ * 堆外内存在 {@link #free()} 时立即释放，之后对这个 map 的访问会抛出
+ * {@link IllegalStateException}。如果没有调用 free，内存要等到 map 被垃圾收集之后才会释放，
+ * 这可能远远晚于堆内存的回收，所以使用完毕之后应当显式调用 free。
+ * {@link #clear()} 也会释放所有的堆外内存，但之后 map 还可以继续使用。
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access this map concurrently, and at least one of
+ * the threads modifies the map structurally, it <i>must</i> be
+ * synchronized externally. Lookups also write to a per-map scratch buffer,
+ * so unlike {@code HashMap} even concurrent reads must be synchronized.
+ *
+ * <p>The iterators returned by all of this class's "collection view methods"
+ * are <i>fail-fast</i>: if the map is structurally modified at any time after
+ * the iterator is created, in any way except through the iterator's own
+ * <tt>remove</tt> method, the iterator will throw a
+ * {@link ConcurrentModificationException}.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @see     HashMap
+ * @see     BinaryCodec
+ * @since   1.8
+ */
+public class OffHeapHashMap<K,V> extends AbstractMap<K,V> implements Map<K,V> {
+
+    /*
+     * Implementation notes.
+     *
+     * Memory is held in two sets of direct ByteBuffers. The bucket array
+     * ("table") holds one long per bucket, the address of the first record
+     * of the bucket or 0 if it is empty. A single ByteBuffer cannot exceed
+     * 2GB, so the table is split into buffers of at most 2^TABLE_SHIFT
+     * buckets.
+     *
+     * Records live in "chunks". A record address is
+     * (chunk index << CHUNK_SHIFT) | offset; address 0 is never handed out
+     * so that it can mean null. Records never straddle chunks. Only the
+     * last chunk is allocated from: it starts at MIN_CHUNK_SIZE and is
+     * reallocated (doubling) until it reaches CHUNK_SIZE, then a new chunk
+     * is started. A record is laid out as
+     *
+     *   long next | int hash | int keyLength | int valueLength | key | value
+     *
+     * padded to a multiple of 8 bytes.
+     *
+     * Every operation first encodes its key (and value, for puts) into the
+     * heap "scratch" buffer. The hash is computed from those bytes, cached
+     * in the record like Node.hash, and compared before the key bytes.
+     *
+     * Iterators decode one whole bucket at a time and keep only bucket
+     * indices and decoded objects between calls, never record addresses,
+     * because a put that replaces a value may relocate records (and
+     * compact the arena) without being a structural modification.
+     */
+
+    /**
+     * 默认的初始容量-必须为2的指数值
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 最大容量，必须为2的指数值并且 <= 2的30次方
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * 构造器未指定时使用的默认负载因子值
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 每个记录块的最大字节数是 2^CHUNK_SHIFT（64MB），也是单个映射记录的最大字节数
+     */
+    static final int CHUNK_SHIFT = 26;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    /**
+     * 记录块的初始字节数
+     */
+    static final int MIN_CHUNK_SIZE = 1 << 12;
+
+    /**
+     * 每个桶数组缓冲区最多包含 2^TABLE_SHIFT 个桶（64MB）
+     */
+    static final int TABLE_SHIFT = 23;
+    static final int TABLE_MASK = (1 << TABLE_SHIFT) - 1;
+
+    /**
+     * 记录中各个字段的偏移量，HEADER 是键的编码开始的位置
+     */
+    static final int NEXT = 0, HASH = 8, KEY_LENGTH = 12, VALUE_LENGTH = 16,
+        HEADER = 20;
+
+    /**
+     * 键和值的编解码器
+     */
+    final BinaryCodec<K> keyCodec;
+    final BinaryCodec<V> valueCodec;
+
+    /**
+     * 桶数组，第一次使用时初始化
+     */
+    ByteBuffer[] table;
+
+    /**
+     * 桶的数量，table为null时为0
+     */
+    int capacity;
+
+    /**
+     * 保存映射记录的内存块
+     */
+    ByteBuffer[] chunks;
+
+    /**
+     * 下一个记录的地址
+     */
+    long top;
+
+    /**
+     * 已经不可达的记录占用的字节数
+     */
+    long garbage;
+
+    /**
+     * 编码键和值的堆上缓冲区
+     */
+    ByteBuffer scratch;
+
+    /**
+     * map中的key-value键值对数量
+     */
+    int size;
+
+    /**
+     * map结构被修改的次数，用于迭代器的 fail-fast
+     */
+    int modCount;
+
+    /**
+     * 扩容的阈值 (capacity * load factor)。在桶数组还没有分配时保存初始容量。
+     */
+    int threshold;
+
+    /**
+     * 负载因子
+     */
+    final float loadFactor;
+
+    /**
+     * 是否已经调用过free
+     */
+    boolean freed;
+
+    /**
+     * 缓存的 entrySet()
+     */
+    Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * 用指定的编解码器、容量值和负载因子值，构造一个空的map
+     *
+     * @param  keyCodec        键的编解码器
+     * @param  valueCodec      值的编解码器
+     * @param  initialCapacity 初始化容量值
+     * @param  loadFactor      负载因子值
+     * @throws IllegalArgumentException 如果初始化容量值为负数，或者负载因子不是正数
+     * @throws NullPointerException 如果编解码器为null
+     */
+    public OffHeapHashMap(BinaryCodec<K> keyCodec, BinaryCodec<V> valueCodec,
+                          int initialCapacity, float loadFactor) {
+        if (keyCodec == null || valueCodec == null)
+            throw new NullPointerException();
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.loadFactor = loadFactor;
+        this.threshold = HashMap.tableSizeFor(initialCapacity);
+    }
+
+    /**
+     * 用指定的编解码器、容量值和默认的负载因子0.75，构造一个空的map
+     *
+     * @param  keyCodec        键的编解码器
+     * @param  valueCodec      值的编解码器
+     * @param  initialCapacity 初始化容量值
+     * @throws IllegalArgumentException 如果初始化容量值为负数
+     * @throws NullPointerException 如果编解码器为null
+     */
+    public OffHeapHashMap(BinaryCodec<K> keyCodec, BinaryCodec<V> valueCodec,
+                          int initialCapacity) {
+        this(keyCodec, valueCodec, initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 用指定的编解码器、默认的容量16和默认的负载因子0.75，构造一个空的map
+     *
+     * @param  keyCodec        键的编解码器
+     * @param  valueCodec      值的编解码器
+     * @throws NullPointerException 如果编解码器为null
+     */
+    public OffHeapHashMap(BinaryCodec<K> keyCodec, BinaryCodec<V> valueCodec) {
+        this(keyCodec, valueCodec, DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /* ---------------- Off-heap memory -------------- */
+
+    /**
+     * 立即释放一个direct缓冲区的内存，之后不能再访问这个缓冲区
+     */
+    static void release(ByteBuffer b) {
+        if (b instanceof DirectBuffer && ((DirectBuffer)b).cleaner() != null)
+            ((DirectBuffer)b).cleaner().clean();
+    }
+
+    static void releaseAll(ByteBuffer[] bs) {
+        if (bs != null) {
+            for (ByteBuffer b : bs) {
+                if (b != null)
+                    release(b);
+            }
+        }
+    }
+
+    final void ensureOpen() {
+        if (freed)
+            throw new IllegalStateException("Map has been freed");
+    }
+
+    /**
+     * 分配容量为cap个桶的桶数组
+     */
+    static ByteBuffer[] newTable(int cap) {
+        int n = Math.min(cap, 1 << TABLE_SHIFT);
+        ByteBuffer[] tab = new ByteBuffer[cap / n];
+        for (int k = 0; k < tab.length; ++k)
+            tab[k] = ByteBuffer.allocateDirect(n << 3);
+        return tab;
+    }
+
+    final long bucket(int i) {
+        return table[i >>> TABLE_SHIFT].getLong((i & TABLE_MASK) << 3);
+    }
+
+    final void setBucket(int i, long a) {
+        table[i >>> TABLE_SHIFT].putLong((i & TABLE_MASK) << 3, a);
+    }
+
+    final ByteBuffer chunk(long a) {
+        return chunks[(int)(a >>> CHUNK_SHIFT)];
+    }
+
+    static int offset(long a) {
+        return (int)a & (CHUNK_SIZE - 1);
+    }
+
+    final long next(long a) {
+        return chunk(a).getLong(offset(a) + NEXT);
+    }
+
+    final void setNext(long a, long next) {
+        chunk(a).putLong(offset(a) + NEXT, next);
+    }
+
+    final int hashOf(long a) {
+        return chunk(a).getInt(offset(a) + HASH);
+    }
+
+    final int keyLength(long a) {
+        return chunk(a).getInt(offset(a) + KEY_LENGTH);
+    }
+
+    final int valueLength(long a) {
+        return chunk(a).getInt(offset(a) + VALUE_LENGTH);
+    }
+
+    /**
+     * 记录占用的字节数，按8字节对齐
+     */
+    static int recordSize(int keyLength, int valueLength) {
+        return (HEADER + keyLength + valueLength + 7) & ~7;
+    }
+
+    /**
+     * 从最后一个内存块中分配bytes个字节，必要时扩大这个内存块或者开始一个新的内存块
+     *
+     * @return 分配的地址
+     */
+    final long allocate(int bytes) {
+        ByteBuffer[] cs = chunks;
+        if (cs == null) {
+            chunks = cs = new ByteBuffer[1];
+            top = 8L;               // 地址0表示null
+        }
+        long a = top;
+        int c = (int)(a >>> CHUNK_SHIFT), off = offset(a);
+        if (off + bytes > CHUNK_SIZE) {
+            ++c;
+            off = 0;
+            a = (long)c << CHUNK_SHIFT;
+        }
+        if (c >= cs.length)
+            chunks = cs = Arrays.copyOf(cs, c + 1);
+        ByteBuffer b = cs[c];
+        int need = off + bytes;
+        if (b == null || b.capacity() < need) {
+            int n = (b == null) ? MIN_CHUNK_SIZE : b.capacity();
+            while (n < need)
+                n <<= 1;
+            ByteBuffer nb = ByteBuffer.allocateDirect(n);
+            if (b != null) {
+                ByteBuffer d = b.duplicate();
+                d.position(0);
+                d.limit(off);
+                nb.put(d);
+                release(b);
+            }
+            cs[c] = nb;
+        }
+        top = a + bytes;
+        return a;
+    }
+
+    /**
+     * 用scratch中已经编码的键和值写入一条新的记录，next为0
+     */
+    final long writeRecord(int hash, int keyLength, int valueLength) {
+        long a = allocate(recordSize(keyLength, valueLength));
+        ByteBuffer b = chunk(a), s = scratch;
+        int off = offset(a);
+        b.putLong(off + NEXT, 0L);
+        b.putInt(off + HASH, hash);
+        b.putInt(off + KEY_LENGTH, keyLength);
+        b.putInt(off + VALUE_LENGTH, valueLength);
+        b.position(off + HEADER);
+        s.limit(keyLength + valueLength);
+        s.position(0);
+        b.put(s);
+        return a;
+    }
+
+    /**
+     * 当垃圾超过已用空间的一半时压缩
+     */
+    final void maybeCompact() {
+        if (garbage > (top >>> 1) && top > MIN_CHUNK_SIZE)
+            compact();
+    }
+
+    /**
+     * 把所有存活的记录按桶的顺序复制到新的内存块中，然后释放旧的内存块
+     */
+    final void compact() {
+        ByteBuffer[] oldChunks = chunks;
+        chunks = null;
+        top = 0L;
+        garbage = 0L;
+        for (int j = 0; j < capacity; ++j) {
+            long e = bucket(j), tail = 0L;
+            while (e != 0L) {
+                ByteBuffer b = oldChunks[(int)(e >>> CHUNK_SHIFT)];
+                int off = offset(e);
+                int bytes = recordSize(b.getInt(off + KEY_LENGTH),
+                                       b.getInt(off + VALUE_LENGTH));
+                long n = allocate(bytes);
+                ByteBuffer d = b.duplicate(), nb = chunk(n);
+                d.limit(off + bytes);
+                d.position(off);
+                nb.position(offset(n));
+                nb.put(d);
+                nb.putLong(offset(n) + NEXT, 0L);
+                if (tail == 0L)
+                    setBucket(j, n);
+                else
+                    setNext(tail, n);
+                tail = n;
+                e = b.getLong(off + NEXT);
+            }
+        }
+        releaseAll(oldChunks);
+    }
+
+    /* ---------------- Encoding and hashing -------------- */
+
+    /**
+     * 把key（以及非null的value）依次编码到scratch中，空间不足时扩大scratch重新编码
+     *
+     * @return key编码的字节数，value编码的字节数为 scratch.position() 减去返回值
+     */
+    @SuppressWarnings("unchecked")
+    final int encode(Object key, V value) {
+        ByteBuffer s = scratch;
+        if (s == null)
+            scratch = s = ByteBuffer.allocate(256);
+        for (;;) {
+            try {
+                s.clear();
+                keyCodec.encode((K)key, s);
+                int keyLength = s.position();
+                if (value != null)
+                    valueCodec.encode(value, s);
+                return keyLength;
+            } catch (BufferOverflowException e) {
+                if (s.capacity() >= CHUNK_SIZE)
+                    throw new IllegalArgumentException("Mapping too large");
+                scratch = s = ByteBuffer.allocate(s.capacity() << 1);
+            }
+        }
+    }
+
+    /**
+     * 计算scratch中前length个字节的hash值。与 HashMap.hash 一样，最后把高16位异或到低16位。
+     */
+    static int hashBytes(ByteBuffer s, int length) {
+        int h = length, i = 0;
+        for (; i + 4 <= length; i += 4) {
+            h = (h ^ s.getInt(i)) * 0x9E3779B9;
+            h ^= h >>> 16;
+        }
+        for (; i < length; ++i)
+            h = (h ^ s.get(i)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 比较记录a中的key编码与scratch中前length个字节是否相同
+     */
+    final boolean keyEquals(long a, int length) {
+        ByteBuffer b = chunk(a), s = scratch;
+        int off = offset(a) + HEADER, i = 0;
+        for (; i + 8 <= length; i += 8) {
+            if (b.getLong(off + i) != s.getLong(i))
+                return false;
+        }
+        for (; i < length; ++i) {
+            if (b.get(off + i) != s.get(i))
+                return false;
+        }
+        return true;
+    }
+
+    final K decodeKey(long a) {
+        ByteBuffer b = chunk(a);
+        int off = offset(a);
+        b.position(off + HEADER);
+        return keyCodec.decode(b, b.getInt(off + KEY_LENGTH));
+    }
+
+    final V decodeValue(long a) {
+        ByteBuffer b = chunk(a);
+        int off = offset(a);
+        b.position(off + HEADER + b.getInt(off + KEY_LENGTH));
+        return valueCodec.decode(b, b.getInt(off + VALUE_LENGTH));
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * 返回map中的key-value映射数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 查找key对应的记录
+     *
+     * @return 记录的地址，不存在时返回0
+     */
+    final long getRecord(Object key) {
+        ensureOpen();
+        if (key == null || size == 0)
+            return 0L;
+        int klen = encode(key, null);
+        int hash = hashBytes(scratch, klen);
+        for (long e = bucket(hash & (capacity - 1)); e != 0L; e = next(e)) {
+            if (hashOf(e) == hash && keyLength(e) == klen && keyEquals(e, klen))
+                return e;
+        }
+        return 0L;
+    }
+
+    /**
+     * 返回键映射的值，不存在时返回null
+     *
+     * @throws IllegalStateException 如果map已经被释放
+     * @throws ClassCastException 如果键的编解码器不能编码key
+     */
+    public V get(Object key) {
+        long e;
+        return (e = getRecord(key)) == 0L ? null : decodeValue(e);
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        long e;
+        return (e = getRecord(key)) == 0L ? defaultValue : decodeValue(e);
+    }
+
+    /**
+     * 如果map中存在键为key的映射则返回true
+     *
+     * @throws IllegalStateException 如果map已经被释放
+     * @throws ClassCastException 如果键的编解码器不能编码key
+     */
+    public boolean containsKey(Object key) {
+        return getRecord(key) != 0L;
+    }
+
+    /**
+     * 在map中添加key-value键值对，如果key已存在，则替换value
+     *
+     * @return 如果map中已存在key则返回此key对应的value,否则返回null
+     * @throws IllegalStateException 如果map已经被释放
+     * @throws NullPointerException 如果key或者value为null
+     * @throws IllegalArgumentException 如果映射编码后超过64MB
+     */
+    public V put(K key, V value) {
+        return putVal(key, value, false, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(key, value, true, false);
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        return putVal(key, value, false, true);
+    }
+
+    /**
+     * Implements Map.put and related methods
+     *
+     * @param onlyIfAbsent 如果为true，不替换已存在的value
+     * @param onlyIfPresent 如果为true，key不存在时不插入
+     * @return 之前的value，如果不存在则返回null
+     */
+    final V putVal(K key, V value, boolean onlyIfAbsent, boolean onlyIfPresent) {
+        ensureOpen();
+        if (key == null || value == null)
+            throw new NullPointerException();
+        int klen = encode(key, value);
+        int vlen = scratch.position() - klen;
+        int hash = hashBytes(scratch, klen);
+        if (table == null) {
+            if (onlyIfPresent)
+                return null;
+            resize();
+        }
+        int i = hash & (capacity - 1);
+        long prev = 0L;
+        for (long e = bucket(i); e != 0L; prev = e, e = next(e)) {
+            if (hashOf(e) == hash && keyLength(e) == klen && keyEquals(e, klen)) {
+                V oldValue = decodeValue(e);
+                if (!onlyIfAbsent) {
+                    int oldLength = valueLength(e);
+                    if (oldLength == vlen) {
+                        // 编码长度相同，直接覆盖旧值
+                        ByteBuffer b = chunk(e), s = scratch;
+                        b.position(offset(e) + HEADER + klen);
+                        s.limit(klen + vlen);
+                        s.position(klen);
+                        b.put(s);
+                    }
+                    else {
+                        // 写入新的记录并替换链表中的旧记录
+                        long n = writeRecord(hash, klen, vlen);
+                        setNext(n, next(e));
+                        if (prev == 0L)
+                            setBucket(i, n);
+                        else
+                            setNext(prev, n);
+                        garbage += recordSize(klen, oldLength);
+                        maybeCompact();
+                    }
+                }
+                return oldValue;
+            }
+        }
+        if (onlyIfPresent)
+            return null;
+        long n = writeRecord(hash, klen, vlen);
+        if (prev == 0L)
+            setBucket(i, n);
+        else
+            setNext(prev, n);
+        ++modCount;
+        if (++size > threshold)
+            resize();
+        return null;
+    }
+
+    /**
+     * 初始化或者翻倍桶数组的容量。记录不需要移动，
+     * 只是按照缓存的hash值把每个桶拆分成高低两条链表，保持原有的顺序。
+     */
+    final void resize() {
+        ByteBuffer[] oldTab = table;
+        int oldCap = capacity, oldThr = threshold, newCap;
+        if (oldCap > 0) {
+            if (oldCap >= MAXIMUM_CAPACITY) {
+                threshold = Integer.MAX_VALUE;
+                return;
+            }
+            newCap = oldCap << 1;
+        }
+        else if (oldThr > 0)
+            newCap = oldThr;
+        else
+            newCap = DEFAULT_INITIAL_CAPACITY;
+        float ft = (float)newCap * loadFactor;
+        threshold = (newCap < MAXIMUM_CAPACITY && ft < (float)MAXIMUM_CAPACITY ?
+                     (int)ft : Integer.MAX_VALUE);
+        table = newTable(newCap);
+        capacity = newCap;
+        if (oldTab != null) {
+            for (int j = 0; j < oldCap; ++j) {
+                long e = oldTab[j >>> TABLE_SHIFT].getLong((j & TABLE_MASK) << 3);
+                if (e == 0L)
+                    continue;
+                long loHead = 0L, loTail = 0L;
+                long hiHead = 0L, hiTail = 0L;
+                long next;
+                do {
+                    next = next(e);
+                    if ((hashOf(e) & oldCap) == 0) {
+                        if (loTail == 0L)
+                            loHead = e;
+                        else
+                            setNext(loTail, e);
+                        loTail = e;
+                    }
+                    else {
+                        if (hiTail == 0L)
+                            hiHead = e;
+                        else
+                            setNext(hiTail, e);
+                        hiTail = e;
+                    }
+                } while ((e = next) != 0L);
+                if (loTail != 0L) {
+                    setNext(loTail, 0L);
+                    setBucket(j, loHead);
+                }
+                if (hiTail != 0L) {
+                    setNext(hiTail, 0L);
+                    setBucket(j + oldCap, hiHead);
+                }
+            }
+            releaseAll(oldTab);
+        }
+    }
+
+    /**
+     * 把key对应的记录从链表中摘除。记录的内容在下一次压缩之前保持不变，
+     * 所以调用者仍然可以解码它，之后应当调用 maybeCompact。
+     *
+     * @return 被摘除的记录的地址，不存在时返回0
+     */
+    final long unlink(Object key) {
+        ensureOpen();
+        if (key == null || size == 0)
+            return 0L;
+        int klen = encode(key, null);
+        int hash = hashBytes(scratch, klen);
+        int i = hash & (capacity - 1);
+        for (long e = bucket(i), prev = 0L; e != 0L; prev = e, e = next(e)) {
+            if (hashOf(e) == hash && keyLength(e) == klen && keyEquals(e, klen)) {
+                if (prev == 0L)
+                    setBucket(i, next(e));
+                else
+                    setNext(prev, next(e));
+                garbage += recordSize(klen, valueLength(e));
+                ++modCount;
+                --size;
+                return e;
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * 删除键为key的映射
+     *
+     * @return 被删除的value，不存在时返回null
+     * @throws IllegalStateException 如果map已经被释放
+     */
+    public V remove(Object key) {
+        long e;
+        if ((e = unlink(key)) == 0L)
+            return null;
+        V oldValue = decodeValue(e);
+        maybeCompact();
+        return oldValue;
+    }
+
+    /**
+     * 删除所有映射并释放所有的堆外内存。之后map还可以继续使用，
+     * 桶数组会在下一次插入时按照原来的容量重新分配。
+     */
+    public void clear() {
+        ++modCount;
+        releaseAll(table);
+        releaseAll(chunks);
+        if (capacity > 0)
+            threshold = capacity;
+        table = null;
+        capacity = 0;
+        chunks = null;
+        top = 0L;
+        garbage = 0L;
+        size = 0;
+    }
+
+    /**
+     * 释放所有的堆外内存。之后除了size、isEmpty、clear和free之外，
+     * 对这个map及其视图的访问都会抛出 {@link IllegalStateException}。可以重复调用。
+     */
+    public void free() {
+        clear();
+        scratch = null;
+        freed = true;
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        if (ks == null) {
+            ks = new KeySet();
+            keySet = ks;
+        }
+        return ks;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public final int size()                 { return size; }
+        public final void clear()               { OffHeapHashMap.this.clear(); }
+        public final Iterator<K> iterator()     { return new KeyIterator(); }
+        public final boolean contains(Object o) { return containsKey(o); }
+        public final boolean remove(Object key) {
+            if (unlink(key) == 0L)
+                return false;
+            maybeCompact();
+            return true;
+        }
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        if (vs == null) {
+            vs = new Values();
+            values = vs;
+        }
+        return vs;
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public final int size()                 { return size; }
+        public final void clear()               { OffHeapHashMap.this.clear(); }
+        public final Iterator<V> iterator()     { return new ValueIterator(); }
+        public final boolean contains(Object o) { return containsValue(o); }
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { OffHeapHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object value = e.getValue();
+            return value != null && value.equals(get(e.getKey()));
+        }
+        public final boolean remove(Object o) {
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+                return OffHeapHashMap.this.remove(e.getKey(), e.getValue());
+            }
+            return false;
+        }
+    }
+
+    /* ---------------- Iterators -------------- */
+
+    /**
+     * 迭代器每次解码一整个桶中的所有映射，两次调用之间只保存桶的下标和解码后的对象。
+     */
+    abstract class OffHeapIterator {
+        int index;             // 下一个要解码的桶
+        Object[] keys = new Object[4];
+        Object[] vals;         // 只有需要value时才解码
+        int pending;           // keys中已解码的数量
+        int cursor;            // keys中下一个要返回的下标
+        K current;             // 上一次返回的key，null表示没有
+        int expectedModCount;  // for fast-fail
+
+        OffHeapIterator(boolean values) {
+            ensureOpen();
+            expectedModCount = modCount;
+            if (values)
+                vals = new Object[4];
+        }
+
+        public final boolean hasNext() {
+            while (cursor == pending && index < capacity) {
+                cursor = pending = 0;
+                for (long e = bucket(index++); e != 0L; e = next(e)) {
+                    if (pending == keys.length) {
+                        keys = Arrays.copyOf(keys, pending << 1);
+                        if (vals != null)
+                            vals = Arrays.copyOf(vals, pending << 1);
+                    }
+                    keys[pending] = decodeKey(e);
+                    if (vals != null)
+                        vals[pending] = decodeValue(e);
+                    ++pending;
+                }
+            }
+            return cursor < pending;
+        }
+
+        @SuppressWarnings("unchecked")
+        final int nextIndex() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!hasNext())
+                throw new NoSuchElementException();
+            current = (K)keys[cursor];
+            return cursor++;
+        }
+
+        public final void remove() {
+            K k = current;
+            if (k == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = null;
+            if (unlink(k) != 0L)
+                maybeCompact();
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends OffHeapIterator
+        implements Iterator<K> {
+        KeyIterator() { super(false); }
+        @SuppressWarnings("unchecked")
+        public final K next() { return (K)keys[nextIndex()]; }
+    }
+
+    final class ValueIterator extends OffHeapIterator
+        implements Iterator<V> {
+        ValueIterator() { super(true); }
+        @SuppressWarnings("unchecked")
+        public final V next() { return (V)vals[nextIndex()]; }
+    }
+
+    final class EntryIterator extends OffHeapIterator
+        implements Iterator<Map.Entry<K,V>> {
+        EntryIterator() { super(true); }
+        @SuppressWarnings("unchecked")
+        public final Map.Entry<K,V> next() {
+            int i = nextIndex();
+            return new Entry((K)keys[i], (V)vals[i]);
+        }
+    }
+
+    /**
+     * 迭代器返回的Entry，保存解码后的key和value，setValue时通过key重新定位记录并写回map。
+     */
+    final class Entry implements Map.Entry<K,V> {
+        final K key;
+        V value;
+
+        Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public final K getKey()        { return key; }
+        public final V getValue()      { return value; }
+        public final String toString() { return key + "=" + value; }
+
+        public final int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        public final V setValue(V newValue) {
+            if (replace(key, newValue) == null)
+                throw new IllegalStateException("Entry was removed");
+            V oldValue = value;
+            value = newValue;
+            return oldValue;
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+                if (key.equals(e.getKey()) && value.equals(e.getValue()))
+                    return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,877 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * 基于开放寻址（Robin Hood 线性探测）的 Map 接口实现，可以直接替换 {@link HashMap} 使用。
+ * 与 HashMap 一样允许 null 键和 null 值，并且使用相同的 {@link HashMap#hash(Object)} 扰动函数、
+ * 2的幂容量（{@link HashMap#tableSizeFor(int)}）和负载因子语义，方便与 HashMap 做 A/B 对比。
+ *
+ * HashMap 把每个映射存放在一个堆上的 Node 对象中，桶内通过 Node.next 链接，查找时需要沿着指针
+ * 访问分散的内存。此实现把缓存的 hash 值存放在一个 int 数组中，把键和值交错存放在一个 Object 数组中，
+ * 探测只在连续的内存上进行，每个映射也不再需要额外的 Node 对象。
+ *
+ * Robin Hood 探测：插入时如果当前槽位上元素的探测距离比待插入元素的短，则交换两者（"劫富济贫"），
+ * 使所有元素的探测距离趋于均衡；查找时一旦遇到探测距离比当前距离短的元素，即可判定 key 不存在。
+ * 删除采用后移删除（backward-shift deletion），不使用墓碑标记，删除之后表中不会残留影响查找的垃圾。
+ *
+ * 因为开放寻址的表不能被填满，负载因子必须小于1。
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access this map concurrently, and at least one of
+ * the threads modifies the map structurally, it <i>must</i> be
+ * synchronized externally.
+ *
+ * <p>The iterators returned by all of this class's "collection view methods"
+ * are <i>fail-fast</i>: if the map is structurally modified at any time after
+ * the iterator is created, in any way except through the iterator's own
+ * <tt>remove</tt> method, the iterator will throw a
+ * {@link ConcurrentModificationException}.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @see     HashMap
+ * @since   1.8
+ */
+public class RobinHoodHashMap<K,V> extends AbstractMap<K,V>
+    implements Map<K,V>, Cloneable, Serializable {
+
+    private static final long serialVersionUID = -3719508271634930524L;
+
+    /*
+     * Implementation notes.
+     *
+     * Slot i is empty iff hashes[i] == 0. The hash cached for a key
+     * is HashMap.hash(key), except that 0 is remapped to 1 so that it
+     * can be used as the empty marker. Keys and values are interleaved
+     * in "table": the key of slot i is at 2*i, its value at 2*i+1, so a
+     * successful probe usually touches one line of hashes and one line
+     * of table.
+     *
+     * The probe distance of the entry in slot i is
+     * (i - hashes[i]) & (capacity - 1). Robin Hood insertion keeps the
+     * invariant that along any probe sequence distances never drop by
+     * more than one between consecutive occupied slots, which is what
+     * lets lookups stop early and lets removal shift the following
+     * run of entries back by one instead of leaving tombstones.
+     */
+
+    /**
+     * 默认的初始容量-必须为2的指数值
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 最大容量。键和值交错存放在同一个数组中，所以最大容量是 HashMap 的四分之一。
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 29;
+
+    /**
+     * 构造器未指定时使用的默认负载因子值
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 每个槽位缓存的hash值，0表示空槽位。长度总是2的幂。
+     */
+    transient int[] hashes;
+
+    /**
+     * 交错存放的键和值，长度为 hashes.length 的两倍
+     */
+    transient Object[] table;
+
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * map中的key-value键值对数量
+     */
+    transient int size;
+
+    /**
+     * map结构被修改的次数，用于迭代器的 fail-fast
+     */
+    transient int modCount;
+
+    /**
+     * 扩容的阈值 (capacity * load factor)。在表还没有分配时保存初始容量。
+     *
+     * @serial
+     */
+    int threshold;
+
+    /**
+     * 负载因子
+     *
+     * @serial
+     */
+    final float loadFactor;
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * 用指定的容量值和指定的负载因子值，构造一个空的RobinHoodHashMap
+     *
+     * @param  initialCapacity 初始化容量值
+     * @param  loadFactor      负载因子值
+     * @throws IllegalArgumentException 如果初始化容量值为负数，或者负载因子不在 (0, 1) 之间
+     */
+    public RobinHoodHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        this.threshold = HashMap.tableSizeFor(initialCapacity);
+    }
+
+    /**
+     * 用指定的容量值和默认的负载因子0.75，构造一个空的RobinHoodHashMap
+     *
+     * @param  initialCapacity 初始化容量值
+     * @throws IllegalArgumentException 如果初始化容量值为负数
+     */
+    public RobinHoodHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 用默认的容量16和默认的负载因子0.75，构造一个空的RobinHoodHashMap
+     */
+    public RobinHoodHashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+    }
+
+    /**
+     * 构造一个与指定的Map中具有同样映射关系的一个新的RobinHoodHashMap。
+     *
+     * @param   m 将要被新的Map所承载的映射关系集
+     * @throws  NullPointerException 如果指定的map为空
+     */
+    public RobinHoodHashMap(Map<? extends K, ? extends V> m) {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+        putMapEntries(m);
+    }
+
+    /**
+     * 计算key在槽位中缓存的hash值。与 HashMap.hash 相同，只是0被保留用来表示空槽位。
+     */
+    static int slotHash(Object key) {
+        int h;
+        return ((h = HashMap.hash(key)) == 0) ? 1 : h;
+    }
+
+    /**
+     * putAll和拷贝构造器的实现，按需要预先分配容量
+     */
+    final void putMapEntries(Map<? extends K, ? extends V> m) {
+        int s = m.size();
+        if (s > 0) {
+            if (hashes == null) { // pre-size
+                float ft = ((float)s / loadFactor) + 1.0F;
+                int t = ((ft < (float)MAXIMUM_CAPACITY) ?
+                         (int)ft : MAXIMUM_CAPACITY);
+                if (t > threshold)
+                    threshold = HashMap.tableSizeFor(t);
+            }
+            else {
+                while (s > threshold && hashes.length < MAXIMUM_CAPACITY)
+                    resize();
+            }
+            for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+                K key = e.getKey();
+                putVal(slotHash(key), key, e.getValue(), false);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i;
+        return (i = findSlot(slotHash(key), key)) < 0 ? null :
+            (V)table[(i << 1) + 1];
+    }
+
+    public boolean containsKey(Object key) {
+        return findSlot(slotHash(key), key) >= 0;
+    }
+
+    /**
+     * 查找key所在的槽位，对应HashMap.getNode
+     *
+     * @param hash slotHash(key)
+     * @param key the key
+     * @return 槽位下标，不存在时返回-1
+     */
+    final int findSlot(int hash, Object key) {
+        int[] hs; Object[] tab; int n;
+        if ((hs = hashes) != null && (n = hs.length) > 0) {
+            tab = table;
+            int mask = n - 1;
+            for (int i = hash & mask, dist = 0; ; i = (i + 1) & mask, ++dist) {
+                int h; Object k;
+                if ((h = hs[i]) == 0 || ((i - h) & mask) < dist)
+                    return -1; // 空槽位，或者遇到了比自己"富有"的元素
+                if (h == hash &&
+                    ((k = tab[i << 1]) == key || (key != null && key.equals(k))))
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 在map中添加key-value键值对，如果key已存在，则替换value
+     *
+     * @return 如果map中已存在key则返回此key对应的value,否则返回null
+     */
+    public V put(K key, V value) {
+        return putVal(slotHash(key), key, value, false);
+    }
+
+    /**
+     * Map.put和相关方法的实现。查找和插入在一次探测中完成：
+     * 一旦确定key不存在（遇到空槽位或探测距离更短的元素），就从该位置开始执行Robin Hood插入。
+     *
+     * @param hash slotHash(key)
+     * @param onlyIfAbsent 如果为true，不改变已存在的value
+     * @return previous value, or null if none
+     */
+    @SuppressWarnings("unchecked")
+    final V putVal(int hash, K key, V value, boolean onlyIfAbsent) {
+        int[] hs; Object[] tab; int n;
+        if ((hs = hashes) == null || (n = hs.length) == 0)
+            n = (hs = resize()).length;
+        for (;;) {
+            tab = table;
+            int mask = n - 1, i = hash & mask, dist = 0;
+            for (;; i = (i + 1) & mask, ++dist) {
+                int h; Object k;
+                if ((h = hs[i]) == 0 || ((i - h) & mask) < dist)
+                    break;
+                if (h == hash &&
+                    ((k = tab[i << 1]) == key || (key != null && key.equals(k)))) {
+                    int vi = (i << 1) + 1;
+                    V oldValue = (V)tab[vi];
+                    if (!onlyIfAbsent || oldValue == null)
+                        tab[vi] = value;
+                    return oldValue;
+                }
+            }
+            if (size >= threshold) { // key不存在，需要插入，先确保容量
+                if (n < MAXIMUM_CAPACITY) {
+                    n = (hs = resize()).length;
+                    continue;         // 容量改变，重新探测插入位置
+                }
+                if (size >= n - 1)
+                    throw new IllegalStateException("Map is full");
+            }
+            insertAt(hs, tab, mask, i, dist, hash, key, value);
+            ++modCount;
+            ++size;
+            return null;
+        }
+    }
+
+    /**
+     * 从槽位i开始执行Robin Hood插入：被插入的元素占据槽位i，原来的元素（如果有）带着它自己的
+     * 探测距离继续向后寻找位置，途中遇到更"富有"的元素就与之交换，直到遇到空槽位为止。
+     */
+    static void insertAt(int[] hs, Object[] tab, int mask, int i, int dist,
+                         int hash, Object key, Object value) {
+        for (;; i = (i + 1) & mask, ++dist) {
+            int h = hs[i];
+            if (h == 0) {
+                hs[i] = hash;
+                tab[i << 1] = key;
+                tab[(i << 1) + 1] = value;
+                return;
+            }
+            int d = (i - h) & mask;
+            if (d < dist) { // 交换，由原来的元素继续探测
+                Object k = tab[i << 1], v = tab[(i << 1) + 1];
+                hs[i] = hash;
+                tab[i << 1] = key;
+                tab[(i << 1) + 1] = value;
+                hash = h; key = k; value = v; dist = d;
+            }
+        }
+    }
+
+    /**
+     * 初始化或者翻倍容量。与HashMap不同，元素的位置取决于整个探测序列，
+     * 所以需要把旧表中的元素按缓存的hash值重新插入新表（不需要重新计算hashCode，也不需要调用equals）。
+     *
+     * @return 新的hashes数组
+     */
+    final int[] resize() {
+        int[] oldHs = hashes;
+        Object[] oldTab = table;
+        int oldCap = (oldHs == null) ? 0 : oldHs.length;
+        int oldThr = threshold;
+        int newCap;
+        if (oldCap > 0)
+            newCap = oldCap << 1;
+        else if (oldThr > 0)
+            newCap = oldThr;
+        else
+            newCap = DEFAULT_INITIAL_CAPACITY;
+        float ft = (float)newCap * loadFactor;
+        threshold = (newCap < MAXIMUM_CAPACITY ? (int)ft : MAXIMUM_CAPACITY - 1);
+        int[] newHs = new int[newCap];
+        Object[] newTab = new Object[newCap << 1];
+        if (oldHs != null) {
+            int mask = newCap - 1;
+            for (int j = 0; j < oldCap; ++j) {
+                int h;
+                if ((h = oldHs[j]) != 0)
+                    insertAt(newHs, newTab, mask, h & mask, 0, h,
+                             oldTab[j << 1], oldTab[(j << 1) + 1]);
+            }
+        }
+        hashes = newHs;
+        table = newTab;
+        return newHs;
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        putMapEntries(m);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i;
+        if ((i = findSlot(slotHash(key), key)) < 0)
+            return null;
+        V oldValue = (V)table[(i << 1) + 1];
+        removeAt(i);
+        return oldValue;
+    }
+
+    /**
+     * 后移删除：删除槽位i上的元素后，把其后连续的、探测距离大于0的元素依次前移一位，
+     * 直到遇到空槽位或者正好在自己初始位置上的元素。
+     *
+     * @return 被前移到此表末尾槽位（下标 n-1）上的、原来位于槽位0的元素的key，
+     *         如果没有发生这样的回绕则返回this（供迭代器使用）
+     */
+    final Object removeAt(int i) {
+        int[] hs = hashes;
+        Object[] tab = table;
+        int mask = hs.length - 1;
+        Object wrapped = this;
+        for (int j = (i + 1) & mask; ; i = j, j = (j + 1) & mask) {
+            int h = hs[j];
+            if (h == 0 || ((j - h) & mask) == 0) {
+                hs[i] = 0;
+                tab[i << 1] = null;
+                tab[(i << 1) + 1] = null;
+                break;
+            }
+            hs[i] = h;
+            tab[i << 1] = tab[j << 1];
+            tab[(i << 1) + 1] = tab[(j << 1) + 1];
+            if (j == 0)
+                wrapped = tab[i << 1];
+        }
+        ++modCount;
+        --size;
+        return wrapped;
+    }
+
+    public void clear() {
+        int[] hs;
+        modCount++;
+        if ((hs = hashes) != null && size > 0) {
+            size = 0;
+            Arrays.fill(hs, 0);
+            Arrays.fill(table, null);
+        }
+    }
+
+    public boolean containsValue(Object value) {
+        int[] hs; Object[] tab; Object v;
+        if ((hs = hashes) != null && size > 0) {
+            tab = table;
+            for (int i = 0; i < hs.length; ++i) {
+                if (hs[i] != 0 &&
+                    ((v = tab[(i << 1) + 1]) == value ||
+                     (value != null && value.equals(v))))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        if (ks == null) {
+            ks = new KeySet();
+            keySet = ks;
+        }
+        return ks;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public final int size()                 { return size; }
+        public final void clear()               { RobinHoodHashMap.this.clear(); }
+        public final Iterator<K> iterator()     { return new KeyIterator(); }
+        public final boolean contains(Object o) { return containsKey(o); }
+        public final boolean remove(Object key) {
+            int i;
+            if ((i = findSlot(slotHash(key), key)) < 0)
+                return false;
+            removeAt(i);
+            return true;
+        }
+        @SuppressWarnings("unchecked")
+        public final void forEach(Consumer<? super K> action) {
+            int[] hs; Object[] tab;
+            if (action == null)
+                throw new NullPointerException();
+            if (size > 0 && (hs = hashes) != null) {
+                int mc = modCount;
+                tab = table;
+                for (int i = 0; i < hs.length; ++i) {
+                    if (hs[i] != 0)
+                        action.accept((K)tab[i << 1]);
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        if (vs == null) {
+            vs = new Values();
+            values = vs;
+        }
+        return vs;
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public final int size()                 { return size; }
+        public final void clear()               { RobinHoodHashMap.this.clear(); }
+        public final Iterator<V> iterator()     { return new ValueIterator(); }
+        public final boolean contains(Object o) { return containsValue(o); }
+        @SuppressWarnings("unchecked")
+        public final void forEach(Consumer<? super V> action) {
+            int[] hs; Object[] tab;
+            if (action == null)
+                throw new NullPointerException();
+            if (size > 0 && (hs = hashes) != null) {
+                int mc = modCount;
+                tab = table;
+                for (int i = 0; i < hs.length; ++i) {
+                    if (hs[i] != 0)
+                        action.accept((V)tab[(i << 1) + 1]);
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { RobinHoodHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            int i;
+            return (i = findSlot(slotHash(key), key)) >= 0 &&
+                Objects.equals(table[(i << 1) + 1], e.getValue());
+        }
+        public final boolean remove(Object o) {
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+                Object key = e.getKey();
+                int i;
+                if ((i = findSlot(slotHash(key), key)) >= 0 &&
+                    Objects.equals(table[(i << 1) + 1], e.getValue())) {
+                    removeAt(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Overrides of JDK8 Map extension methods
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        int i;
+        return (i = findSlot(slotHash(key), key)) < 0 ? defaultValue :
+            (V)table[(i << 1) + 1];
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(slotHash(key), key, value, true);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        int i;
+        if ((i = findSlot(slotHash(key), key)) >= 0 &&
+            Objects.equals(table[(i << 1) + 1], value)) {
+            removeAt(i);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        int i;
+        if ((i = findSlot(slotHash(key), key)) >= 0 &&
+            Objects.equals(table[(i << 1) + 1], oldValue)) {
+            table[(i << 1) + 1] = newValue;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V replace(K key, V value) {
+        int i;
+        if ((i = findSlot(slotHash(key), key)) >= 0) {
+            int vi = (i << 1) + 1;
+            V oldValue = (V)table[vi];
+            table[vi] = value;
+            return oldValue;
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        int[] hs; Object[] tab;
+        if (action == null)
+            throw new NullPointerException();
+        if (size > 0 && (hs = hashes) != null) {
+            int mc = modCount;
+            tab = table;
+            for (int i = 0; i < hs.length; ++i) {
+                if (hs[i] != 0)
+                    action.accept((K)tab[i << 1], (V)tab[(i << 1) + 1]);
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        int[] hs; Object[] tab;
+        if (function == null)
+            throw new NullPointerException();
+        if (size > 0 && (hs = hashes) != null) {
+            int mc = modCount;
+            tab = table;
+            for (int i = 0; i < hs.length; ++i) {
+                if (hs[i] != 0) {
+                    int vi = (i << 1) + 1;
+                    tab[vi] = function.apply((K)tab[i << 1], (V)tab[vi]);
+                }
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // Cloning and serialization
+
+    /**
+     * Returns a shallow copy of this <tt>RobinHoodHashMap</tt> instance: the
+     * keys and values themselves are not cloned.
+     *
+     * @return a shallow copy of this map
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object clone() {
+        RobinHoodHashMap<K,V> result;
+        try {
+            result = (RobinHoodHashMap<K,V>)super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        // 槽位布局只取决于容量和内容，直接复制数组即可
+        if (hashes != null) {
+            result.hashes = hashes.clone();
+            result.table = table.clone();
+        }
+        result.entrySet = null;
+        result.keySet = null;
+        result.values = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    final int capacity() {
+        return (hashes != null) ? hashes.length :
+            (threshold > 0) ? threshold :
+            DEFAULT_INITIAL_CAPACITY;
+    }
+
+    /**
+     * Save the state of the <tt>RobinHoodHashMap</tt> instance to a stream.
+     *
+     * @serialData The <i>capacity</i> (int), followed by the <i>size</i>
+     *             (int), followed by the key (Object) and value (Object)
+     *             for each key-value mapping, in no particular order.
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+        throws IOException {
+        int buckets = capacity();
+        s.defaultWriteObject();
+        s.writeInt(buckets);
+        s.writeInt(size);
+        int[] hs; Object[] tab;
+        if (size > 0 && (hs = hashes) != null) {
+            tab = table;
+            for (int i = 0; i < hs.length; ++i) {
+                if (hs[i] != 0) {
+                    s.writeObject(tab[i << 1]);
+                    s.writeObject(tab[(i << 1) + 1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reconstitute the {@code RobinHoodHashMap} instance from a stream.
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new InvalidObjectException("Illegal load factor: " +
+                                             loadFactor);
+        hashes = null;
+        table = null;
+        threshold = 0;
+        size = 0;
+        s.readInt();                // Read and ignore number of buckets
+        int mappings = s.readInt(); // Read number of mappings (size)
+        if (mappings < 0)
+            throw new InvalidObjectException("Illegal mappings count: " +
+                                             mappings);
+        else if (mappings > 0) {
+            float fc = (float)mappings / loadFactor + 1.0f;
+            threshold = ((fc < DEFAULT_INITIAL_CAPACITY) ?
+                         DEFAULT_INITIAL_CAPACITY :
+                         (fc >= MAXIMUM_CAPACITY) ?
+                         MAXIMUM_CAPACITY :
+                         HashMap.tableSizeFor((int)fc));
+            for (int i = 0; i < mappings; i++) {
+                @SuppressWarnings("unchecked")
+                    K key = (K) s.readObject();
+                @SuppressWarnings("unchecked")
+                    V value = (V) s.readObject();
+                putVal(slotHash(key), key, value, false);
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // iterators
+
+    /**
+     * 迭代器从表尾向表头扫描。后移删除只会把元素移到更小的下标，所以通过迭代器删除
+     * 当前元素时，前移的元素都来自已经访问过的槽位；唯一的例外是探测序列从表尾回绕到表头时，
+     * 槽位0上尚未访问的元素会被移到表尾（已经访问过的区域），这样的元素记录在wrapped中，
+     * 在扫描完整个表之后再返回。
+     */
+    abstract class RobinHoodIterator {
+        int index;             // 下一个要检查的槽位是 index - 1
+        int current = -1;      // 上一次返回元素的槽位，-1表示没有
+        int currentWrapped = -1; // 上一次从wrapped中返回的元素的下标
+        int expectedModCount;  // for fast-fail
+        ArrayList<Object> wrapped;  // 被回绕移动到已访问区域的 key/value 对
+        int wrappedIndex;
+
+        RobinHoodIterator() {
+            expectedModCount = modCount;
+            int[] hs = hashes;
+            index = (hs == null || size == 0) ? 0 : hs.length;
+            advance();
+        }
+
+        final void advance() {
+            int[] hs = hashes;
+            int i = index;
+            while (i > 0 && hs[i - 1] == 0)
+                --i;
+            index = i;
+        }
+
+        public final boolean hasNext() {
+            return index > 0 ||
+                (wrapped != null && wrappedIndex < wrapped.size());
+        }
+
+        /**
+         * 返回下一个元素的下标：非负数表示table中的槽位，
+         * 负数 -(k + 1) 表示wrapped中下标为k的键值对
+         */
+        final int nextIndex() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (index > 0) {
+                int i = --index;
+                advance();
+                currentWrapped = -1;
+                return current = i;
+            }
+            if (wrapped != null && wrappedIndex < wrapped.size()) {
+                int k = wrappedIndex;
+                wrappedIndex += 2;
+                current = -1;
+                currentWrapped = k;
+                return -(k + 1);
+            }
+            throw new NoSuchElementException();
+        }
+
+        @SuppressWarnings("unchecked")
+        final K keyAt(int i) {
+            return (K)((i >= 0) ? table[i << 1] : wrapped.get(-(i + 1)));
+        }
+
+        @SuppressWarnings("unchecked")
+        final V valueAt(int i) {
+            return (V)((i >= 0) ? table[(i << 1) + 1] : wrapped.get(-i));
+        }
+
+        public final void remove() {
+            int i, k;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if ((i = current) >= 0) {
+                current = -1;
+                Object w = removeAt(i);
+                if (w != RobinHoodHashMap.this && i > 0) {
+                    // 槽位0上尚未访问的元素被移到了表尾
+                    int last = hashes.length - 1;
+                    if (wrapped == null)
+                        wrapped = new ArrayList<>();
+                    wrapped.add(w);
+                    wrapped.add(table[(last << 1) + 1]);
+                }
+                index = i;     // 槽位i现在是从已访问区域前移过来的元素
+                advance();
+            }
+            else if ((k = currentWrapped) >= 0) {
+                currentWrapped = -1;
+                Object key = wrapped.get(k);
+                int j;
+                if ((j = findSlot(slotHash(key), key)) < 0)
+                    throw new ConcurrentModificationException();
+                removeAt(j);
+            }
+            else
+                throw new IllegalStateException();
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends RobinHoodIterator
+        implements Iterator<K> {
+        public final K next() { return keyAt(nextIndex()); }
+    }
+
+    final class ValueIterator extends RobinHoodIterator
+        implements Iterator<V> {
+        public final V next() { return valueAt(nextIndex()); }
+    }
+
+    final class EntryIterator extends RobinHoodIterator
+        implements Iterator<Map.Entry<K,V>> {
+        public final Map.Entry<K,V> next() {
+            int i = nextIndex();
+            return new Entry(keyAt(i), valueAt(i));
+        }
+    }
+
+    /**
+     * 迭代器返回的Entry。元素在表中的位置会随着插入和删除移动，所以Entry只保存key和value，
+     * setValue时通过key重新定位槽位并写回map。
+     */
+    final class Entry implements Map.Entry<K,V> {
+        final K key;
+        V value;
+
+        Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public final K getKey()        { return key; }
+        public final V getValue()      { return value; }
+        public final String toString() { return key + "=" + value; }
+
+        public final int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        public final V setValue(V newValue) {
+            int i;
+            if ((i = findSlot(slotHash(key), key)) < 0)
+                throw new IllegalStateException("Entry was removed");
+            V oldValue = value;
+            table[(i << 1) + 1] = value = newValue;
+            return oldValue;
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+                if (Objects.equals(key, e.getKey()) &&
+                    Objects.equals(value, e.getValue()))
+                    return true;
+            }
+            return false;
+        }
+    }
+}
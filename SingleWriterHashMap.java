@@ -0,0 +1,615 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+import sun.misc.Unsafe;
+
+/**
+ * 单写多读的 Map 实现：只有一个线程修改，任意多个线程不加锁地读取。
+ *
+ * 结构与 {@link HashMap} 相同，都是链地址法的哈希表，但是桶数组 {@code table}、
+ * 节点的 next 和 value 都按照发布语义（release）写入，读线程用获取语义（acquire）读取，
+ * 所以 get 不需要锁，也不需要CAS，它的代价与不加同步的 HashMap.get 基本相同。
+ *
+ * 写线程对已经发布的链表只做两种修改：在链表末尾追加节点，或者把前驱节点的next指向被删除节点的后继。
+ * 正在遍历的读线程在这两种情况下都能沿着next走到链表的末尾。
+ * 扩容采用读-复制-更新（RCU）的方式：在一个新的数组中复制出完整的新表，
+ * 然后一次性发布，读线程要么看到完整的旧表，要么看到完整的新表，不会看到迁移了一半的表。
+ * 旧表的节点在扩容之后不再修改，由垃圾收集器在最后一个读线程离开之后回收。
+ *
+ * 所有修改操作（put、remove、clear、compute 系列，以及迭代器的 remove 和 Entry 的 setValue）
+ * 必须由同一个线程执行，或者由调用者保证它们之间存在 happens-before 关系（例如用一把锁串行化）。
+ * 多个线程同时修改的结果是未定义的。
+ *
+ * 读线程上的迭代器是弱一致的：它遍历创建时的那张表，不会抛出 {@link ConcurrentModificationException}，
+ * 可能反映也可能不反映迭代器创建之后的修改。
+ * 与 HashMap 不同，hash冲突很多的桶不会转成红黑树，因为树的旋转无法在不加锁的读取下保持一致。
+ * 允许 null 键和 null 值。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @see     HashMap
+ * @see     StripedHashMap
+ * @since   1.8
+ */
+public class SingleWriterHashMap<K,V> extends AbstractMap<K,V>
+    implements Map<K,V>, Cloneable, Serializable {
+
+    private static final long serialVersionUID = -6402283315913446214L;
+
+    /**
+     * 默认的初始容量
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 最大容量
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * 默认的负载因子
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 链表节点。hash和key在发布之后不再改变，next和value由写线程按发布语义修改。
+     */
+    static final class Node<K,V> {
+        final int hash;
+        final K key;
+        volatile V value;
+        volatile Node<K,V> next;
+
+        Node(int hash, K key, V value, Node<K,V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        final void lazySetValue(V v) {
+            U.putOrderedObject(this, VALUE, v);
+        }
+
+        final void lazySetNext(Node<K,V> n) {
+            U.putOrderedObject(this, NEXT, n);
+        }
+    }
+
+    /* ---------------- Fields -------------- */
+
+    /**
+     * 桶数组，长度总是2的幂。扩容时整体替换，volatile写即是新表的发布。
+     */
+    transient volatile Node<K,V>[] table;
+
+    /**
+     * 映射的数量，只由写线程修改
+     */
+    transient volatile int size;
+
+    /**
+     * 下一次扩容的阈值，只由写线程访问
+     */
+    transient int threshold;
+
+    /**
+     * 负载因子
+     */
+    final float loadFactor;
+
+    /**
+     * 缓存的 entrySet()
+     */
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * 用指定的初始容量和负载因子构造一个空的map
+     *
+     * @param  initialCapacity 初始容量
+     * @param  loadFactor      负载因子
+     * @throws IllegalArgumentException 如果初始容量为负数，或者负载因子不是正数
+     */
+    public SingleWriterHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        initTable(HashMap.tableSizeFor(Math.max(initialCapacity, 1)));
+    }
+
+    /**
+     * 用指定的初始容量和默认的负载因子0.75构造一个空的map
+     *
+     * @param  initialCapacity 初始容量
+     * @throws IllegalArgumentException 如果初始容量为负数
+     */
+    public SingleWriterHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 用默认的初始容量16和负载因子0.75构造一个空的map
+     */
+    public SingleWriterHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 构造一个与指定的map具有同样映射关系的map
+     *
+     * @throws NullPointerException 如果m为null
+     */
+    public SingleWriterHashMap(Map<? extends K, ? extends V> m) {
+        this(Math.max((int)(m.size() / DEFAULT_LOAD_FACTOR) + 1,
+                      DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR);
+        putAll(m);
+    }
+
+    /**
+     * 分配一张长度为n的空表并发布
+     */
+    @SuppressWarnings("unchecked")
+    private void initTable(int n) {
+        threshold = (n < MAXIMUM_CAPACITY) ? (int)(n * loadFactor) : Integer.MAX_VALUE;
+        table = (Node<K,V>[])new Node<?,?>[n];
+    }
+
+    /**
+     * 以 volatile 语义读取桶的头节点
+     */
+    @SuppressWarnings("unchecked")
+    static final <K,V> Node<K,V> tabAt(Node<K,V>[] tab, int i) {
+        return (Node<K,V>)U.getObjectVolatile(tab, ((long)i << ASHIFT) + ABASE);
+    }
+
+    /**
+     * 以发布语义写入桶的头节点，只由写线程调用
+     */
+    static final <K,V> void setTabAt(Node<K,V>[] tab, int i, Node<K,V> v) {
+        U.putOrderedObject(tab, ((long)i << ASHIFT) + ABASE, v);
+    }
+
+    /**
+     * 不加锁的查找，任何线程都可以调用
+     */
+    final Node<K,V> getNode(int hash, Object key) {
+        Node<K,V>[] tab = table;
+        Node<K,V> e = tabAt(tab, (tab.length - 1) & hash);
+        K k;
+        for (; e != null; e = e.next) {
+            if (e.hash == hash &&
+                ((k = e.key) == key || (key != null && key.equals(k))))
+                return e;
+        }
+        return null;
+    }
+
+    /**
+     * 返回键映射的值，不存在或者映射到null时返回null
+     */
+    public V get(Object key) {
+        Node<K,V> e;
+        return (e = getNode(HashMap.hash(key), key)) == null ? null : e.value;
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        Node<K,V> e;
+        return (e = getNode(HashMap.hash(key), key)) == null ? defaultValue : e.value;
+    }
+
+    /**
+     * 如果map中存在键为key的映射则返回true
+     */
+    public boolean containsKey(Object key) {
+        return getNode(HashMap.hash(key), key) != null;
+    }
+
+    /**
+     * 如果map中有一个或多个键映射到value则返回true
+     */
+    public boolean containsValue(Object value) {
+        Node<K,V>[] tab = table;
+        for (int i = 0; i < tab.length; ++i) {
+            for (Node<K,V> e = tabAt(tab, i); e != null; e = e.next) {
+                V v;
+                if ((v = e.value) == value ||
+                    (value != null && value.equals(v)))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /* ---------------- Writer operations -------------- */
+
+    /**
+     * 在map中添加key-value键值对，如果key已存在，则替换value。只能由写线程调用。
+     *
+     * @return 之前的value，不存在时返回null
+     */
+    public V put(K key, V value) {
+        return putVal(HashMap.hash(key), key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(HashMap.hash(key), key, value, true);
+    }
+
+    /**
+     * 新节点追加在链表末尾，通过前驱的next（或者桶本身）发布；
+     * 节点的字段在构造函数中写入，发布语义保证读线程看到的是初始化完成的节点。
+     */
+    final V putVal(int hash, K key, V value, boolean onlyIfAbsent) {
+        Node<K,V>[] tab = table;
+        int i = (tab.length - 1) & hash;
+        Node<K,V> e = tab[i], last = null;
+        K k;
+        for (; e != null; last = e, e = e.next) {
+            if (e.hash == hash &&
+                ((k = e.key) == key || (key != null && key.equals(k)))) {
+                V oldValue = e.value;
+                if (!onlyIfAbsent || oldValue == null)
+                    e.lazySetValue(value);
+                return oldValue;
+            }
+        }
+        Node<K,V> p = new Node<>(hash, key, value, null);
+        if (last == null)
+            setTabAt(tab, i, p);
+        else
+            last.lazySetNext(p);
+        int s = size + 1;
+        U.putOrderedInt(this, SIZE, s);
+        if (s > threshold)
+            resize();
+        return null;
+    }
+
+    /**
+     * 删除键为key的映射。只能由写线程调用。
+     *
+     * @return 被删除的value，不存在时返回null
+     */
+    public V remove(Object key) {
+        Node<K,V> e;
+        return (e = removeNode(HashMap.hash(key), key, null, false)) == null ?
+            null : e.value;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return removeNode(HashMap.hash(key), key, value, true) != null;
+    }
+
+    /**
+     * 把前驱节点（或者桶）指向被删除节点的后继。被删除节点自身的next保持不变，
+     * 正停在它上面的读线程仍然可以继续向后遍历。
+     */
+    final Node<K,V> removeNode(int hash, Object key, Object value,
+                               boolean matchValue) {
+        Node<K,V>[] tab = table;
+        int i = (tab.length - 1) & hash;
+        Node<K,V> e = tab[i], pred = null;
+        K k; V v;
+        for (; e != null; pred = e, e = e.next) {
+            if (e.hash == hash &&
+                ((k = e.key) == key || (key != null && key.equals(k)))) {
+                if (matchValue && (v = e.value) != value &&
+                    (value == null || !value.equals(v)))
+                    return null;
+                if (pred == null)
+                    setTabAt(tab, i, e.next);
+                else
+                    pred.lazySetNext(e.next);
+                U.putOrderedInt(this, SIZE, size - 1);
+                return e;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Node<K,V> e; V v;
+        if ((e = getNode(HashMap.hash(key), key)) != null &&
+            ((v = e.value) == oldValue || (v != null && v.equals(oldValue)))) {
+            e.lazySetValue(newValue);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        Node<K,V> e;
+        if ((e = getNode(HashMap.hash(key), key)) != null) {
+            V oldValue = e.value;
+            e.lazySetValue(value);
+            return oldValue;
+        }
+        return null;
+    }
+
+    /**
+     * 删除所有映射：发布一张同样大小的空表，正在读取旧表的线程不受影响。只能由写线程调用。
+     */
+    public void clear() {
+        if (size > 0) {
+            U.putOrderedInt(this, SIZE, 0);
+            initTable(table.length);
+        }
+    }
+
+    /**
+     * 把容量翻倍。新表在发布之前对读线程不可见，所以用普通写入构造；
+     * 旧表的节点不能修改，每个桶末尾迁往同一个新桶的那一段（lastRun）可以直接共享，
+     * 其余的节点复制一份。发布新表的 volatile 写使之前的所有写入对读线程可见。
+     */
+    final void resize() {
+        Node<K,V>[] oldTab = table;
+        int oldCap = oldTab.length;
+        if (oldCap >= MAXIMUM_CAPACITY) {
+            threshold = Integer.MAX_VALUE;
+            return;
+        }
+        int newCap = oldCap << 1;
+        @SuppressWarnings("unchecked")
+        Node<K,V>[] newTab = (Node<K,V>[])new Node<?,?>[newCap];
+        for (int j = 0; j < oldCap; ++j) {
+            Node<K,V> e = oldTab[j];
+            if (e == null)
+                continue;
+            // 找到最后一段落在同一个新桶中的节点，它们的next不需要改变
+            Node<K,V> lastRun = e;
+            int runBit = e.hash & oldCap;
+            for (Node<K,V> p = e.next; p != null; p = p.next) {
+                int b = p.hash & oldCap;
+                if (b != runBit) {
+                    runBit = b;
+                    lastRun = p;
+                }
+            }
+            Node<K,V> lo = null, hi = null;
+            if (runBit == 0)
+                lo = lastRun;
+            else
+                hi = lastRun;
+            // lastRun之前的节点复制到对应链表的头部，这会改变它们在链表中的相对顺序
+            for (Node<K,V> p = e; p != lastRun; p = p.next) {
+                if ((p.hash & oldCap) == 0)
+                    lo = new Node<>(p.hash, p.key, p.value, lo);
+                else
+                    hi = new Node<>(p.hash, p.key, p.value, hi);
+            }
+            newTab[j] = lo;
+            newTab[j + oldCap] = hi;
+        }
+        threshold = (newCap < MAXIMUM_CAPACITY) ?
+            (int)(newCap * loadFactor) : Integer.MAX_VALUE;
+        table = newTab;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        Node<K,V>[] tab = table;
+        for (int i = 0; i < tab.length; ++i) {
+            for (Node<K,V> e = tabAt(tab, i); e != null; e = e.next)
+                action.accept(e.key, e.value);
+        }
+    }
+
+    /**
+     * 返回这个map的浅拷贝，键和值本身不会被复制
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object clone() {
+        SingleWriterHashMap<K,V> result;
+        try {
+            result = (SingleWriterHashMap<K,V>)super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+        result.entrySet = null;
+        result.keySet = null;
+        result.values = null;
+        result.size = 0;
+        result.initTable(table.length);
+        for (Map.Entry<K,V> e : entrySet())
+            result.put(e.getKey(), e.getValue());
+        return result;
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { SingleWriterHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            Node<K,V> candidate = getNode(HashMap.hash(key), key);
+            return candidate != null && Objects.equals(candidate.value, e.getValue());
+        }
+        public final boolean remove(Object o) {
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+                Object key = e.getKey();
+                Object value = e.getValue();
+                return removeNode(HashMap.hash(key), key, value, true) != null;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 弱一致的迭代器，遍历创建时发布的那张表，不检查并发修改
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        final Node<K,V>[] tab = table;  // 遍历的表，扩容后仍然是旧表
+        Node<K,V> next;                 // 下一个要返回的节点
+        Node<K,V> current;              // 上一次返回的节点
+        int index;                      // 下一个要访问的桶
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            Node<K,V>[] t = tab;
+            while (next == null && index < t.length)
+                next = tabAt(t, index++);
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        public final Map.Entry<K,V> next() {
+            Node<K,V> e = next;
+            if (e == null)
+                throw new NoSuchElementException();
+            current = e;
+            next = e.next;
+            advance();
+            return new Entry(e.key, e.value);
+        }
+
+        /**
+         * 只能由写线程调用
+         */
+        public final void remove() {
+            Node<K,V> p = current;
+            if (p == null)
+                throw new IllegalStateException();
+            current = null;
+            removeNode(p.hash, p.key, null, false);
+        }
+    }
+
+    /**
+     * 迭代器返回的Entry。扩容后节点可能已经被复制，所以setValue通过put写回map，只能由写线程调用。
+     */
+    final class Entry extends AbstractMap.SimpleEntry<K,V> {
+        private static final long serialVersionUID = 4893025915640468731L;
+
+        Entry(K key, V value) {
+            super(key, value);
+        }
+
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    /* ---------------- Serialization -------------- */
+
+    /**
+     * 保存map的状态：容量、映射的数量，然后是每一个键值对。只能由写线程调用，或者在没有写线程时调用。
+     *
+     * @serialData 容量（int），映射的数量（int），然后是每个映射的键（Object）和值（Object），
+     *             没有固定的顺序
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+        throws IOException {
+        Node<K,V>[] tab = table;
+        s.defaultWriteObject();
+        s.writeInt(tab.length);
+        s.writeInt(size);
+        for (int i = 0; i < tab.length; ++i) {
+            for (Node<K,V> e = tab[i]; e != null; e = e.next) {
+                s.writeObject(e.key);
+                s.writeObject(e.value);
+            }
+        }
+    }
+
+    /**
+     * 从流中重建map
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s)
+        throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new InvalidObjectException("Illegal load factor: " +
+                                             loadFactor);
+        s.readInt();                // 忽略容量，按映射数量重新计算
+        int mappings = s.readInt();
+        if (mappings < 0)
+            throw new InvalidObjectException("Illegal mappings count: " +
+                                             mappings);
+        float fc = (float)mappings / loadFactor + 1.0f;
+        int cap = (fc < DEFAULT_INITIAL_CAPACITY) ? DEFAULT_INITIAL_CAPACITY :
+            (fc >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY :
+            HashMap.tableSizeFor((int)fc);
+        initTable(cap);
+        for (int i = 0; i < mappings; i++) {
+            K key = (K) s.readObject();
+            V value = (V) s.readObject();
+            putVal(HashMap.hash(key), key, value, false);
+        }
+    }
+
+    /* ---------------- Unsafe mechanics -------------- */
+
+    private static final Unsafe U = Unsafe.getUnsafe();
+    private static final long SIZE;
+    private static final long VALUE;
+    private static final long NEXT;
+    private static final long ABASE;
+    private static final int ASHIFT;
+
+    static {
+        try {
+            SIZE = U.objectFieldOffset
+                (SingleWriterHashMap.class.getDeclaredField("size"));
+            VALUE = U.objectFieldOffset
+                (Node.class.getDeclaredField("value"));
+            NEXT = U.objectFieldOffset
+                (Node.class.getDeclaredField("next"));
+            ABASE = U.arrayBaseOffset(Node[].class);
+            int scale = U.arrayIndexScale(Node[].class);
+            if ((scale & (scale - 1)) != 0)
+                throw new Error("array index scale not a power of two");
+            ASHIFT = 31 - Integer.numberOfLeadingZeros(scale);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
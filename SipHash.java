@@ -0,0 +1,111 @@
+package java.util;
+
+/**
+ * SipHash-2-4，一个以128位密钥为参数的伪随机函数，用于防御哈希洪水攻击。
+ *
+ * 不知道密钥的攻击者无法构造出hash值相同的输入，所以在密钥随机且保密的前提下，
+ * 哈希表的最坏情况退化为概率上可以忽略的事件。它比 String.hashCode 慢，
+ * 只在 {@link HashMap#setHashFloodingDefense(boolean)} 检测到攻击之后使用。
+ *
+ * 参考 Jean-Philippe Aumasson 和 Daniel J. Bernstein 的
+ * "SipHash: a fast short-input PRF"。字节数组按小端序读取，与参考实现的输出相同；
+ * 字符串按UTF-16代码单元的小端序字节计算，即等同于对 {@code s.getBytes(UTF_16LE)} 计算。
+ *
+ * @since 1.8
+ */
+final class SipHash {
+
+    private SipHash() { }
+
+    /**
+     * 计算 data[off, off + len) 的64位SipHash-2-4值
+     *
+     * @param k0 密钥的低64位
+     * @param k1 密钥的高64位
+     */
+    static long hash(long k0, long k1, byte[] data, int off, int len) {
+        long v0 = 0x736f6d6570736575L ^ k0;
+        long v1 = 0x646f72616e646f6dL ^ k1;
+        long v2 = 0x6c7967656e657261L ^ k0;
+        long v3 = 0x7465646279746573L ^ k1;
+        int end = off + (len & ~7);
+        for (int i = off; i < end; i += 8) {
+            long m = (data[i] & 0xffL)
+                | (data[i + 1] & 0xffL) << 8
+                | (data[i + 2] & 0xffL) << 16
+                | (data[i + 3] & 0xffL) << 24
+                | (data[i + 4] & 0xffL) << 32
+                | (data[i + 5] & 0xffL) << 40
+                | (data[i + 6] & 0xffL) << 48
+                | (data[i + 7] & 0xffL) << 56;
+            v3 ^= m;
+            // 两轮 SipRound
+            for (int r = 0; r < 2; ++r) {
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= m;
+        }
+        long b = (long)len << 56;
+        for (int i = 0, rest = len & 7; i < rest; ++i)
+            b |= (data[end + i] & 0xffL) << (i << 3);
+        return finish(v0, v1, v2, v3, b);
+    }
+
+    /**
+     * 计算字符串的64位SipHash-2-4值，每个字符按小端序占两个字节
+     *
+     * @param k0 密钥的低64位
+     * @param k1 密钥的高64位
+     */
+    static long hash(long k0, long k1, String s) {
+        long v0 = 0x736f6d6570736575L ^ k0;
+        long v1 = 0x646f72616e646f6dL ^ k1;
+        long v2 = 0x6c7967656e657261L ^ k0;
+        long v3 = 0x7465646279746573L ^ k1;
+        int len = s.length();
+        int end = len & ~3;
+        for (int i = 0; i < end; i += 4) {
+            long m = (long)s.charAt(i)
+                | (long)s.charAt(i + 1) << 16
+                | (long)s.charAt(i + 2) << 32
+                | (long)s.charAt(i + 3) << 48;
+            v3 ^= m;
+            for (int r = 0; r < 2; ++r) {
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= m;
+        }
+        long b = (long)(len << 1) << 56;
+        for (int i = 0, rest = len & 3; i < rest; ++i)
+            b |= (long)s.charAt(end + i) << (i << 4);
+        return finish(v0, v1, v2, v3, b);
+    }
+
+    /**
+     * 处理最后一个分组，再做四轮 SipRound 得到结果
+     */
+    private static long finish(long v0, long v1, long v2, long v3, long b) {
+        v3 ^= b;
+        for (int r = 0; r < 2; ++r) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        v0 ^= b;
+        v2 ^= 0xff;
+        for (int r = 0; r < 4; ++r) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+}
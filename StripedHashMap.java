@@ -0,0 +1,563 @@
+package java.util;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import sun.misc.Unsafe;
+
+/**
+ * 分段加锁的线程安全的 Map 实现，用来替换 {@code Collections.synchronizedMap(new HashMap<>())}。
+ *
+ * map 按照key的hash值的高位被分成若干段（segment），每一段都是一个普通的 {@link HashMap}，
+ * 直接复用它的桶、树化和扩容逻辑（getNode、putVal、removeNode、resize 等），
+ * 并且各自带有一把 {@link ReentrantLock}。写操作只锁住key所在的段，
+ * 扩容也只在段内进行，不同段上的读写和扩容互不阻塞。
+ * 使用 ReentrantLock 而不是 synchronized，虚拟线程在等待锁时不会占住它的载体线程。
+ *
+ * 读操作通常不加锁：每一段都有一个 volatile 的版本号，写操作开始时把它变成奇数，结束时变成偶数。
+ * get 先读取版本号，在表上直接查找，然后确认版本号没有变化（seqlock）；
+ * 如果查找期间有写操作，或者key所在的桶是树结构，就退回到加锁查找。
+ *
+ * 与 ConcurrentHashMap 一样，不允许 null 键和 null 值。
+ * 迭代器是弱一致的：每次复制一个段中的映射，不会抛出 {@link ConcurrentModificationException}，
+ * 可能反映也可能不反映迭代器创建之后的修改。size 等聚合操作在有并发修改时只是估计值。
+ * compute 系列方法的函数在持有段锁时调用，函数不应当修改这个 map。
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @see     HashMap
+ * @see     java.util.concurrent.ConcurrentHashMap
+ * @since   1.8
+ */
+public class StripedHashMap<K,V> extends AbstractMap<K,V>
+    implements ConcurrentMap<K,V> {
+
+    /**
+     * 默认的初始容量
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * 默认的并发级别，即段的数量
+     */
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * 段的最大数量
+     */
+    static final int MAX_SEGMENTS = 1 << 16;
+
+    /**
+     * 每个段的最小初始容量
+     */
+    static final int MIN_SEGMENT_CAPACITY = 2;
+
+    private static final Unsafe U = Unsafe.getUnsafe();
+
+    /**
+     * 查找时遇到树结构的桶的标记，树的旋转可能使不加锁的遍历看到不一致的结构
+     */
+    static final HashMap.Node<Object,Object> RETRY =
+        new HashMap.Node<>(0, null, null, null);
+
+    /**
+     * 一个段：带有锁和版本号的 HashMap
+     */
+    static final class Segment<K,V> extends HashMap<K,V> {
+        private static final long serialVersionUID = 2249069246763182397L;
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * 版本号，奇数表示正在写
+         */
+        volatile int seq;
+
+        Segment(int initialCapacity, float loadFactor) {
+            super(initialCapacity, loadFactor);
+        }
+
+        /**
+         * 加锁并开始写。同一线程重入时版本号不变，保证写期间版本号一直是奇数。
+         */
+        final void lockWrite() {
+            lock.lock();
+            if (lock.getHoldCount() == 1) {
+                seq = seq + 1;
+                U.storeFence();     // 对表的修改不能早于版本号变成奇数
+            }
+        }
+
+        /**
+         * 先读取版本号（volatile读），使最近一次写操作对size的修改可见
+         */
+        final int sizeSnapshot() {
+            int s = seq; // 与unlockWrite中对seq的volatile写配对，size必须在它之后读取
+            return size;
+        }
+
+        final void unlockWrite() {
+            if (lock.getHoldCount() == 1)
+                seq = seq + 1;
+            lock.unlock();
+        }
+
+        /**
+         * 不加锁的查找，与 getNode 相同但遇到树结构的桶时返回 RETRY。
+         * 结果只有在调用者确认版本号没有变化之后才有效；与写操作并发时 key.equals
+         * 可能看到不一致的key而抛出异常，调用者要捕获后加锁重试。
+         */
+        @SuppressWarnings("unchecked")
+        final Node<K,V> find(int hash, Object key) {
+            Node<K,V>[] tab; Node<K,V> e; int n; K k;
+            if ((tab = table) != null && (n = tab.length) > 0 &&
+                (e = tab[(n - 1) & hash]) != null) {
+                if (e instanceof TreeNode)
+                    return (Node<K,V>)(Node<?,?>)RETRY;
+                do {
+                    if (e.hash == hash &&
+                        ((k = e.key) == key || key.equals(k)))
+                        return e;
+                } while ((e = e.next) != null);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 所有的段，长度是2的幂
+     */
+    final Segment<K,V>[] segments;
+
+    /**
+     * 用hash值的高几位选择段：segments[((h * 0x9E3779B9) >>> segmentShift) & segmentMask]
+     */
+    final int segmentShift;
+    final int segmentMask;
+
+    /**
+     * 缓存的 entrySet()
+     */
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * 用指定的初始容量、负载因子和并发级别构造一个空的map
+     *
+     * @param  initialCapacity  所有段的初始容量之和
+     * @param  loadFactor       每个段的负载因子
+     * @param  concurrencyLevel 预计同时修改map的线程数，段的数量是不小于它的2的幂
+     * @throws IllegalArgumentException 如果初始容量为负数，或者负载因子、并发级别不是正数
+     */
+    @SuppressWarnings("unchecked")
+    public StripedHashMap(int initialCapacity, float loadFactor,
+                          int concurrencyLevel) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (loadFactor <= 0 || Float.isNaN(loadFactor))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        if (concurrencyLevel <= 0)
+            throw new IllegalArgumentException("Illegal concurrency level: " +
+                                               concurrencyLevel);
+        int n = HashMap.tableSizeFor(Math.min(concurrencyLevel, MAX_SEGMENTS));
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(n);
+        this.segmentMask = n - 1;
+        int cap = Math.max(MIN_SEGMENT_CAPACITY, (initialCapacity + n - 1) / n);
+        Segment<K,V>[] ss = (Segment<K,V>[])new Segment<?,?>[n];
+        for (int i = 0; i < n; ++i)
+            ss[i] = new Segment<>(cap, loadFactor);
+        this.segments = ss;
+    }
+
+    /**
+     * 用指定的初始容量、默认的负载因子0.75和默认的并发级别16构造一个空的map
+     *
+     * @param  initialCapacity  所有段的初始容量之和
+     * @throws IllegalArgumentException 如果初始容量为负数
+     */
+    public StripedHashMap(int initialCapacity) {
+        this(initialCapacity, HashMap.DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * 用默认的初始容量16、负载因子0.75和并发级别16构造一个空的map
+     */
+    public StripedHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, HashMap.DEFAULT_LOAD_FACTOR,
+             DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * 构造一个与指定的map具有同样映射关系的map
+     *
+     * @throws NullPointerException 如果m为null，或者包含null键或null值
+     */
+    public StripedHashMap(Map<? extends K, ? extends V> m) {
+        this(Math.max((int)(m.size() / HashMap.DEFAULT_LOAD_FACTOR) + 1,
+                      DEFAULT_INITIAL_CAPACITY),
+             HashMap.DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL);
+        putAll(m);
+    }
+
+    /**
+     * 计算key在段内使用的hash值，与 HashMap.hash 相同。null键抛出NullPointerException。
+     */
+    static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 返回hash值所在的段。段内的桶使用hash的低位，这里先乘以黄金分割常数再取高位，
+     * 使段的选择与桶的选择互不相关。
+     */
+    final Segment<K,V> segmentFor(int h) {
+        return segments[((h * 0x9E3779B9) >>> segmentShift) & segmentMask];
+    }
+
+    /* ---------------- Reads -------------- */
+
+    /**
+     * 返回键映射的值，不存在时返回null
+     *
+     * @throws NullPointerException 如果key为null
+     */
+    public V get(Object key) {
+        int h = hash(key);
+        Segment<K,V> s = segmentFor(h);
+        int stamp = s.seq;
+        if ((stamp & 1) == 0) {
+            try {
+                HashMap.Node<K,V> e = s.find(h, key);
+                if (e != RETRY) {
+                    V v = (e == null) ? null : e.value;
+                    U.loadFence();      // 对表的读取不能晚于版本号的确认
+                    if (s.seq == stamp)
+                        return v;
+                }
+            } catch (RuntimeException | StackOverflowError ex) {
+                // 不加锁时可能读到不一致的结点，key.equals 因此抛出的异常不能交给调用者，
+                // 加锁之后重新查找，如果异常确实来自key本身，会在那里再次抛出
+            }
+        }
+        s.lock.lock();
+        try {
+            HashMap.Node<K,V> e = s.getNode(h, key);
+            return (e == null) ? null : e.value;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        V v;
+        return ((v = get(key)) == null) ? defaultValue : v;
+    }
+
+    /**
+     * 如果map中存在键为key的映射则返回true
+     *
+     * @throws NullPointerException 如果key为null
+     */
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * 如果map中有一个或多个键映射到value则返回true。需要依次锁住每一个段。
+     *
+     * @throws NullPointerException 如果value为null
+     */
+    public boolean containsValue(Object value) {
+        if (value == null)
+            throw new NullPointerException();
+        for (Segment<K,V> s : segments) {
+            s.lock.lock();
+            try {
+                if (s.containsValue(value))
+                    return true;
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 返回映射的数量。有并发修改时只是一个估计值。
+     */
+    public int size() {
+        long n = 0L;
+        for (Segment<K,V> s : segments)
+            n += s.sizeSnapshot();
+        return (n > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int)n;
+    }
+
+    public boolean isEmpty() {
+        for (Segment<K,V> s : segments) {
+            if (s.sizeSnapshot() != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /* ---------------- Writes -------------- */
+
+    /**
+     * 在map中添加key-value键值对，如果key已存在，则替换value
+     *
+     * @return 之前的value，不存在时返回null
+     * @throws NullPointerException 如果key或者value为null
+     */
+    public V put(K key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        int h = hash(key);
+        Segment<K,V> s = segmentFor(h);
+        s.lockWrite();
+        try {
+            return s.putVal(h, key, value, false, true);
+        } finally {
+            s.unlockWrite();
+        }
+    }
+
+    public V putIfAbsent(K key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        int h = hash(key);
+        Segment<K,V> s = segmentFor(h);
+        s.lockWrite();
+        try {
+            return s.putVal(h, key, value, true, true);
+        } finally {
+            s.unlockWrite();
+        }
+    }
+
+    /**
+     * 删除键为key的映射
+     *
+     * @return 被删除的value，不存在时返回null
+     * @throws NullPointerException 如果key为null
+     */
+    public V remove(Object key) {
+        int h = hash(key);
+        Segment<K,V> s = segmentFor(h);
+        s.lockWrite();
+        try {
+            HashMap.Node<K,V> e = s.removeNode(h, key, null, false, true);
+            return (e == null) ? null : e.value;
+        } finally {
+            s.unlockWrite();
+        }
+    }
+
+    public boolean remove(Object key, Object value) {
+        int h = hash(key);
+        if (value == null)
+            return false;
+        Segment<K,V> s = segmentFor(h);
+        s.lockWrite();
+        try {
+            return s.removeNode(h, key, value, true, true) != null;
+        } finally {
+            s.unlockWrite();
+        }
+    }
+
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (oldValue == null || newValue == null)
+            throw new NullPointerException();
+        Segment<K,V> s = segmentFor(hash(key));
+        s.lockWrite();
+        try {
+            return s.replace(key, oldValue, newValue);
+        } finally {
+            s.unlockWrite();
+        }
+    }
+
+    public V replace(K key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        Segment<K,V> s = segmentFor(hash(key));
+        s.lockWrite();
+        try {
+            return s.replace(key, value);
+        } finally {
+            s.unlockWrite();
+        }
+    }
+
+    @Override
+    public V computeIfAbsent(K key,
+                             Function<? super K, ? extends V> mappingFunction) {
+        Segment<K,V> s = segmentFor(hash(key));
+        s.lockWrite();
+        try {
+            return s.computeIfAbsent(key, mappingFunction);
+        } finally {
+            s.unlockWrite();
+        }
+    }
+
+    @Override
+    public V computeIfPresent(K key,
+                              BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Segment<K,V> s = segmentFor(hash(key));
+        s.lockWrite();
+        try {
+            return s.computeIfPresent(key, remappingFunction);
+        } finally {
+            s.unlockWrite();
+        }
+    }
+
+    @Override
+    public V compute(K key,
+                     BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Segment<K,V> s = segmentFor(hash(key));
+        s.lockWrite();
+        try {
+            return s.compute(key, remappingFunction);
+        } finally {
+            s.unlockWrite();
+        }
+    }
+
+    @Override
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Segment<K,V> s = segmentFor(hash(key));
+        s.lockWrite();
+        try {
+            return s.merge(key, value, remappingFunction);
+        } finally {
+            s.unlockWrite();
+        }
+    }
+
+    /**
+     * 删除所有映射。依次清空每一个段，所以并发插入的映射可能被保留。
+     */
+    public void clear() {
+        for (Segment<K,V> s : segments) {
+            s.lockWrite();
+            try {
+                s.clear();
+            } finally {
+                s.unlockWrite();
+            }
+        }
+    }
+
+    /* ---------------- Views -------------- */
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return StripedHashMap.this.size(); }
+        public final boolean isEmpty()          { return StripedHashMap.this.isEmpty(); }
+        public final void clear()               { StripedHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            Object k, v, r; Map.Entry<?,?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?,?>)o).getKey()) != null &&
+                    (r = get(k)) != null &&
+                    (v = e.getValue()) != null &&
+                    (v == r || v.equals(r)));
+        }
+        public final boolean remove(Object o) {
+            Object k, v; Map.Entry<?,?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?,?>)o).getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    StripedHashMap.this.remove(k, v));
+        }
+    }
+
+    /**
+     * 弱一致的迭代器：每次在段锁的保护下复制一个段中所有的键和值，然后在锁外返回它们。
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        int segmentIndex;                   // 下一个要复制的段
+        Object[] pairs = new Object[16];    // 交错存放的key和value
+        int count;                          // pairs中已复制的元素数
+        int cursor;                         // pairs中下一个要返回的key的下标
+        K lastKey;                          // 上一次返回的key，null表示没有
+
+        public boolean hasNext() {
+            Segment<K,V>[] ss = segments;
+            while (cursor == count && segmentIndex < ss.length) {
+                Segment<K,V> s = ss[segmentIndex++];
+                cursor = count = 0;
+                s.lock.lock();
+                try {
+                    HashMap.Node<K,V>[] tab;
+                    int need = s.size << 1;
+                    if (need > pairs.length)
+                        pairs = new Object[need];
+                    if (need > 0 && (tab = s.table) != null) {
+                        for (int i = 0; i < tab.length; ++i) {
+                            for (HashMap.Node<K,V> e = tab[i]; e != null; e = e.next) {
+                                pairs[count++] = e.key;
+                                pairs[count++] = e.value;
+                            }
+                        }
+                    }
+                } finally {
+                    s.lock.unlock();
+                }
+            }
+            return cursor < count;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K,V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            K k = (K)pairs[cursor];
+            V v = (V)pairs[cursor + 1];
+            cursor += 2;
+            lastKey = k;
+            return new Entry(k, v);
+        }
+
+        public void remove() {
+            K k = lastKey;
+            if (k == null)
+                throw new IllegalStateException();
+            lastKey = null;
+            StripedHashMap.this.remove(k);
+        }
+    }
+
+    /**
+     * 迭代器返回的Entry，setValue时写回map
+     */
+    final class Entry extends AbstractMap.SimpleEntry<K,V> {
+        private static final long serialVersionUID = -8079545237291727281L;
+
+        Entry(K key, V value) {
+            super(key, value);
+        }
+
+        public V setValue(V value) {
+            if (value == null)
+                throw new NullPointerException();
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
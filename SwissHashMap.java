@@ -0,0 +1,917 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * 基于 SwissTable 控制字节的开放寻址 Map 接口实现。与 HashMap 一样允许 null 键和 null 值。
+ *
+ * 每个槽位对应一个1字节的控制字节，单独存放在控制数组中：高位为0时表示槽位已使用，
+ * 低7位是 key 的hash标签；0x80 表示空槽位，0xFE 表示已删除。槽位按8个一组，
+ * 一组的8个控制字节正好放在一个 long 中，查找时用 SWAR（SIMD within a register）的位运算
+ * 一次比较一整组标签，只有标签匹配的槽位才会去读取 key 并调用 equals。
+ * 相比之下，HashMap.getNode 需要访问链表上的每一个 Node 并比较它的完整hash值。
+ * 对于数百万个映射的大表，一次未命中的查找通常只访问一个控制字的缓存行。
+ *
+ * 组间使用三角数序列探测（第 i 次探测前进 i 组），在组数为2的幂时可以保证访问到所有组。
+ * 一次查找在遇到含有空槽位的组时结束。删除时如果所在组还有空槽位则直接置为空，否则置为已删除，
+ * 已删除的槽位在下一次扩容或原地重建时清除。
+ *
+ * 槽位里不缓存hash值，扩容时会重新调用 key 的 hashCode 方法。
+ * 默认负载因子是 0.875（7/8），负载因子必须小于1。
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access this map concurrently, and at least one of
+ * the threads modifies the map structurally, it <i>must</i> be
+ * synchronized externally.
+ *
+ * <p>The iterators returned by all of this class's "collection view methods"
+ * are <i>fail-fast</i>: if the map is structurally modified at any time after
+ * the iterator is created, in any way except through the iterator's own
+ * <tt>remove</tt> method, the iterator will throw a
+ * {@link ConcurrentModificationException}.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ *
+ * @see     HashMap
+ * @see     RobinHoodHashMap
+ * @since   1.8
+ */
+public class SwissHashMap<K,V> extends AbstractMap<K,V>
+    implements Map<K,V>, Cloneable, Serializable {
+
+    private static final long serialVersionUID = 5216360841298430817L;
+
+    /*
+     * Implementation notes.
+     *
+     * The control word ctrl[g] holds the control bytes of slots
+     * 8*g .. 8*g+7, slot 8*g+b in bits 8*b .. 8*b+7. Keys and values
+     * are interleaved in "table" as in RobinHoodHashMap.
+     *
+     * The hash of a key is HashMap.hash(key) passed through the
+     * murmur3 finalizer. HashMap.hash only folds the high half into
+     * the low half, so for keys such as small Integers the low seven
+     * bits used for the tag would be fully determined by the bits used
+     * for the group index, and every key in a group would carry a
+     * distinct-looking but useless tag. The finalizer decorrelates
+     * them. H2 (the tag) is the low 7 bits, H1 (the group) the rest.
+     *
+     * Group matching uses the usual SWAR idioms. For a tag t,
+     * x = w ^ (t * 0x01..01) has a zero byte exactly where the tag
+     * matches, and (x - 0x01..01) & ~x & 0x80..80 flags those bytes
+     * (possibly with false positives above a true match, which are
+     * filtered by re-checking the byte). Empty bytes (0x80) are the
+     * only ones with bit 7 set and bit 1 clear, found by
+     * w & ~(w << 6) & 0x80..80; empty-or-deleted bytes are those with
+     * bit 7 set and bit 0 clear, found by w & ~(w << 7) & 0x80..80.
+     * Full bytes are those with bit 7 clear.
+     *
+     * Groups are aligned and probed whole, so a slot may be reset to
+     * EMPTY on removal whenever its own group already holds an EMPTY
+     * slot: any probe that reached this group stopped here anyway.
+     */
+
+    /**
+     * 默认的初始容量-必须为2的指数值
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * 最大容量。键和值交错存放在同一个数组中。
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 29;
+
+    /**
+     * 构造器未指定时使用的默认负载因子值
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.875f;
+
+    /**
+     * 一组的槽位数，即一个控制字中控制字节的个数
+     */
+    static final int GROUP_WIDTH = 8;
+
+    static final int EMPTY   = 0x80;
+    static final int DELETED = 0xFE;
+
+    static final long LSBS = 0x0101010101010101L;
+    static final long MSBS = 0x8080808080808080L;
+
+    /**
+     * 控制字数组，每个long存放一组8个槽位的控制字节。长度总是2的幂。
+     */
+    transient long[] ctrl;
+
+    /**
+     * 交错存放的键和值，长度为槽位数的两倍
+     */
+    transient Object[] table;
+
+    transient Set<Map.Entry<K,V>> entrySet;
+
+    /**
+     * map中的key-value键值对数量
+     */
+    transient int size;
+
+    /**
+     * 标记为已删除的槽位数量
+     */
+    transient int deleted;
+
+    /**
+     * map结构被修改的次数，用于迭代器的 fail-fast
+     */
+    transient int modCount;
+
+    /**
+     * 扩容的阈值 (capacity * load factor)，与已使用和已删除的槽位总数比较。
+     * 在表还没有分配时保存初始容量。
+     *
+     * @serial
+     */
+    int threshold;
+
+    /**
+     * 负载因子
+     *
+     * @serial
+     */
+    final float loadFactor;
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * 用指定的容量值和指定的负载因子值，构造一个空的SwissHashMap
+     *
+     * @param  initialCapacity 初始化容量值
+     * @param  loadFactor      负载因子值
+     * @throws IllegalArgumentException 如果初始化容量值为负数，或者负载因子不在 (0, 1) 之间
+     */
+    public SwissHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        this.loadFactor = loadFactor;
+        this.threshold = HashMap.tableSizeFor(initialCapacity);
+    }
+
+    /**
+     * 用指定的容量值和默认的负载因子0.875，构造一个空的SwissHashMap
+     *
+     * @param  initialCapacity 初始化容量值
+     * @throws IllegalArgumentException 如果初始化容量值为负数
+     */
+    public SwissHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 用默认的容量16和默认的负载因子0.875，构造一个空的SwissHashMap
+     */
+    public SwissHashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+    }
+
+    /**
+     * 构造一个与指定的Map中具有同样映射关系的一个新的SwissHashMap。
+     *
+     * @param   m 将要被新的Map所承载的映射关系集
+     * @throws  NullPointerException 如果指定的map为空
+     */
+    public SwissHashMap(Map<? extends K, ? extends V> m) {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+        putMapEntries(m);
+    }
+
+    /* ---------------- Static utilities -------------- */
+
+    /**
+     * 在 HashMap.hash 的基础上再做一次 murmur3 的 fmix32 混合，
+     * 使低7位的标签与用于定位组的高位互不相关。
+     */
+    static int hash(Object key) {
+        int h = HashMap.hash(key);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 返回控制字中控制字节等于标签t的所有字节的最高位（可能有误报，需要再次校验）
+     */
+    static long matchTag(long w, int t) {
+        long x = w ^ (LSBS * t);
+        return (x - LSBS) & ~x & MSBS;
+    }
+
+    /**
+     * 返回控制字中空槽位字节的最高位
+     */
+    static long matchEmpty(long w) {
+        return w & ~(w << 6) & MSBS;
+    }
+
+    /**
+     * 返回控制字中空槽位或已删除槽位字节的最高位
+     */
+    static long matchEmptyOrDeleted(long w) {
+        return w & ~(w << 7) & MSBS;
+    }
+
+    /**
+     * 返回控制字中已使用槽位字节的最高位
+     */
+    static long matchFull(long w) {
+        return ~w & MSBS;
+    }
+
+    /**
+     * 返回槽位i的控制字节
+     */
+    static int ctrlAt(long[] cs, int i) {
+        return (int)(cs[i >>> 3] >>> ((i & 7) << 3)) & 0xFF;
+    }
+
+    /**
+     * 设置槽位i的控制字节
+     */
+    static void setCtrl(long[] cs, int i, int c) {
+        int g = i >>> 3, shift = (i & 7) << 3;
+        cs[g] = (cs[g] & ~(0xFFL << shift)) | ((long)c << shift);
+    }
+
+    /* ---------------- Operations -------------- */
+
+    /**
+     * putAll和拷贝构造器的实现，按需要预先分配容量
+     */
+    final void putMapEntries(Map<? extends K, ? extends V> m) {
+        int s = m.size();
+        if (s > 0) {
+            if (ctrl == null) { // pre-size
+                float ft = ((float)s / loadFactor) + 1.0F;
+                int t = ((ft < (float)MAXIMUM_CAPACITY) ?
+                         (int)ft : MAXIMUM_CAPACITY);
+                if (t > threshold)
+                    threshold = HashMap.tableSizeFor(t);
+            }
+            else {
+                while (s > threshold && capacity() < MAXIMUM_CAPACITY)
+                    resize(capacity() << 1);
+            }
+            for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+                K key = e.getKey();
+                putVal(hash(key), key, e.getValue(), false);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i;
+        return (i = findSlot(hash(key), key)) < 0 ? null :
+            (V)table[(i << 1) + 1];
+    }
+
+    public boolean containsKey(Object key) {
+        return findSlot(hash(key), key) >= 0;
+    }
+
+    /**
+     * 查找key所在的槽位，对应HashMap.getNode。
+     * 如果key不存在，返回 -(s + 1)，其中s是探测序列上第一个空槽位或已删除槽位，
+     * 即插入这个key时应该使用的槽位；表还没有分配时返回 -1。
+     *
+     * @param hash hash(key)
+     * @param key the key
+     * @return 槽位下标，或者 -(插入位置 + 1)
+     */
+    final int findSlot(int hash, Object key) {
+        long[] cs; Object[] tab;
+        if ((cs = ctrl) == null)
+            return -1;
+        tab = table;
+        int gmask = cs.length - 1, tag = hash & 0x7F, ins = -1;
+        for (int g = (hash >>> 7) & gmask, step = 0; ;
+             g = (g + ++step) & gmask) {
+            long w = cs[g];
+            for (long m = matchTag(w, tag); m != 0; m &= m - 1) {
+                int b = Long.numberOfTrailingZeros(m) >>> 3;
+                int i = (g << 3) | b;
+                Object k;
+                if (((int)(w >>> (b << 3)) & 0xFF) == tag &&
+                    ((k = tab[i << 1]) == key || (key != null && key.equals(k))))
+                    return i;
+            }
+            if (ins < 0) {
+                long e;
+                if ((e = matchEmptyOrDeleted(w)) != 0)
+                    ins = (g << 3) | (Long.numberOfTrailingZeros(e) >>> 3);
+            }
+            if (matchEmpty(w) != 0)   // 组内有空槽位，key一定不在后面的组中
+                return -(ins + 1);
+        }
+    }
+
+    /**
+     * 返回插入一个已知不存在的key时应该使用的槽位
+     */
+    static int findInsertSlot(long[] cs, int hash) {
+        int gmask = cs.length - 1;
+        for (int g = (hash >>> 7) & gmask, step = 0; ;
+             g = (g + ++step) & gmask) {
+            long e;
+            if ((e = matchEmptyOrDeleted(cs[g])) != 0)
+                return (g << 3) | (Long.numberOfTrailingZeros(e) >>> 3);
+        }
+    }
+
+    /**
+     * 在map中添加key-value键值对，如果key已存在，则替换value
+     *
+     * @return 如果map中已存在key则返回此key对应的value,否则返回null
+     */
+    public V put(K key, V value) {
+        return putVal(hash(key), key, value, false);
+    }
+
+    /**
+     * Map.put和相关方法的实现
+     *
+     * @param hash hash(key)
+     * @param onlyIfAbsent 如果为true，不改变已存在的value
+     * @return previous value, or null if none
+     */
+    @SuppressWarnings("unchecked")
+    final V putVal(int hash, K key, V value, boolean onlyIfAbsent) {
+        long[] cs;
+        if ((cs = ctrl) == null)
+            cs = resize(0);
+        int i = findSlot(hash, key);
+        if (i >= 0) { // existing mapping for key
+            int vi = (i << 1) + 1;
+            V oldValue = (V)table[vi];
+            if (!onlyIfAbsent || oldValue == null)
+                table[vi] = value;
+            return oldValue;
+        }
+        i = -(i + 1);
+        if (ctrlAt(cs, i) == DELETED)  // 复用已删除的槽位，不会增加已占用的槽位数
+            --deleted;
+        else if (size + deleted >= threshold) {
+            // 已删除的槽位较多时原地重建即可，否则扩容
+            int cap = capacity();
+            if (deleted < (size >>> 1) && cap < MAXIMUM_CAPACITY)
+                cap <<= 1;
+            else if (size >= cap - 1)
+                throw new IllegalStateException("Map is full");
+            i = findInsertSlot(cs = resize(cap), hash);
+        }
+        setCtrl(cs, i, hash & 0x7F);
+        table[i << 1] = key;
+        table[(i << 1) + 1] = value;
+        ++modCount;
+        ++size;
+        return null;
+    }
+
+    /**
+     * 按指定的容量重建表（newCap为0时初始化）。所有已删除的槽位在重建后被清除，
+     * 元素按重新计算的hash值插入新表。
+     *
+     * @return 新的控制字数组
+     */
+    final long[] resize(int newCap) {
+        long[] oldCs = ctrl;
+        Object[] oldTab = table;
+        if (newCap == 0) {
+            int oldThr = threshold;
+            newCap = (oldThr > 0) ? oldThr : DEFAULT_INITIAL_CAPACITY;
+        }
+        if (newCap < GROUP_WIDTH)
+            newCap = GROUP_WIDTH;
+        float ft = (float)newCap * loadFactor;
+        threshold = Math.min((int)ft, newCap - 1);
+        long[] newCs = new long[newCap >>> 3];
+        Arrays.fill(newCs, MSBS); // all EMPTY
+        Object[] newTab = new Object[newCap << 1];
+        if (oldCs != null) {
+            for (int g = 0; g < oldCs.length; ++g) {
+                for (long m = matchFull(oldCs[g]); m != 0; m &= m - 1) {
+                    int j = (g << 3) | (Long.numberOfTrailingZeros(m) >>> 3);
+                    Object k = oldTab[j << 1];
+                    int h = hash(k);
+                    int i = findInsertSlot(newCs, h);
+                    setCtrl(newCs, i, h & 0x7F);
+                    newTab[i << 1] = k;
+                    newTab[(i << 1) + 1] = oldTab[(j << 1) + 1];
+                }
+            }
+        }
+        deleted = 0;
+        ctrl = newCs;
+        table = newTab;
+        return newCs;
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+        putMapEntries(m);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i;
+        if ((i = findSlot(hash(key), key)) < 0)
+            return null;
+        V oldValue = (V)table[(i << 1) + 1];
+        removeAt(i);
+        return oldValue;
+    }
+
+    /**
+     * 删除槽位i上的元素。如果所在组还有空槽位，槽位直接置为空，否则置为已删除。
+     */
+    final void removeAt(int i) {
+        long[] cs = ctrl;
+        if (matchEmpty(cs[i >>> 3]) != 0)
+            setCtrl(cs, i, EMPTY);
+        else {
+            setCtrl(cs, i, DELETED);
+            ++deleted;
+        }
+        table[i << 1] = null;
+        table[(i << 1) + 1] = null;
+        ++modCount;
+        --size;
+    }
+
+    public void clear() {
+        long[] cs;
+        modCount++;
+        if ((cs = ctrl) != null && (size > 0 || deleted > 0)) {
+            size = 0;
+            deleted = 0;
+            Arrays.fill(cs, MSBS);
+            Arrays.fill(table, null);
+        }
+    }
+
+    public boolean containsValue(Object value) {
+        long[] cs; Object[] tab; Object v;
+        if ((cs = ctrl) != null && size > 0) {
+            tab = table;
+            for (int g = 0; g < cs.length; ++g) {
+                for (long m = matchFull(cs[g]); m != 0; m &= m - 1) {
+                    int i = (g << 3) | (Long.numberOfTrailingZeros(m) >>> 3);
+                    if ((v = tab[(i << 1) + 1]) == value ||
+                        (value != null && value.equals(v)))
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 返回下标不小于i的第一个已使用槽位，没有时返回-1
+     */
+    final int nextFull(int i) {
+        long[] cs = ctrl;
+        int n = (cs == null) ? 0 : cs.length << 3;
+        while (i < n) {
+            int g = i >>> 3;
+            long m = matchFull(cs[g]) & (-1L << ((i & 7) << 3));
+            if (m != 0)
+                return (g << 3) | (Long.numberOfTrailingZeros(m) >>> 3);
+            i = (g + 1) << 3;
+        }
+        return -1;
+    }
+
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        if (ks == null) {
+            ks = new KeySet();
+            keySet = ks;
+        }
+        return ks;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public final int size()                 { return size; }
+        public final void clear()               { SwissHashMap.this.clear(); }
+        public final Iterator<K> iterator()     { return new KeyIterator(); }
+        public final boolean contains(Object o) { return containsKey(o); }
+        public final boolean remove(Object key) {
+            int i;
+            if ((i = findSlot(hash(key), key)) < 0)
+                return false;
+            removeAt(i);
+            return true;
+        }
+        @SuppressWarnings("unchecked")
+        public final void forEach(Consumer<? super K> action) {
+            long[] cs; Object[] tab;
+            if (action == null)
+                throw new NullPointerException();
+            if (size > 0 && (cs = ctrl) != null) {
+                int mc = modCount;
+                tab = table;
+                for (int g = 0; g < cs.length; ++g) {
+                    for (long m = matchFull(cs[g]); m != 0; m &= m - 1) {
+                        int i = (g << 3) | (Long.numberOfTrailingZeros(m) >>> 3);
+                        action.accept((K)tab[i << 1]);
+                    }
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        if (vs == null) {
+            vs = new Values();
+            values = vs;
+        }
+        return vs;
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public final int size()                 { return size; }
+        public final void clear()               { SwissHashMap.this.clear(); }
+        public final Iterator<V> iterator()     { return new ValueIterator(); }
+        public final boolean contains(Object o) { return containsValue(o); }
+        @SuppressWarnings("unchecked")
+        public final void forEach(Consumer<? super V> action) {
+            long[] cs; Object[] tab;
+            if (action == null)
+                throw new NullPointerException();
+            if (size > 0 && (cs = ctrl) != null) {
+                int mc = modCount;
+                tab = table;
+                for (int g = 0; g < cs.length; ++g) {
+                    for (long m = matchFull(cs[g]); m != 0; m &= m - 1) {
+                        int i = (g << 3) | (Long.numberOfTrailingZeros(m) >>> 3);
+                        action.accept((V)tab[(i << 1) + 1]);
+                    }
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    public Set<Map.Entry<K,V>> entrySet() {
+        Set<Map.Entry<K,V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K,V>> {
+        public final int size()                 { return size; }
+        public final void clear()               { SwissHashMap.this.clear(); }
+        public final Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator();
+        }
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            Object key = e.getKey();
+            int i;
+            return (i = findSlot(hash(key), key)) >= 0 &&
+                Objects.equals(table[(i << 1) + 1], e.getValue());
+        }
+        public final boolean remove(Object o) {
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+                Object key = e.getKey();
+                int i;
+                if ((i = findSlot(hash(key), key)) >= 0 &&
+                    Objects.equals(table[(i << 1) + 1], e.getValue())) {
+                    removeAt(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Overrides of JDK8 Map extension methods
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        int i;
+        return (i = findSlot(hash(key), key)) < 0 ? defaultValue :
+            (V)table[(i << 1) + 1];
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(hash(key), key, value, true);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        int i;
+        if ((i = findSlot(hash(key), key)) >= 0 &&
+            Objects.equals(table[(i << 1) + 1], value)) {
+            removeAt(i);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        int i;
+        if ((i = findSlot(hash(key), key)) >= 0 &&
+            Objects.equals(table[(i << 1) + 1], oldValue)) {
+            table[(i << 1) + 1] = newValue;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V replace(K key, V value) {
+        int i;
+        if ((i = findSlot(hash(key), key)) >= 0) {
+            int vi = (i << 1) + 1;
+            V oldValue = (V)table[vi];
+            table[vi] = value;
+            return oldValue;
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        long[] cs; Object[] tab;
+        if (action == null)
+            throw new NullPointerException();
+        if (size > 0 && (cs = ctrl) != null) {
+            int mc = modCount;
+            tab = table;
+            for (int g = 0; g < cs.length; ++g) {
+                for (long m = matchFull(cs[g]); m != 0; m &= m - 1) {
+                    int i = (g << 3) | (Long.numberOfTrailingZeros(m) >>> 3);
+                    action.accept((K)tab[i << 1], (V)tab[(i << 1) + 1]);
+                }
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        long[] cs; Object[] tab;
+        if (function == null)
+            throw new NullPointerException();
+        if (size > 0 && (cs = ctrl) != null) {
+            int mc = modCount;
+            tab = table;
+            for (int g = 0; g < cs.length; ++g) {
+                for (long m = matchFull(cs[g]); m != 0; m &= m - 1) {
+                    int vi = (((g << 3) |
+                               (Long.numberOfTrailingZeros(m) >>> 3)) << 1) + 1;
+                    tab[vi] = function.apply((K)tab[vi - 1], (V)tab[vi]);
+                }
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // Cloning and serialization
+
+    /**
+     * Returns a shallow copy of this <tt>SwissHashMap</tt> instance: the
+     * keys and values themselves are not cloned.
+     *
+     * @return a shallow copy of this map
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object clone() {
+        SwissHashMap<K,V> result;
+        try {
+            result = (SwissHashMap<K,V>)super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        if (ctrl != null) {
+            result.ctrl = ctrl.clone();
+            result.table = table.clone();
+        }
+        result.entrySet = null;
+        result.keySet = null;
+        result.values = null;
+        result.modCount = 0;
+        return result;
+    }
+
+    final int capacity() {
+        return (ctrl != null) ? ctrl.length << 3 :
+            (threshold > 0) ? threshold :
+            DEFAULT_INITIAL_CAPACITY;
+    }
+
+    /**
+     * Save the state of the <tt>SwissHashMap</tt> instance to a stream.
+     *
+     * @serialData The <i>capacity</i> (int), followed by the <i>size</i>
+     *             (int), followed by the key (Object) and value (Object)
+     *             for each key-value mapping, in no particular order.
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+        throws IOException {
+        int buckets = capacity();
+        s.defaultWriteObject();
+        s.writeInt(buckets);
+        s.writeInt(size);
+        long[] cs; Object[] tab;
+        if (size > 0 && (cs = ctrl) != null) {
+            tab = table;
+            for (int g = 0; g < cs.length; ++g) {
+                for (long m = matchFull(cs[g]); m != 0; m &= m - 1) {
+                    int i = (g << 3) | (Long.numberOfTrailingZeros(m) >>> 3);
+                    s.writeObject(tab[i << 1]);
+                    s.writeObject(tab[(i << 1) + 1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reconstitute the {@code SwissHashMap} instance from a stream.
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (!(loadFactor > 0 && loadFactor < 1))
+            throw new InvalidObjectException("Illegal load factor: " +
+                                             loadFactor);
+        ctrl = null;
+        table = null;
+        threshold = 0;
+        size = 0;
+        deleted = 0;
+        s.readInt();                // Read and ignore number of buckets
+        int mappings = s.readInt(); // Read number of mappings (size)
+        if (mappings < 0)
+            throw new InvalidObjectException("Illegal mappings count: " +
+                                             mappings);
+        else if (mappings > 0) {
+            float fc = (float)mappings / loadFactor + 1.0f;
+            threshold = ((fc < DEFAULT_INITIAL_CAPACITY) ?
+                         DEFAULT_INITIAL_CAPACITY :
+                         (fc >= MAXIMUM_CAPACITY) ?
+                         MAXIMUM_CAPACITY :
+                         HashMap.tableSizeFor((int)fc));
+            for (int i = 0; i < mappings; i++) {
+                @SuppressWarnings("unchecked")
+                    K key = (K) s.readObject();
+                @SuppressWarnings("unchecked")
+                    V value = (V) s.readObject();
+                putVal(hash(key), key, value, false);
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------ */
+    // iterators
+
+    /**
+     * 删除元素只修改控制字节，不会移动其它元素，所以迭代器按槽位顺序扫描即可
+     */
+    abstract class SwissIterator {
+        int next;              // 下一个要返回的槽位，-1表示没有
+        int current = -1;      // 上一次返回的槽位
+        int expectedModCount;  // for fast-fail
+
+        SwissIterator() {
+            expectedModCount = modCount;
+            next = (size > 0) ? nextFull(0) : -1;
+        }
+
+        public final boolean hasNext() {
+            return next >= 0;
+        }
+
+        final int nextIndex() {
+            int i = next;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (i < 0)
+                throw new NoSuchElementException();
+            next = nextFull(i + 1);
+            return current = i;
+        }
+
+        public final void remove() {
+            int i = current;
+            if (i < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = -1;
+            removeAt(i);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends SwissIterator
+        implements Iterator<K> {
+        @SuppressWarnings("unchecked")
+        public final K next() { return (K)table[nextIndex() << 1]; }
+    }
+
+    final class ValueIterator extends SwissIterator
+        implements Iterator<V> {
+        @SuppressWarnings("unchecked")
+        public final V next() { return (V)table[(nextIndex() << 1) + 1]; }
+    }
+
+    final class EntryIterator extends SwissIterator
+        implements Iterator<Map.Entry<K,V>> {
+        @SuppressWarnings("unchecked")
+        public final Map.Entry<K,V> next() {
+            int i = nextIndex();
+            return new Entry((K)table[i << 1], (V)table[(i << 1) + 1]);
+        }
+    }
+
+    /**
+     * 迭代器返回的Entry。扩容后元素的槽位会改变，所以Entry只保存key和value，
+     * setValue时通过key重新定位槽位并写回map。
+     */
+    final class Entry implements Map.Entry<K,V> {
+        final K key;
+        V value;
+
+        Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public final K getKey()        { return key; }
+        public final V getValue()      { return value; }
+        public final String toString() { return key + "=" + value; }
+
+        public final int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        public final V setValue(V newValue) {
+            int i;
+            if ((i = findSlot(hash(key), key)) < 0)
+                throw new IllegalStateException("Entry was removed");
+            V oldValue = value;
+            table[(i << 1) + 1] = value = newValue;
+            return oldValue;
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+                if (Objects.equals(key, e.getKey()) &&
+                    Objects.equals(value, e.getValue()))
+                    return true;
+            }
+            return false;
+        }
+    }
+}
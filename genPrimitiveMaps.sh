@@ -0,0 +1,43 @@
+#!/bin/sh
+#
+# 由模板生成原始类型专用的map：
+#
+#   X-X-HashMap.java.template       -> IntIntHashMap.java、LongLongHashMap.java
+#   X-Object-HashMap.java.template  -> IntObjectHashMap.java、LongObjectHashMap.java
+#   Object-X-HashMap.java.template  -> ObjectIntHashMap.java、ObjectLongHashMap.java
+#
+# 生成的文件与模板一起提交，修改时只改模板，然后在这个目录下运行 sh genPrimitiveMaps.sh。
+# 模板的写法与 java.nio 的 X-Buffer.java.template 相同：
+#
+#   $type$      int、long
+#   $Type$      Int、Long
+#   $Fulltype$  Integer、Long
+#   $zero$      0、0L
+#
+#   #if[long] ... #else[long] ... #end[long]   按类型选择的行（不能嵌套）
+#   #warn                                      替换成"不要手工修改"的提示
+#
+
+cd "$(dirname "$0")" || exit 1
+
+# gen <模板> <type> <Type> <Fulltype> <zero> <输出文件>
+gen() {
+    awk -v type="$2" '
+        /^#warn/      { print "// -- This file was mechanically generated: Do not edit! -- //"; next }
+        /^#if\[/      { k = substr($0, 5, index($0, "]") - 5); skip = (k != type); next }
+        /^#else\[/    { skip = !skip; next }
+        /^#end\[/     { skip = 0; next }
+        !skip         { print }
+    ' "$1" | sed -e "s/\\\$type\\\$/$2/g" \
+                 -e "s/\\\$Type\\\$/$3/g" \
+                 -e "s/\\\$Fulltype\\\$/$4/g" \
+                 -e "s/\\\$zero\\\$/$5/g" > "$6.tmp" || exit 1
+    mv "$6.tmp" "$6"
+}
+
+gen X-X-HashMap.java.template      int  Int  Integer 0  IntIntHashMap.java
+gen X-X-HashMap.java.template      long Long Long    0L LongLongHashMap.java
+gen X-Object-HashMap.java.template int  Int  Integer 0  IntObjectHashMap.java
+gen X-Object-HashMap.java.template long Long Long    0L LongObjectHashMap.java
+gen Object-X-HashMap.java.template int  Int  Integer 0  ObjectIntHashMap.java
+gen Object-X-HashMap.java.template long Long Long    0L ObjectLongHashMap.java
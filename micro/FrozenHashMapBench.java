@@ -0,0 +1,116 @@
+package org.openjdk.bench.java.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.FrozenHashMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较 HashMap 和由 {@link HashMap#freeze()} 得到的 FrozenHashMap。
+ *
+ * getHit 和 getMiss 测量查找的耗时；freeze 测量构建最小完美哈希的耗时，
+ * copy 是用 new HashMap(map) 复制同样数据的耗时，作为参照；
+ * footprint 在构建前后各做一次完整的垃圾收集，通过 bytesPerEntry 计数器报告
+ * 每个映射额外占用的堆空间（不含键和值对象本身）。
+ */
+@State(Scope.Benchmark)
+@Fork(value = 3, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class FrozenHashMapBench {
+
+    @Param({"HashMap", "FrozenHashMap"})
+    String impl;
+
+    @Param({"100", "10000", "1000000"})
+    int size;
+
+    HashMap<String, Integer> source;
+    Map<String, Integer> map;
+    String[] hits;
+    String[] misses;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        source = new HashMap<>();
+        hits = new String[size];
+        misses = new String[size];
+        for (int i = 0; i < size; i++) {
+            hits[i] = "key" + i;
+            misses[i] = "absent" + i;
+            source.put(hits[i], i);
+        }
+        map = "HashMap".equals(impl) ? source : source.freeze();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Integer getHit() {
+        return map.get(hits[ThreadLocalRandom.current().nextInt(size)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Integer getMiss() {
+        return map.get(misses[ThreadLocalRandom.current().nextInt(size)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Map<String, Integer> build() {
+        return "HashMap".equals(impl) ? new HashMap<>(source) : source.freeze();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public double bytesPerEntry;
+    }
+
+    static long usedHeapAfterGc() {
+        MemoryMXBean mx = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return mx.getHeapMemoryUsage().getUsed();
+    }
+
+    Map<String, Integer> retained;
+
+    @TearDown(Level.Invocation)
+    public void release() {
+        retained = null;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public void footprint(Footprint fp) {
+        long before = usedHeapAfterGc();
+        retained = "HashMap".equals(impl) ? new HashMap<>(source) : source.freeze();
+        long after = usedHeapAfterGc();
+        fp.bytesPerEntry = (double)(after - before) / size;
+    }
+}
@@ -0,0 +1,120 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较逐个调用 get/containsKey/put 与批量的 {@link HashMap#getAll}、{@link HashMap#containsKeys}、
+ * {@link HashMap#putAll(Object[], Object[])}。
+ *
+ * 每次调用处理一批 BATCH 个随机选取的已有key，结果按每个key计算（OperationsPerInvocation）。
+ * size 远大于CPU缓存时，批量版本让各个key的缓存未命中重叠，差距最明显；size 为1000时用来确认小map上没有退化。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xmx8g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class HashMapBatchGet {
+
+    static final int BATCH = 256;
+
+    /** 预先生成的批数，轮流使用，避免同一批key一直留在缓存中 */
+    static final int BATCHES = 1 << 10;
+
+    @Param({"1000", "1000000", "10000000"})
+    int size;
+
+    HashMap<Integer, Integer> map;
+    Integer[][] batches;
+    Integer[] values;
+    Integer[] out;
+    boolean[] found;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        map = new HashMap<>();
+        Integer[] keys = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = i * 0x9E3779B9;
+            map.put(keys[i], i);
+        }
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        batches = new Integer[BATCHES][BATCH];
+        for (Integer[] b : batches)
+            for (int i = 0; i < BATCH; i++)
+                b[i] = keys[r.nextInt(size)];
+        values = new Integer[BATCH];
+        for (int i = 0; i < BATCH; i++)
+            values[i] = i;
+        out = new Integer[BATCH];
+        found = new boolean[BATCH];
+    }
+
+    Integer[] batch() {
+        return batches[next++ & (BATCHES - 1)];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int loopGet() {
+        int n = 0;
+        for (Integer k : batch())
+            if (map.get(k) != null)
+                ++n;
+        return n;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int getAll() {
+        return map.getAll(batch(), out);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int loopContainsKey() {
+        int n = 0;
+        for (Integer k : batch())
+            if (map.containsKey(k))
+                ++n;
+        return n;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int containsKeys() {
+        return map.containsKeys(batch(), found);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void loopPut() {
+        Integer[] b = batch();
+        for (int i = 0; i < BATCH; i++)
+            map.put(b[i], values[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void putAll() {
+        map.putAll(batch(), values);
+    }
+}
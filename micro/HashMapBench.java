@@ -0,0 +1,214 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HashMap 常用路径的基准测试：get 命中和不命中、put、putIfAbsent、computeIfAbsent、merge、
+ * remove、从空表开始的扩容增长、通过 keySet/values/entrySet 的迭代，以及基于 spliterator 的并行流。
+ *
+ * 参数：
+ * <ul>
+ * <li>size：map中的映射数，从16到10^8。10^8 需要很大的堆，默认的 -Xmx32g 只是上限，
+ *     内存不够的机器请用 {@code -p size=16,1000,100000} 之类的参数排除它；
+ * <li>keyType：Integer、String、ComparableCollision（每16个key的hashCode相同，实现了 Comparable，
+ *     桶会树化并按compareTo排序）、Collision（同样的冲突，但没有实现 Comparable，
+ *     树中只能按 identityHashCode 排序，查找可能要遍历两棵子树）；
+ * <li>loadFactor：0.5、0.75 和 1.0。
+ * </ul>
+ * 修改map的测试都保持map的大小不变：put 覆盖已有的key，remove 删除之后立即放回。
+ * 树化单独在 {@link HashMapTreeify} 中测量。
+ *
+ * 同时报告 ns/op 和 bytes/op（gc.alloc.rate.norm），需要开启 GC profiler：
+ * <pre>
+ *   java -jar benchmarks.jar HashMapBench -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xmx32g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class HashMapBench {
+
+    /**
+     * 查找和修改时使用的key的最大数量。size很大时从所有key中随机抽取这么多个，
+     * 避免为10^8个不命中的key再分配一遍内存。
+     */
+    static final int MAX_PROBES = 1 << 20;
+
+    @Param({"16", "1000", "100000", "10000000", "100000000"})
+    int size;
+
+    @Param({"Integer", "String", "ComparableCollision", "Collision"})
+    String keyType;
+
+    @Param({"0.5", "0.75", "1.0"})
+    float loadFactor;
+
+    HashMap<Object, Integer> map;
+    Object[] keys;          // map中所有的key
+    Object[] hits;          // map中存在的key的样本
+    Object[] misses;        // map中不存在的key
+    int mask;               // hits和misses的长度减一，长度是2的幂
+
+    /**
+     * hashCode每16个相同的key，实现了 Comparable
+     */
+    static final class ComparableKey implements Comparable<ComparableKey> {
+        final int id;
+        ComparableKey(int id)                  { this.id = id; }
+        public int hashCode()                  { return id >>> 4; }
+        public boolean equals(Object o) {
+            return o instanceof ComparableKey && ((ComparableKey)o).id == id;
+        }
+        public int compareTo(ComparableKey o)  { return Integer.compare(id, o.id); }
+    }
+
+    /**
+     * hashCode每16个相同的key，没有实现 Comparable
+     */
+    static final class CollidingKey {
+        final int id;
+        CollidingKey(int id)                   { this.id = id; }
+        public int hashCode()                  { return id >>> 4; }
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey)o).id == id;
+        }
+    }
+
+    Object key(int i) {
+        switch (keyType) {
+        case "Integer":             return i;
+        case "String":              return "key-" + i;
+        case "ComparableCollision": return new ComparableKey(i);
+        default:                    return new CollidingKey(i);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        keys = new Object[size];
+        for (int i = 0; i < size; i++)
+            keys[i] = key(i);
+        map = fill();
+        int probes = Math.min(Integer.highestOneBit(size), MAX_PROBES);
+        mask = probes - 1;
+        hits = new Object[probes];
+        misses = new Object[probes];
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        for (int i = 0; i < probes; i++) {
+            hits[i] = keys[r.nextInt(size)];
+            misses[i] = key(size + i);      // 与已有的key不相等，但可能落在同样的桶中
+        }
+    }
+
+    HashMap<Object, Integer> fill() {
+        HashMap<Object, Integer> m = new HashMap<>(16, loadFactor);
+        for (int i = 0; i < size; i++)
+            m.put(keys[i], i);
+        return m;
+    }
+
+    Object hit() {
+        return hits[ThreadLocalRandom.current().nextInt() & mask];
+    }
+
+    @Benchmark
+    public Integer getHit() {
+        return map.get(hit());
+    }
+
+    @Benchmark
+    public Integer getMiss() {
+        return map.get(misses[ThreadLocalRandom.current().nextInt() & mask]);
+    }
+
+    @Benchmark
+    public Integer put() {
+        return map.put(hit(), 1);
+    }
+
+    @Benchmark
+    public Integer putIfAbsent() {
+        return map.putIfAbsent(hit(), 1);
+    }
+
+    @Benchmark
+    public Integer computeIfAbsent() {
+        return map.computeIfAbsent(hit(), k -> 1);
+    }
+
+    @Benchmark
+    public Integer merge() {
+        return map.merge(hit(), 1, Integer::sum);
+    }
+
+    @Benchmark
+    public Integer remove() {
+        Object k = hit();
+        Integer v = map.remove(k);
+        map.put(k, v);
+        return v;
+    }
+
+    /**
+     * 从默认容量开始插入size个key，经历所有的扩容
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Map<Object, Integer> resize() {
+        return fill();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int iterateKeySet() {
+        int n = 0;
+        for (Object k : map.keySet())
+            n += (k == null) ? 0 : 1;
+        return n;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long iterateValues() {
+        long sum = 0;
+        for (Integer v : map.values())
+            sum += v;
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long iterateEntrySet() {
+        long sum = 0;
+        Iterator<Map.Entry<Object, Integer>> it = map.entrySet().iterator();
+        while (it.hasNext())
+            sum += it.next().getValue();
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long parallelStream() {
+        return map.entrySet().parallelStream().mapToLong(Map.Entry::getValue).sum();
+    }
+}
@@ -0,0 +1,72 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 测量 {@link HashMap#setLazyClear(boolean)} 对重用的临时map的影响。
+ *
+ * map按 capacity 预先分配，每次操作放入 entries 个映射、查找一遍再 clear，
+ * 模拟每个请求重用同一个大容量map的用法。默认的 clear 耗时与容量成正比，延迟清空与容量无关。
+ * bitmap 为true时同时开启占用位图，clear 还要清零 capacity/64 个long。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class HashMapClear {
+
+    @Param({"false", "true"})
+    boolean lazy;
+
+    @Param({"false", "true"})
+    boolean bitmap;
+
+    @Param({"1024", "65536", "1048576"})
+    int capacity;
+
+    @Param({"8"})
+    int entries;
+
+    HashMap<Integer, Integer> map;
+    Integer[] keys;
+    int round;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        map = new HashMap<>(capacity);
+        map.setLazyClear(lazy);
+        map.setOccupancyBitmap(bitmap);
+        keys = new Integer[1 << 16];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = i * 31;
+    }
+
+    @Benchmark
+    public int fillAndClear() {
+        HashMap<Integer, Integer> m = map;
+        int base = (round += entries) & (keys.length - 1);  //每轮换一批key，落在不同的桶中
+        for (int i = 0; i < entries; i++)
+            m.put(keys[(base + i) & (keys.length - 1)], i);
+        int sum = 0;
+        for (int i = 0; i < entries; i++)
+            sum += m.get(keys[(base + i) & (keys.length - 1)]);
+        m.clear();
+        return sum;
+    }
+}
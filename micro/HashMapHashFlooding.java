@@ -0,0 +1,91 @@
+package org.openjdk.bench.java.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 测量 {@link HashMap#setHashFloodingDefense} 在受到攻击和正常情况下的效果。
+ *
+ * colliding 模式的key由 "Aa" 和 "BB" 拼接而成，2的n次方个key的 String.hashCode 完全相同；
+ * random 模式的key是普通的字符串，用来衡量开启防御后正常访问的额外开销。
+ * fill 测量把所有key插入一个新map再全部查找一遍的耗时，fillComputeIfAbsent 与它相同，
+ * 只是用 computeIfAbsent 插入，这条路径同样要能触发带密钥的hash。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class HashMapHashFlooding {
+
+    @Param({"false", "true"})
+    boolean defense;
+
+    @Param({"colliding", "random"})
+    String keys;
+
+    @Param({"14"})
+    int bits;
+
+    String[] data;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<String> ks = new ArrayList<>();
+        if ("colliding".equals(keys)) {
+            ks.add("");
+            for (int r = 0; r < bits; r++) {
+                List<String> next = new ArrayList<>(ks.size() * 2);
+                for (String s : ks) {
+                    next.add(s + "Aa");
+                    next.add(s + "BB");
+                }
+                ks = next;
+            }
+        } else {
+            for (int i = 0; i < (1 << bits); i++)
+                ks.add("key-" + Integer.toHexString(i * 0x9E3779B9));
+        }
+        data = ks.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public int fill() {
+        HashMap<String, Integer> m = new HashMap<>();
+        m.setHashFloodingDefense(defense);
+        for (int i = 0; i < data.length; i++)
+            m.put(data[i], i);
+        int sum = 0;
+        for (String k : data)
+            sum += m.get(k);
+        return sum;
+    }
+
+    @Benchmark
+    public int fillComputeIfAbsent() {
+        HashMap<String, Integer> m = new HashMap<>();
+        m.setHashFloodingDefense(defense);
+        for (String k : data)
+            m.computeIfAbsent(k, String::length);
+        int sum = 0;
+        for (String k : data)
+            sum += m.get(k);
+        return sum;
+    }
+}
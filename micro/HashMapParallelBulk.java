@@ -0,0 +1,76 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较 HashMap 的并行批量操作 {@link HashMap#replaceAll(long, java.util.function.BiFunction)}、
+ * {@link HashMap#reduceValues}、{@link HashMap#search} 和 {@link HashMap#forEach(long, java.util.function.BiConsumer)}
+ * 与顺序执行的耗时。
+ *
+ * threshold 为 {@code Long.MAX_VALUE} 时总是顺序执行，为1时按公共池的并行度拆分。
+ * search 查找一个不存在的value，需要遍历整个map。需要在多核机器上运行。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xmx16g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class HashMapParallelBulk {
+
+    @Param({"1000000", "10000000"})
+    int size;
+
+    @Param({"9223372036854775807", "1"})
+    long threshold;
+
+    HashMap<Integer, Double> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        map = new HashMap<>();
+        for (int i = 0; i < size; i++)
+            map.put(i, (double)i);
+    }
+
+    @Benchmark
+    public HashMap<Integer, Double> replaceAll() {
+        map.replaceAll(threshold, (k, v) -> v * 0.5 + k * 0.5);
+        return map;
+    }
+
+    @Benchmark
+    public Double reduceValues() {
+        return map.reduceValues(threshold, Math::max);
+    }
+
+    @Benchmark
+    public Integer search() {
+        return map.search(threshold, (k, v) -> v < 0 ? k : null);
+    }
+
+    @Benchmark
+    public long forEach() {
+        LongAdder n = new LongAdder();
+        map.forEach(threshold, (k, v) -> {
+            if (v > k)
+                n.increment();
+        });
+        return n.sum();
+    }
+}
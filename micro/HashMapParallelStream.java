@@ -0,0 +1,95 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 测量 spliterator 的拆分方式对并行流的影响。
+ *
+ * layout 决定结点在表中的分布：
+ * <ul>
+ * <li>uniform：key的hash均匀分布，按下标对半拆分就已经均衡；
+ * <li>skewed：容量预先分配为 4*size，连续的小整数key只占用表的前1/4；
+ * <li>drained：插入 4*size 个连续的key之后删除后3/4，容量保持不变。
+ * </ul>
+ * bitmap 为true时开启占用位图，拆分按精确的非空桶数进行；否则按抽样估计。
+ * 每个元素做少量计算，使耗时由最慢的子任务决定，需要在多核机器上运行。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xmx8g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class HashMapParallelStream {
+
+    @Param({"uniform", "skewed", "drained"})
+    String layout;
+
+    @Param({"false", "true"})
+    boolean bitmap;
+
+    @Param({"1000000"})
+    int size;
+
+    HashMap<Integer, Integer> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        switch (layout) {
+        case "uniform":
+            map = new HashMap<>();
+            map.setOccupancyBitmap(bitmap);
+            for (int i = 0; i < size; i++)
+                map.put(i * 0x9E3779B1, i);
+            break;
+        case "skewed":
+            map = new HashMap<>(4 * size);
+            map.setOccupancyBitmap(bitmap);
+            for (int i = 0; i < size; i++)
+                map.put(i, i);
+            break;
+        default:
+            map = new HashMap<>();
+            map.setOccupancyBitmap(bitmap);
+            for (int i = 0; i < 4 * size; i++)
+                map.put(i, i);
+            map.keySet().removeIf(k -> k >= size);
+        }
+    }
+
+    static long work(long x) {
+        for (int i = 0; i < 32; i++)
+            x = x * 31 + i;
+        return x;
+    }
+
+    @Benchmark
+    public long entrySum() {
+        return map.entrySet().parallelStream().mapToLong(e -> work(e.getValue())).sum();
+    }
+
+    @Benchmark
+    public long keySum() {
+        return map.keySet().parallelStream().mapToLong(k -> work(k)).sum();
+    }
+
+    @Benchmark
+    public Object[] toArray() {
+        return map.values().parallelStream().toArray();
+    }
+}
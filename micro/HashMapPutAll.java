@@ -0,0 +1,79 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 测量 putAll 合并两个分片的耗时：两个各有 size 个映射的 HashMap 依次 putAll 到一个新map中。
+ *
+ * overlap 是第二个分片中与第一个分片重复的key所占的百分比，为0时两个分片不相交，
+ * 几乎所有的桶都可以整体复制；重复的key越多，越多的桶需要逐个比较。
+ * mergeTreeMap 的源不是 HashMap，只能逐个计算hash，作为对照。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xmx8g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class HashMapPutAll {
+
+    @Param({"10000", "1000000"})
+    int size;
+
+    @Param({"0", "50"})
+    int overlap;
+
+    HashMap<String, Integer> shard1, shard2;
+    TreeMap<String, Integer> tree1, tree2;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        shard1 = new HashMap<>();
+        shard2 = new HashMap<>();
+        int shared = (int)((long)size * overlap / 100);
+        for (int i = 0; i < size; i++) {
+            shard1.put("key-" + i, i);
+            shard2.put("key-" + (i < shared ? i : size + i), i);
+        }
+        tree1 = new TreeMap<>(shard1);
+        tree2 = new TreeMap<>(shard2);
+    }
+
+    Map<String, Integer> merge(Map<String, Integer> a, Map<String, Integer> b) {
+        HashMap<String, Integer> m = new HashMap<>();
+        m.putAll(a);
+        m.putAll(b);
+        return m;
+    }
+
+    @Benchmark
+    public Map<String, Integer> mergeHashMap() {
+        return merge(shard1, shard2);
+    }
+
+    @Benchmark
+    public Map<String, Integer> mergeTreeMap() {
+        return merge(tree1, tree2);
+    }
+
+    @Benchmark
+    public Map<String, Integer> copyConstructor() {
+        return new HashMap<>(shard1);
+    }
+}
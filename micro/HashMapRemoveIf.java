@@ -0,0 +1,73 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较一次遍历删除的 entrySet().removeIf 与通过迭代器逐个删除的耗时。
+ *
+ * percent 是被删除的映射所占的百分比（按value判断，模拟清理过期的条目）。
+ * 每次调用之前用 Level.Invocation 的 Setup 从原始map复制一份，复制本身不计入结果，
+ * 但 size 较小时 Level.Invocation 的计时误差较大，所以只测量大map。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xmx8g"})
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class HashMapRemoveIf {
+
+    @Param({"1000000", "10000000"})
+    int size;
+
+    @Param({"1", "50", "100"})
+    int percent;
+
+    HashMap<Integer, Integer> source;
+    HashMap<Integer, Integer> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        source = new HashMap<>();
+        for (int i = 0; i < size; i++)
+            source.put(i * 0x9E3779B9, i % 100);
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() {
+        map = new HashMap<>(source);
+    }
+
+    @Benchmark
+    public boolean removeIf() {
+        return map.entrySet().removeIf(e -> e.getValue() < percent);
+    }
+
+    @Benchmark
+    public boolean iteratorRemove() {
+        boolean removed = false;
+        for (Iterator<Map.Entry<Integer, Integer>> it = map.entrySet().iterator(); it.hasNext(); ) {
+            if (it.next().getValue() < percent) {
+                it.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+}
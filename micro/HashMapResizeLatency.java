@@ -0,0 +1,65 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 测量 HashMap.put 的延迟分布，比较一次性扩容和增量扩容（{@link HashMap#setIncrementalResize}）。
+ *
+ * 每次调用插入一个新的key，map增长到maxSize之后换一个空的map重新开始，
+ * 所以每轮迭代都会经历多次从小到大的扩容。关注 SampleTime 输出中的 p0.999 和 p1.0：
+ * 一次性扩容时它们就是整个表迁移的耗时，增量扩容时只剩下分配新表的开销。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+public class HashMapResizeLatency {
+
+    @Param({"false", "true"})
+    boolean incremental;
+
+    @Param({"10000000"})
+    int maxSize;
+
+    HashMap<Integer, Integer> map;
+    int next;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        map = newMap();
+        next = 0;
+    }
+
+    HashMap<Integer, Integer> newMap() {
+        HashMap<Integer, Integer> m = new HashMap<>();
+        m.setIncrementalResize(incremental);
+        return m;
+    }
+
+    @Benchmark
+    public Integer put() {
+        int k = next++;
+        if (k == maxSize) {
+            map = newMap();
+            next = 1;
+            k = 0;
+        }
+        return map.put(k, k);
+    }
+}
@@ -0,0 +1,101 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 测量 {@link HashMap#trimToSize()} 和 {@link HashMap#setAutoShrink(boolean)} 的效果。
+ *
+ * map先插入 peak 个映射，再删除到只剩 size 个。shrink 为true时在删除的过程中自动缩容，
+ * 为false时保持高峰时的容量。iterate 测量之后遍历的耗时；
+ * churn 在剩下的映射上反复删除再插入一批key，用来确认缩容的滞后区间避免了反复扩容、缩容。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xmx8g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class HashMapShrink {
+
+    @Param({"false", "true"})
+    boolean shrink;
+
+    @Param({"8000000"})
+    int peak;
+
+    @Param({"10000"})
+    int size;
+
+    HashMap<Integer, Integer> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        map = new HashMap<>();
+        map.setAutoShrink(shrink);
+        for (int i = 0; i < peak; i++)
+            map.put(i, i);
+        int step = peak / size;
+        for (int i = 0; i < peak; i++) {
+            if (i % step != 0)
+                map.remove(i);
+        }
+    }
+
+    @Benchmark
+    public long iterate() {
+        long sum = 0;
+        for (Integer k : map.keySet())
+            sum += k;
+        return sum;
+    }
+
+    @Benchmark
+    public int churn() {
+        HashMap<Integer, Integer> m = map;
+        int step = peak / size, n = size / 4;
+        for (int i = 0; i < n; i++)
+            m.remove(i * step);
+        for (int i = 0; i < n; i++)
+            m.put(i * step, i);
+        return m.size();
+    }
+
+    /**
+     * 每次都从高峰时的容量开始，删除到只剩1%之后测量 trimToSize 本身的开销
+     */
+    @State(Scope.Thread)
+    public static class Drained {
+        @Param({"1000000"})
+        int drainedPeak;
+
+        HashMap<Integer, Integer> map;
+
+        @Setup(Level.Invocation)
+        public void setup() {
+            map = new HashMap<>();
+            for (int i = 0; i < drainedPeak; i++)
+                map.put(i, i);
+            map.keySet().removeIf(k -> k % 100 != 0);
+        }
+    }
+
+    @Benchmark
+    public HashMap<Integer, Integer> trimToSize(Drained d) {
+        d.map.trimToSize();
+        return d.map;
+    }
+}
@@ -0,0 +1,107 @@
+package org.openjdk.bench.java.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.BinaryCodec;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较 {@link HashMap#writeSnapshot}/{@link HashMap#readSnapshot} 与 Java 序列化的耗时。
+ *
+ * 写入的目标是丢弃所有数据的通道，只测量编码本身；读取的源是预先写好的字节数组。
+ * key是 Integer，value是 Long，分别用 {@link BinaryCodec#int32()} 和 {@link BinaryCodec#int64()} 编码。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xmx8g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HashMapSnapshot {
+
+    @Param({"100000", "3000000"})
+    int size;
+
+    HashMap<Integer, Long> map;
+    byte[] snapshot;
+    byte[] serialized;
+
+    static final WritableByteChannel DISCARD = new WritableByteChannel() {
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+        public boolean isOpen() { return true; }
+        public void close() {}
+    };
+
+    static final OutputStream NULL_STREAM = new OutputStream() {
+        public void write(int b) {}
+        public void write(byte[] b, int off, int len) {}
+    };
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        map = new HashMap<>();
+        for (int i = 0; i < size; i++)
+            map.put(i * 7, (long)i);
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        map.writeSnapshot(Channels.newChannel(bo), BinaryCodec.int32(), BinaryCodec.int64());
+        snapshot = bo.toByteArray();
+        bo = new ByteArrayOutputStream();
+        try (ObjectOutputStream oo = new ObjectOutputStream(bo)) {
+            oo.writeObject(map);
+        }
+        serialized = bo.toByteArray();
+    }
+
+    @Benchmark
+    public HashMap<Integer, Long> writeSnapshot() throws IOException {
+        map.writeSnapshot(DISCARD, BinaryCodec.int32(), BinaryCodec.int64());
+        return map;
+    }
+
+    @Benchmark
+    public HashMap<Integer, Long> readSnapshot() throws IOException {
+        return HashMap.readSnapshot(Channels.newChannel(new ByteArrayInputStream(snapshot)),
+                                    BinaryCodec.int32(), BinaryCodec.int64());
+    }
+
+    @Benchmark
+    public HashMap<Integer, Long> writeObject() throws IOException {
+        try (ObjectOutputStream oo = new ObjectOutputStream(NULL_STREAM)) {
+            oo.writeObject(map);
+        }
+        return map;
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public HashMap<Integer, Long> readObject() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream oi = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return (HashMap<Integer, Long>)oi.readObject();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 测量 {@link HashMap#setOccupancyBitmap(boolean)} 对稀疏表遍历的影响。
+ *
+ * 先插入 peak 个映射让表扩容，再删除到只剩 size 个，容量保持不变。
+ * size 等于 peak 时表是满的，用来确认位图在正常的map上没有额外的开销。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xmx8g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class HashMapSparseIteration {
+
+    @Param({"false", "true"})
+    boolean bitmap;
+
+    @Param({"10000000"})
+    int peak;
+
+    @Param({"1000", "10000000"})
+    int size;
+
+    HashMap<Integer, Integer> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        map = new HashMap<>();
+        map.setOccupancyBitmap(bitmap);
+        for (int i = 0; i < peak; i++)
+            map.put(i, i);
+        int step = peak / size;
+        map.keySet().removeIf(k -> k % step != 0);
+    }
+
+    @Benchmark
+    public long iterate() {
+        long sum = 0;
+        for (Integer k : map.keySet())
+            sum += k;
+        return sum;
+    }
+
+    @Benchmark
+    public long forEach() {
+        long[] sum = new long[1];
+        map.forEach((k, v) -> sum[0] += v);
+        return sum[0];
+    }
+
+    @Benchmark
+    public boolean containsValue() {
+        return map.containsValue(-1);
+    }
+}
@@ -0,0 +1,67 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.HashSpreader;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较不同的 {@link HashSpreader} 下 HashMap.get 的耗时。
+ *
+ * shifted 模式的key是低20位全为0的 Long，默认的 XOR_SHIFT 只能用到其中的几位；
+ * sequential 模式是连续的 Long，几乎对任何扰动函数都友好，用来衡量扰动函数本身的开销。
+ * 在 Setup 中打印 {@link HashSpreader#diagnose} 的结果，便于对照分布和耗时。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class HashMapSpreader {
+
+    @Param({"XOR_SHIFT", "MURMUR3", "FIBONACCI"})
+    HashSpreader spreader;
+
+    @Param({"shifted", "sequential"})
+    String keys;
+
+    @Param({"100000"})
+    int size;
+
+    HashMap<Long, Long> map;
+    Long[] data;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        data = new Long[size];
+        int shift = "shifted".equals(keys) ? 20 : 0;
+        for (int i = 0; i < size; i++)
+            data[i] = (long)i << shift;
+        map = new HashMap<>();
+        map.setHashSpreader(spreader);
+        for (Long k : data)
+            map.put(k, k);
+        System.out.println();
+        for (HashSpreader.Diagnostic d : HashSpreader.diagnose(map.keySet()))
+            System.out.println(d);
+    }
+
+    @Benchmark
+    public Long get() {
+        return map.get(data[ThreadLocalRandom.current().nextInt(size)]);
+    }
+}
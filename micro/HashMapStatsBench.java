@@ -0,0 +1,57 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.HashMapStats;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 测量 {@link HashMap#stats()} 的耗时，用来确定对正在使用的map定期统计的代价。
+ *
+ * collisions 为true时每16个key的hashCode相同，桶会树化，统计时还要遍历红黑树。
+ * 耗时应当与容量成正比；用 -prof gc 确认每次只分配快照本身。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class HashMapStatsBench {
+
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean collisions;
+
+    HashMap<Object, Object> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        map = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            Object k = collisions ? new HashMapBench.ComparableKey(i) : (Object)i;
+            map.put(k, k);
+        }
+        System.out.println();
+        System.out.println(map.stats());
+    }
+
+    @Benchmark
+    public HashMapStats stats() {
+        return map.stats();
+    }
+}
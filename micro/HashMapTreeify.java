@@ -0,0 +1,58 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 测量 treeifyBin 的开销：向容量为64的空map中插入 bin 个hashCode完全相同的key，
+ * 插入第9个时整个桶被转成红黑树。bin 取8时不会树化，作为对照。
+ *
+ * comparable 为true时key实现了 Comparable，树按compareTo排序；
+ * 否则只能用 tieBreakOrder（类名和 identityHashCode）排序。
+ * 与 {@link HashMapBench} 一样，用 -prof gc 得到每次操作分配的字节数。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class HashMapTreeify {
+
+    @Param({"8", "9", "16"})
+    int bin;
+
+    @Param({"true", "false"})
+    boolean comparable;
+
+    Object[] keys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        keys = new Object[bin];
+        for (int i = 0; i < bin; i++)
+            keys[i] = comparable ? new HashMapBench.ComparableKey(i)
+                                 : new HashMapBench.CollidingKey(i);
+    }
+
+    @Benchmark
+    public HashMap<Object, Object> treeifyBin() {
+        HashMap<Object, Object> m = new HashMap<>(64);
+        for (Object k : keys)
+            m.put(k, k);
+        return m;
+    }
+}
@@ -0,0 +1,117 @@
+package org.openjdk.bench.java.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BinaryCodec;
+import java.util.HashMap;
+import java.util.MappedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较打开一个已经存在的 {@link MappedHashMap} 文件与用 {@link HashMap#readSnapshot}
+ * 从文件加载同样的映射的耗时，以及 {@link MappedHashMap#force()} 的耗时。
+ *
+ * openAndGet 打开文件之后查询 lookups 个key，然后关闭，只有被访问到的页面才会从文件调入；
+ * readSnapshotAndGet 需要先读取并解码整个文件。putAndForce 修改一个映射之后调用 force，
+ * 包括写入 DIRTY 文件头、同步修改过的页面和写入新的文件头，结果取决于所在的文件系统和磁盘。
+ * key是 Integer，value是 Long，分别用 {@link BinaryCodec#int32()} 和 {@link BinaryCodec#int64()} 编码。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xmx8g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MappedHashMapOpen {
+
+    @Param({"100000", "3000000"})
+    int size;
+
+    @Param({"1000"})
+    int lookups;
+
+    Path dir, mapped, snapshot;
+    MappedHashMap<Integer, Long> open;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("MappedHashMapOpen");
+        mapped = dir.resolve("map");
+        snapshot = dir.resolve("snapshot");
+        HashMap<Integer, Long> map = new HashMap<>();
+        try (MappedHashMap<Integer, Long> m =
+                 new MappedHashMap<>(mapped, BinaryCodec.int32(), BinaryCodec.int64())) {
+            for (int i = 0; i < size; i++) {
+                m.put(i * 7, (long)i);
+                map.put(i * 7, (long)i);
+            }
+        }
+        try (FileChannel ch = FileChannel.open(snapshot, StandardOpenOption.CREATE,
+                                               StandardOpenOption.WRITE)) {
+            map.writeSnapshot(ch, BinaryCodec.int32(), BinaryCodec.int64());
+        }
+        open = new MappedHashMap<>(dir.resolve("force"), BinaryCodec.int32(),
+                                   BinaryCodec.int64());
+        for (int i = 0; i < size; i++)
+            open.put(i, (long)i);
+        open.force();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        open.close();
+        Files.delete(dir.resolve("force"));
+        Files.delete(mapped);
+        Files.delete(snapshot);
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public long openAndGet() throws IOException {
+        long sum = 0;
+        try (MappedHashMap<Integer, Long> m =
+                 new MappedHashMap<>(mapped, BinaryCodec.int32(), BinaryCodec.int64())) {
+            int step = size / lookups;
+            for (int i = 0; i < size; i += step)
+                sum += m.get(i * 7);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long readSnapshotAndGet() throws IOException {
+        long sum = 0;
+        try (FileChannel ch = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            HashMap<Integer, Long> m =
+                HashMap.readSnapshot(ch, BinaryCodec.int32(), BinaryCodec.int64());
+            int step = size / lookups;
+            for (int i = 0; i < size; i += step)
+                sum += m.get(i * 7);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public MappedHashMap<Integer, Long> putAndForce() throws IOException {
+        open.put(size >>> 1, System.nanoTime());
+        open.force();
+        return open;
+    }
+}
@@ -0,0 +1,112 @@
+package org.openjdk.bench.java.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.BinaryCodec;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OffHeapHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 在相同映射数量下比较 HashMap 和 OffHeapHashMap 对垃圾收集停顿的影响。
+ *
+ * fullGc 直接测量一次 System.gc() 的耗时，它与堆上存活对象的数量成正比；
+ * getWithChurn 在查询的同时分配短命对象，触发年轻代收集，
+ * 并通过 gcPauseMillis 计数器报告每轮迭代中收集器累计的停顿时间。
+ *
+ * 运行时需要足够大的堆，例如：
+ * <pre>
+ *   java -jar benchmarks.jar OffHeapHashMapGC -jvmArgs "-Xmx16g -XX:MaxDirectMemorySize=16g"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g", "-XX:MaxDirectMemorySize=8g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OffHeapHashMapGC {
+
+    @Param({"1000000", "10000000"})
+    int entries;
+
+    @Param({"HashMap", "OffHeapHashMap"})
+    String impl;
+
+    Map<Long, Long> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if ("HashMap".equals(impl))
+            map = new HashMap<>(entries * 4 / 3 + 1);
+        else
+            map = new OffHeapHashMap<>(BinaryCodec.int64(), BinaryCodec.int64(),
+                                       entries * 4 / 3 + 1);
+        for (long i = 0; i < entries; i++)
+            map.put(i, i);
+        System.gc();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (map instanceof OffHeapHashMap)
+            ((OffHeapHashMap<Long, Long>) map).free();
+        map = null;
+    }
+
+    static long totalGcMillis() {
+        long t = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            t += Math.max(gc.getCollectionTime(), 0);
+        return t;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class GcCounters {
+        long start;
+        public long gcPauseMillis;
+
+        @Setup(Level.Iteration)
+        public void begin() {
+            gcPauseMillis = 0;
+            start = totalGcMillis();
+        }
+
+        @TearDown(Level.Iteration)
+        public void end() {
+            gcPauseMillis = totalGcMillis() - start;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void fullGc() {
+        System.gc();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object getWithChurn(GcCounters counters) {
+        long k = ThreadLocalRandom.current().nextLong(entries);
+        Long v = map.get(k);
+        return new Object[] { v, new byte[256] };
+    }
+}
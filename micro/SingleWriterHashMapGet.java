@@ -0,0 +1,83 @@
+package org.openjdk.bench.java.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SingleWriterHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 测量 SingleWriterHashMap.get 的开销。
+ *
+ * get 在单线程下比较不加同步的 HashMap 和 SingleWriterHashMap；
+ * readWrite 组中一个线程不停地覆盖和增删key，其余线程只读，
+ * 用来确认读线程的吞吐量不因为写线程的存在而下降。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(3)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class SingleWriterHashMapGet {
+
+    @Param({"HashMap", "SingleWriterHashMap"})
+    String impl;
+
+    @Param({"1000", "1000000"})
+    int size;
+
+    Map<Integer, Integer> map;
+    Integer[] keys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        map = "HashMap".equals(impl) ? new HashMap<>() : new SingleWriterHashMap<>();
+        keys = new Integer[size * 2];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = i;
+        for (int i = 0; i < size; i++)
+            map.put(keys[i], i);
+    }
+
+    @Benchmark
+    public Integer get() {
+        return map.get(keys[ThreadLocalRandom.current().nextInt(size)]);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(7)
+    public Integer reader() {
+        if (!(map instanceof SingleWriterHashMap))
+            return null;        // HashMap 不能在有写线程时读取
+        return map.get(keys[ThreadLocalRandom.current().nextInt(size)]);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public Integer writer() {
+        if (!(map instanceof SingleWriterHashMap))
+            return null;
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        Integer k = keys[r.nextInt(keys.length)];
+        return (k < size) ? map.put(k, r.nextInt()) :
+            r.nextBoolean() ? map.put(k, k) : map.remove(k);
+    }
+}
@@ -0,0 +1,88 @@
+package org.openjdk.bench.java.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StripedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 比较 Collections.synchronizedMap(HashMap)、StripedHashMap 和 ConcurrentHashMap
+ * 在不同读写比例下的多线程吞吐量。
+ *
+ * 所有线程共享同一个预先填充好的map，每次调用按readPercent随机选择get，
+ * 否则对同一key范围做put或remove，使map的大小大致保持不变。
+ * 线程数通过命令行给出，例如：
+ * <pre>
+ *   java -jar benchmarks.jar StripedHashMapThroughput -t 1
+ *   java -jar benchmarks.jar StripedHashMapThroughput -t 64
+ * </pre>
+ * 依次取 1、2、4、8、16、32、64。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+public class StripedHashMapThroughput {
+
+    @Param({"synchronizedMap", "StripedHashMap", "ConcurrentHashMap"})
+    String impl;
+
+    @Param({"50", "90", "99"})
+    int readPercent;
+
+    @Param({"100000"})
+    int keys;
+
+    Map<Integer, Integer> map;
+    Integer[] keyPool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        switch (impl) {
+        case "synchronizedMap":
+            map = Collections.synchronizedMap(new HashMap<>());
+            break;
+        case "StripedHashMap":
+            map = new StripedHashMap<>();
+            break;
+        default:
+            map = new ConcurrentHashMap<>();
+        }
+        keyPool = new Integer[keys * 2];
+        for (int i = 0; i < keyPool.length; i++)
+            keyPool[i] = i;
+        for (int i = 0; i < keys; i++)
+            map.put(keyPool[i * 2], i);
+    }
+
+    @Benchmark
+    public Object mixed() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        Integer k = keyPool[r.nextInt(keyPool.length)];
+        int op = r.nextInt(100);
+        if (op < readPercent)
+            return map.get(k);
+        else if ((op & 1) == 0)
+            return map.put(k, op);
+        else
+            return map.remove(k);
+    }
+}